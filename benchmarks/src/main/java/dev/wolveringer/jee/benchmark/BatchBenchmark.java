@@ -0,0 +1,91 @@
+package dev.wolveringer.jee.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.wolveringer.jee.BatchExpression;
+import dev.wolveringer.jee.BytecodeExpression;
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+
+/**
+ * Evaluation of one formula for many rows, compared with evaluating row by row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BatchBenchmark {
+	@Param({ "arithmetic", "functions" })
+	public String kind;
+	
+	@Param({ "4", "32" })
+	public int terms;
+	
+	@Param({ "1024", "262144" })
+	public int rows;
+	
+	private CompiledExpression compiled;
+	private BytecodeExpression bytecode;
+	private BatchExpression batch;
+	private Object[] columns;
+	private double[] output;
+	private double[] row;
+	
+	@Setup
+	public void setup(){
+		compiled = new ExpressionEvaluator().compile(Formulas.formula(kind, terms), Formulas.VARIABLES);
+		bytecode = compiled.compileBytecode();
+		batch = compiled.compileBatch();
+		columns = new Object[Formulas.VARIABLES.length];
+		for(int i = 0;i<columns.length;i++)
+			columns[i] = Formulas.values(rows, i);
+		output = new double[rows];
+		row = new double[columns.length];
+	}
+	
+	@Benchmark
+	public double[] primitiveRows(){
+		for(int i = 0;i<rows;i++){
+			for(int j = 0;j<columns.length;j++)
+				row[j] = ((double[]) columns[j])[i];
+			output[i] = compiled.evaluateDouble(row);
+		}
+		return output;
+	}
+	
+	@Benchmark
+	public double[] bytecodeRows(){
+		for(int i = 0;i<rows;i++){
+			for(int j = 0;j<columns.length;j++)
+				row[j] = ((double[]) columns[j])[i];
+			output[i] = bytecode.evaluateDouble(row);
+		}
+		return output;
+	}
+	
+	@Benchmark
+	public double[] batch(){
+		batch.evaluateDouble(columns, output);
+		return output;
+	}
+	
+	@Benchmark
+	public double[] batchParallel(){
+		batch.evaluateDoubleParallel(columns, output);
+		return output;
+	}
+}
@@ -0,0 +1,90 @@
+package dev.wolveringer.jee.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generated formulas of a given size, the constants differ per term so the optimizer can't merge them.
+ */
+public class Formulas {
+	public static final String[] VARIABLES = { "x", "y", "z" };
+	
+	private static final Map<String, String> FUNCTIONS = new HashMap<>();
+	
+	static {
+		FUNCTIONS.put("abs", "abs(x - 0.5)");
+		FUNCTIONS.put("sqr", "sqr(x)");
+		FUNCTIONS.put("sqrt", "sqrt(y)");
+		FUNCTIONS.put("pow", "pow(x, 1.5)");
+		FUNCTIONS.put("min", "min(x, y)");
+		FUNCTIONS.put("max", "max(x, y)");
+		FUNCTIONS.put("floor", "floor(x * 10)");
+		FUNCTIONS.put("ceil", "ceil(x * 10)");
+		FUNCTIONS.put("round", "round(x * 10)");
+		FUNCTIONS.put("log", "log(y)");
+		FUNCTIONS.put("exp", "exp(x)");
+		FUNCTIONS.put("sin", "sin(x)");
+		FUNCTIONS.put("cos", "cos(x)");
+		FUNCTIONS.put("clamp", "clamp(x, -0.5, 0.5)");
+	}
+	
+	/**
+	 * @return an arithmetic formula with the given number of terms
+	 */
+	public static String arithmetic(int terms){
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0;i<terms;i++){
+			if(i > 0) builder.append(i % 2 == 0 ? " + " : " - ");
+			builder.append("(").append(VARIABLES[i % 3]).append(" * ").append(i + 1).append(".5 - ").append(VARIABLES[(i + 1) % 3]).append(" / ").append(i + 2).append(")");
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * @return a formula with the given number of terms, each calling several functions
+	 */
+	public static String functions(int terms){
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0;i<terms;i++){
+			if(i > 0) builder.append(" + ");
+			builder.append("sqrt(abs(x * ").append(i + 1).append(")) * max(y, ").append(i).append(") + clamp(z, -").append(i + 1).append(", ").append(i + 1).append(")");
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * @return a formula calling only the given function
+	 */
+	public static String function(String name){
+		String formula = FUNCTIONS.get(name);
+		if(formula == null) throw new IllegalArgumentException("Unknown function "+name);
+		return formula;
+	}
+	
+	public static String formula(String kind, int terms){
+		switch(kind){
+		case "arithmetic":
+			return arithmetic(terms);
+		case "functions":
+			return functions(terms);
+		default:
+			throw new IllegalArgumentException("Unknown formula kind "+kind);
+		}
+	}
+	
+	public static double[] bindings(long seed){
+		return values(VARIABLES.length, seed);
+	}
+	
+	/**
+	 * @return random values in [0.1, 1.1), so log and sqrt stay defined
+	 */
+	public static double[] values(int length, long seed){
+		Random random = new Random(seed);
+		double[] values = new double[length];
+		for(int i = 0;i<length;i++)
+			values[i] = random.nextDouble() + 0.1;
+		return values;
+	}
+}
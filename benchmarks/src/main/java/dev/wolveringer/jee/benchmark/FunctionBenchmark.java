@@ -0,0 +1,64 @@
+package dev.wolveringer.jee.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.wolveringer.jee.BytecodeExpression;
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+
+/**
+ * Evaluation of the built in math functions, one at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FunctionBenchmark {
+	@Param({ "abs", "sqr", "sqrt", "pow", "min", "max", "floor", "ceil", "round", "log", "exp", "sin", "cos", "clamp" })
+	public String function;
+	
+	private CompiledExpression compiled;
+	private BytecodeExpression bytecode;
+	private double[] bindings;
+	private ExpressionValue<?>[] boxedBindings;
+	
+	@Setup
+	public void setup(){
+		compiled = new ExpressionEvaluator().compile(Formulas.function(function), Formulas.VARIABLES);
+		bytecode = compiled.compileBytecode();
+		bindings = Formulas.bindings(function.hashCode());
+		boxedBindings = new ExpressionValue<?>[bindings.length];
+		for(int i = 0;i<bindings.length;i++)
+			boxedBindings[i] = ExpressionValue.of(bindings[i]);
+	}
+	
+	@Benchmark
+	public ExpressionValue<?> boxed(){
+		return compiled.evaluate(boxedBindings);
+	}
+	
+	@Benchmark
+	public double primitive(){
+		return compiled.evaluateDouble(bindings);
+	}
+	
+	@Benchmark
+	public double bytecode(){
+		return bytecode.evaluateDouble(bindings);
+	}
+}
@@ -0,0 +1,92 @@
+package dev.wolveringer.jee.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.wolveringer.jee.BytecodeExpression;
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionCache;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionSerializer;
+
+/**
+ * Costs of turning a formula into something which can be evaluated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParseBenchmark {
+	@Param({ "arithmetic", "functions" })
+	public String kind;
+	
+	@Param({ "4", "32", "256" })
+	public int terms;
+	
+	private String formula;
+	private ExpressionEvaluator evaluator;
+	private ExpressionEvaluator unoptimized;
+	private ExpressionCache cache;
+	private ExpressionSerializer serializer;
+	private CompiledExpression compiled;
+	private byte[] serialized;
+	
+	@Setup
+	public void setup(){
+		formula = Formulas.formula(kind, terms);
+		evaluator = new ExpressionEvaluator();
+		unoptimized = new ExpressionEvaluator();
+		unoptimized.setOptimize(false);
+		cache = new ExpressionCache(evaluator, 16);
+		serializer = new ExpressionSerializer(evaluator);
+		compiled = evaluator.compile(formula, Formulas.VARIABLES);
+		serialized = serializer.toBytes(Collections.singletonList(compiled));
+	}
+	
+	/**
+	 * Lexing and parsing only.
+	 */
+	@Benchmark
+	public CompiledExpression parse(){
+		return unoptimized.compile(formula, Formulas.VARIABLES);
+	}
+	
+	/**
+	 * Lexing, parsing and optimizing.
+	 */
+	@Benchmark
+	public CompiledExpression compile(){
+		return evaluator.compile(formula, Formulas.VARIABLES);
+	}
+	
+	@Benchmark
+	public CompiledExpression compileCached(){
+		return cache.compile(formula, Formulas.VARIABLES);
+	}
+	
+	@Benchmark
+	public BytecodeExpression compileBytecode(){
+		return compiled.compileBytecode();
+	}
+	
+	@Benchmark
+	public List<CompiledExpression> load(){
+		return serializer.read(ByteBuffer.wrap(serialized));
+	}
+}
@@ -0,0 +1,641 @@
+package dev.wolveringer.jee;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import dev.wolveringer.jee.ExpressionEvaluator.CastExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.EvalatedExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.FunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberBiFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberUnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.VariableExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberBiFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberFunction;
+
+/**
+ * Evaluates an expression for many rows at once, see {@link CompiledExpression#compileBatch()}.
+ * The variables are passed as columns (one <code>double[]</code>, <code>long[]</code> or <code>int[]</code> per slot) and every built in arithmetic operator and primitive function runs as one loop over a chunk of rows.
+ * Every other element (custom functions and operators, comparisons and conditionals) is evaluated row by row.
+ * Instances are immutable and can be used concurrently from multiple threads, large batches can be split across cores with {@link #evaluateDoubleParallel(ForkJoinPool, Object[], double[])}.
+ */
+public final class BatchExpression {
+	/**
+	 * Rows evaluated per step, small enough to keep the intermediate columns in the cpu cache.
+	 */
+	public static final int CHUNK_SIZE = 1024;
+	/**
+	 * Minimal rows per task of the parallel evaluation.
+	 */
+	public static final int PARALLEL_THRESHOLD = CHUNK_SIZE * 16;
+	
+	private static final int OP_ADD = 0;
+	private static final int OP_SUB = 1;
+	private static final int OP_MUL = 2;
+	private static final int OP_DIV = 3;
+	
+	/**
+	 * State of one evaluation call. Decimal nodes write into their double column, integer nodes into their long column.
+	 */
+	static class Batch {
+		private final Object[] columns;
+		private final double[][] doubles;
+		private final long[][] longs;
+		private final int[] evaluated;
+		private final double[] bindings;
+		private int chunk;
+		
+		public Batch(Object[] columns, int nodes, int variables) {
+			this.columns = columns;
+			this.doubles = new double[nodes][];
+			this.longs = new long[nodes][];
+			this.evaluated = new int[nodes];
+			this.bindings = new double[variables];
+		}
+		
+		public double[] doubleColumn(int id){
+			double[] column = doubles[id];
+			if(column == null) column = doubles[id] = new double[CHUNK_SIZE];
+			return column;
+		}
+		
+		public long[] longColumn(int id){
+			long[] column = longs[id];
+			if(column == null) column = longs[id] = new long[CHUNK_SIZE];
+			return column;
+		}
+		
+		private void evaluate(Node node, int offset, int length){
+			if(evaluated[node.id] == chunk) return; //Shared node
+			node.evaluate(this, offset, length);
+			evaluated[node.id] = chunk;
+		}
+		
+		public double[] doubles(Node node, int offset, int length){
+			evaluate(node, offset, length);
+			double[] result = doubleColumn(node.id);
+			if(!node.decimal){
+				long[] values = longs[node.id];
+				for(int i = 0;i<length;i++)
+					result[i] = values[i];
+			}
+			return result;
+		}
+		
+		public long[] longs(Node node, int offset, int length){
+			evaluate(node, offset, length);
+			long[] result = longColumn(node.id);
+			if(node.decimal){
+				double[] values = doubles[node.id];
+				for(int i = 0;i<length;i++)
+					result[i] = (long) values[i];
+			}
+			return result;
+		}
+		
+		public double[] row(int row){
+			for(int slot = 0;slot<bindings.length;slot++){
+				Object column = columns[slot];
+				if(column instanceof double[]) bindings[slot] = ((double[]) column)[row];
+				else if(column instanceof long[]) bindings[slot] = ((long[]) column)[row];
+				else bindings[slot] = ((int[]) column)[row];
+			}
+			return bindings;
+		}
+	}
+	
+	private abstract static class Node {
+		protected final int id;
+		protected final Type type;
+		protected final boolean decimal;
+		
+		public Node(int id, Type type) {
+			this.id = id;
+			this.type = type;
+			this.decimal = ExpressionEvaluator.isDecimal(type);
+		}
+		
+		public abstract void evaluate(Batch batch, int offset, int length);
+	}
+	
+	private static class ConstantNode extends Node {
+		private final double doubleValue;
+		private final long longValue;
+		
+		public ConstantNode(int id, EvalatedExpressionElement element) {
+			super(id, element.getType());
+			this.doubleValue = element.getDoubleValue();
+			this.longValue = element.getLongValue();
+		}
+		
+		@Override
+		public void evaluate(Batch batch, int offset, int length) {
+			if(decimal) Arrays.fill(batch.doubleColumn(id), 0, length, doubleValue);
+			else Arrays.fill(batch.longColumn(id), 0, length, longValue);
+		}
+	}
+	
+	private static class VariableNode extends Node {
+		private final int slot;
+		
+		public VariableNode(int id, VariableExpressionElement element) {
+			super(id, element.getType());
+			this.slot = element.getSlot();
+		}
+		
+		@Override
+		public void evaluate(Batch batch, int offset, int length) {
+			Object column = batch.columns[slot];
+			if(column instanceof double[]){
+				double[] values = (double[]) column;
+				if(decimal){
+					double[] result = batch.doubleColumn(id);
+					if(type == Type.FLOAT){
+						for(int i = 0;i<length;i++)
+							result[i] = (float) values[offset + i];
+					} else System.arraycopy(values, offset, result, 0, length);
+				} else {
+					long[] result = batch.longColumn(id);
+					if(type == Type.LONG){
+						for(int i = 0;i<length;i++)
+							result[i] = (long) values[offset + i];
+					} else if(type == Type.BOOLEAN){
+						for(int i = 0;i<length;i++)
+							result[i] = values[offset + i] != 0 ? 1 : 0;
+					} else {
+						for(int i = 0;i<length;i++)
+							result[i] = (int) values[offset + i]; //Same saturation as the row evaluation
+						narrow(result, length, type);
+					}
+				}
+				return;
+			}
+			
+			long[] result = batch.longColumn(id);
+			if(column instanceof long[]){
+				long[] values = (long[]) column;
+				if(type == Type.INT || type == Type.SHORT || type == Type.BYTE){
+					for(int i = 0;i<length;i++)
+						result[i] = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, values[offset + i])); //Same saturation as the row evaluation
+				} else System.arraycopy(values, offset, result, 0, length);
+			} else {
+				int[] values = (int[]) column;
+				for(int i = 0;i<length;i++)
+					result[i] = values[offset + i];
+			}
+			if(decimal){
+				double[] decimals = batch.doubleColumn(id);
+				for(int i = 0;i<length;i++)
+					decimals[i] = type == Type.FLOAT ? (float) (double) result[i] : (double) result[i];
+			} else narrow(result, length, type);
+		}
+	}
+	
+	private static class ArithmeticNode extends Node {
+		private final int operation;
+		private final Node first;
+		private final Node next;
+		
+		public ArithmeticNode(int id, Type type, int operation, Node first, Node next) {
+			super(id, type);
+			this.operation = operation;
+			this.first = first;
+			this.next = next;
+		}
+		
+		@Override
+		public void evaluate(Batch batch, int offset, int length) {
+			if(decimal){
+				double[] a = batch.doubles(first, offset, length);
+				double[] b = batch.doubles(next, offset, length);
+				double[] result = batch.doubleColumn(id);
+				if(type == Type.FLOAT) evaluateFloat(a, b, result, length);
+				else evaluateDouble(a, b, result, length);
+			} else {
+				long[] a = batch.longs(first, offset, length);
+				long[] b = batch.longs(next, offset, length);
+				long[] result = batch.longColumn(id);
+				evaluateLong(a, b, result, length);
+				narrow(result, length, type);
+			}
+		}
+		
+		private void evaluateDouble(double[] a, double[] b, double[] result, int length){
+			switch(operation){
+			case OP_ADD:
+				for(int i = 0;i<length;i++)
+					result[i] = a[i] + b[i];
+				break;
+			case OP_SUB:
+				for(int i = 0;i<length;i++)
+					result[i] = a[i] - b[i];
+				break;
+			case OP_MUL:
+				for(int i = 0;i<length;i++)
+					result[i] = a[i] * b[i];
+				break;
+			default:
+				for(int i = 0;i<length;i++)
+					result[i] = a[i] / b[i];
+				break;
+			}
+		}
+		
+		private void evaluateFloat(double[] a, double[] b, double[] result, int length){
+			switch(operation){
+			case OP_ADD:
+				for(int i = 0;i<length;i++)
+					result[i] = (float) a[i] + (float) b[i];
+				break;
+			case OP_SUB:
+				for(int i = 0;i<length;i++)
+					result[i] = (float) a[i] - (float) b[i];
+				break;
+			case OP_MUL:
+				for(int i = 0;i<length;i++)
+					result[i] = (float) a[i] * (float) b[i];
+				break;
+			default:
+				for(int i = 0;i<length;i++)
+					result[i] = (float) a[i] / (float) b[i];
+				break;
+			}
+		}
+		
+		/**
+		 * Integer operands are already narrowed to their type, so the long result only has to be narrowed again.
+		 */
+		private void evaluateLong(long[] a, long[] b, long[] result, int length){
+			switch(operation){
+			case OP_ADD:
+				for(int i = 0;i<length;i++)
+					result[i] = a[i] + b[i];
+				break;
+			case OP_SUB:
+				for(int i = 0;i<length;i++)
+					result[i] = a[i] - b[i];
+				break;
+			case OP_MUL:
+				for(int i = 0;i<length;i++)
+					result[i] = a[i] * b[i];
+				break;
+			default:
+				for(int i = 0;i<length;i++)
+					result[i] = a[i] / b[i];
+				break;
+			}
+		}
+	}
+	
+	private static class NegateNode extends Node {
+		private final Node value;
+		private final boolean negate;
+		
+		public NegateNode(int id, Type type, Node value, boolean negate) {
+			super(id, type);
+			this.value = value;
+			this.negate = negate;
+		}
+		
+		@Override
+		public void evaluate(Batch batch, int offset, int length) {
+			if(decimal){
+				double[] values = batch.doubles(value, offset, length);
+				double[] result = batch.doubleColumn(id);
+				if(type == Type.FLOAT){
+					for(int i = 0;i<length;i++)
+						result[i] = negate ? -(float) values[i] : (float) values[i];
+				} else {
+					for(int i = 0;i<length;i++)
+						result[i] = negate ? -values[i] : values[i];
+				}
+			} else {
+				long[] values = batch.longs(value, offset, length);
+				long[] result = batch.longColumn(id);
+				for(int i = 0;i<length;i++)
+					result[i] = negate ? -values[i] : values[i];
+				narrow(result, length, type);
+			}
+		}
+	}
+	
+	private static class FunctionNode extends Node {
+		private final BasicNumberFunction function;
+		private final Node value;
+		
+		public FunctionNode(int id, Type type, BasicNumberFunction function, Node value) {
+			super(id, type);
+			this.function = function;
+			this.value = value;
+		}
+		
+		@Override
+		public void evaluate(Batch batch, int offset, int length) {
+			if(decimal){
+				double[] values = batch.doubles(value, offset, length);
+				double[] result = batch.doubleColumn(id);
+				if(type == Type.FLOAT){
+					for(int i = 0;i<length;i++)
+						result[i] = function.applay((float) values[i]);
+				} else {
+					for(int i = 0;i<length;i++)
+						result[i] = function.applay(values[i]);
+				}
+				return;
+			}
+			
+			long[] values = batch.longs(value, offset, length);
+			long[] result = batch.longColumn(id);
+			switch(type){
+			case LONG:
+				for(int i = 0;i<length;i++)
+					result[i] = function.applay(values[i]);
+				break;
+			case INT:
+				for(int i = 0;i<length;i++)
+					result[i] = function.applay((int) values[i]);
+				break;
+			case SHORT:
+				for(int i = 0;i<length;i++)
+					result[i] = function.applay((short) values[i]);
+				break;
+			default:
+				for(int i = 0;i<length;i++)
+					result[i] = function.applay((byte) values[i]);
+				break;
+			}
+		}
+	}
+	
+	private static class BiFunctionNode extends Node {
+		private final BasicNumberBiFunction function;
+		private final Node first;
+		private final Node next;
+		
+		public BiFunctionNode(int id, Type type, BasicNumberBiFunction function, Node first, Node next) {
+			super(id, type);
+			this.function = function;
+			this.first = first;
+			this.next = next;
+		}
+		
+		@Override
+		public void evaluate(Batch batch, int offset, int length) {
+			if(decimal){
+				double[] a = batch.doubles(first, offset, length);
+				double[] b = batch.doubles(next, offset, length);
+				double[] result = batch.doubleColumn(id);
+				if(type == Type.FLOAT){
+					for(int i = 0;i<length;i++)
+						result[i] = function.applay((float) a[i], (float) b[i]);
+				} else {
+					for(int i = 0;i<length;i++)
+						result[i] = function.applay(a[i], b[i]);
+				}
+				return;
+			}
+			
+			long[] a = batch.longs(first, offset, length);
+			long[] b = batch.longs(next, offset, length);
+			long[] result = batch.longColumn(id);
+			switch(type){
+			case LONG:
+				for(int i = 0;i<length;i++)
+					result[i] = function.applay(a[i], b[i]);
+				break;
+			case INT:
+				for(int i = 0;i<length;i++)
+					result[i] = function.applay((int) a[i], (int) b[i]);
+				break;
+			case SHORT:
+				for(int i = 0;i<length;i++)
+					result[i] = function.applay((short) a[i], (short) b[i]);
+				break;
+			default:
+				for(int i = 0;i<length;i++)
+					result[i] = function.applay((byte) a[i], (byte) b[i]);
+				break;
+			}
+		}
+	}
+	
+	private static class RowNode extends Node {
+		private final ExpressionElement element;
+		
+		public RowNode(int id, ExpressionElement element) {
+			super(id, element.getType());
+			this.element = element;
+		}
+		
+		@Override
+		public void evaluate(Batch batch, int offset, int length) {
+			if(decimal){
+				double[] result = batch.doubleColumn(id);
+				for(int i = 0;i<length;i++)
+					result[i] = element.parseDouble(batch.row(offset + i));
+			} else {
+				long[] result = batch.longColumn(id);
+				for(int i = 0;i<length;i++)
+					result[i] = element.parseLong(batch.row(offset + i));
+			}
+		}
+	}
+	
+	private static void narrow(long[] values, int length, Type type){
+		switch(type){
+		case INT:
+			for(int i = 0;i<length;i++)
+				values[i] = (int) values[i];
+			break;
+		case SHORT:
+			for(int i = 0;i<length;i++)
+				values[i] = (short) values[i];
+			break;
+		case BYTE:
+			for(int i = 0;i<length;i++)
+				values[i] = (byte) values[i];
+			break;
+		case BOOLEAN:
+			for(int i = 0;i<length;i++)
+				values[i] = values[i] != 0 ? 1 : 0;
+			break;
+		default:
+			break;
+		}
+	}
+	
+	private final ExpressionVariables variables;
+	private final Map<ExpressionElement, Node> nodes = new IdentityHashMap<>();
+	private final Node root;
+	
+	BatchExpression(ExpressionVariables variables, ExpressionElement root) {
+		this.variables = variables;
+		this.root = build(root);
+	}
+	
+	private Node build(ExpressionElement element){
+		Node node = nodes.get(element);
+		if(node != null) return node; //Shared element, see ExpressionOptimizer
+		
+		if(element.getType().isBig()){
+			node = new RowNode(nodes.size(), element); //No primitive columns for big numbers
+		} else if(element instanceof CastExpressionElement){
+			node = build(((CastExpressionElement) element).getValue()); //The nodes convert their inputs themselves
+		} else if(element instanceof EvalatedExpressionElement && element.getType().isNumeric()){
+			node = new ConstantNode(nodes.size(), (EvalatedExpressionElement) element);
+		} else if(element instanceof VariableExpressionElement){
+			node = new VariableNode(nodes.size(), (VariableExpressionElement) element);
+		} else if(element instanceof NumberOperatorExpressionElement && operation(((NumberOperatorExpressionElement) element).getOperator()) >= 0){
+			NumberOperatorExpressionElement e = (NumberOperatorExpressionElement) element;
+			Node first = build(e.getFirst());
+			Node next = build(e.getNext());
+			node = new ArithmeticNode(nodes.size(), e.getType(), operation(e.getOperator()), first, next);
+		} else if(element instanceof NumberUnaryOperatorExpressionElement && (((NumberUnaryOperatorExpressionElement) element).getOperator() == ExpressionEvaluatorOperators.MATH_NEGATE || ((NumberUnaryOperatorExpressionElement) element).getOperator() == ExpressionEvaluatorOperators.MATH_POSITIVE)){
+			NumberUnaryOperatorExpressionElement e = (NumberUnaryOperatorExpressionElement) element;
+			Node value = build(e.getValue());
+			node = new NegateNode(nodes.size(), e.getType(), value, e.getOperator() == ExpressionEvaluatorOperators.MATH_NEGATE);
+		} else if(element instanceof NumberFunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			Node value = build(e.getParms()[0]);
+			node = new FunctionNode(nodes.size(), e.getType(), (BasicNumberFunction) e.getFunction(), value);
+		} else if(element instanceof NumberBiFunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			Node first = build(e.getParms()[0]);
+			Node next = build(e.getParms()[1]);
+			node = new BiFunctionNode(nodes.size(), e.getType(), (BasicNumberBiFunction) e.getFunction(), first, next);
+		} else {
+			node = new RowNode(nodes.size(), element);
+		}
+		nodes.put(element, node);
+		return node;
+	}
+	
+	private static int operation(Object operator){
+		if(operator == ExpressionEvaluatorOperators.MATH_PLUS) return OP_ADD;
+		if(operator == ExpressionEvaluatorOperators.MATH_MUNUS) return OP_SUB;
+		if(operator == ExpressionEvaluatorOperators.MATH_MULTIPLY) return OP_MUL;
+		if(operator == ExpressionEvaluatorOperators.MATH_DIVIDIDE) return OP_DIV;
+		return -1;
+	}
+	
+	public void evaluateDouble(Object[] columns, double[] output){
+		evaluateDouble(columns, output, 0, output.length);
+	}
+	
+	/**
+	 * Evaluates the rows <code>offset</code> to <code>offset + length</code> and writes each result to the same index of the output.
+	 * @param columns the variable values, indexed by their slot. Every column has to be a <code>double[]</code>, <code>long[]</code> or <code>int[]</code>
+	 */
+	public void evaluateDouble(Object[] columns, double[] output, int offset, int length){
+		checkColumns(columns, output.length, offset, length);
+		Batch batch = new Batch(columns, nodes.size(), variables.size());
+		for(int start = offset;start<offset + length;start += CHUNK_SIZE){
+			int size = Math.min(CHUNK_SIZE, offset + length - start);
+			batch.chunk++;
+			System.arraycopy(batch.doubles(root, start, size), 0, output, start, size);
+		}
+	}
+	
+	/**
+	 * @return evaluation state which can be reused for any number of chunks read from the same columns
+	 */
+	Batch newBatch(Object[] columns){
+		return new Batch(columns, nodes.size(), variables.size());
+	}
+	
+	/**
+	 * Evaluates the first rows of the batch columns, without checking the columns again.
+	 */
+	void evaluateDouble(Batch batch, double[] output, int length){
+		batch.chunk++;
+		System.arraycopy(batch.doubles(root, 0, length), 0, output, 0, length);
+	}
+	
+	public void evaluateLong(Object[] columns, long[] output){
+		evaluateLong(columns, output, 0, output.length);
+	}
+	
+	/**
+	 * @see #evaluateDouble(Object[], double[], int, int)
+	 */
+	public void evaluateLong(Object[] columns, long[] output, int offset, int length){
+		checkColumns(columns, output.length, offset, length);
+		Batch batch = new Batch(columns, nodes.size(), variables.size());
+		for(int start = offset;start<offset + length;start += CHUNK_SIZE){
+			int size = Math.min(CHUNK_SIZE, offset + length - start);
+			batch.chunk++;
+			System.arraycopy(batch.longs(root, start, size), 0, output, start, size);
+		}
+	}
+	
+	/**
+	 * Splits the rows on the given pool. Every task evaluates its own range and writes it to the output, so no locking is required.
+	 * @see #evaluateDouble(Object[], double[], int, int)
+	 */
+	public void evaluateDoubleParallel(ForkJoinPool pool, Object[] columns, double[] output){
+		checkColumns(columns, output.length, 0, output.length);
+		pool.invoke(new ParallelTask(columns, output, 0, output.length));
+	}
+	
+	public void evaluateDoubleParallel(Object[] columns, double[] output){
+		evaluateDoubleParallel(ForkJoinPool.commonPool(), columns, output);
+	}
+	
+	/**
+	 * @see #evaluateDoubleParallel(ForkJoinPool, Object[], double[])
+	 */
+	public void evaluateLongParallel(ForkJoinPool pool, Object[] columns, long[] output){
+		checkColumns(columns, output.length, 0, output.length);
+		pool.invoke(new ParallelTask(columns, output, 0, output.length));
+	}
+	
+	public void evaluateLongParallel(Object[] columns, long[] output){
+		evaluateLongParallel(ForkJoinPool.commonPool(), columns, output);
+	}
+	
+	@SuppressWarnings("serial")
+	private class ParallelTask extends RecursiveAction {
+		private final Object[] columns;
+		private final Object output;
+		private final int offset;
+		private final int length;
+		
+		public ParallelTask(Object[] columns, Object output, int offset, int length) {
+			this.columns = columns;
+			this.output = output;
+			this.offset = offset;
+			this.length = length;
+		}
+		
+		@Override
+		protected void compute() {
+			if(length <= PARALLEL_THRESHOLD){
+				if(output instanceof double[]) evaluateDouble(columns, (double[]) output, offset, length);
+				else evaluateLong(columns, (long[]) output, offset, length);
+				return;
+			}
+			int half = (length / 2 + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE; //Keep whole chunks together
+			invokeAll(new ParallelTask(columns, output, offset, half), new ParallelTask(columns, output, offset + half, length - half));
+		}
+	}
+	
+	private void checkColumns(Object[] columns, int outputLength, int offset, int length){
+		if(offset < 0 || length < 0 || offset + length > outputLength) throw new ExpressionException("Invalid row range "+offset+" to "+(offset + length)+" for "+outputLength+" output rows");
+		if(columns.length < variables.size()) throw new ExpressionException("Missing variable columns. Required "+variables.size()+" but got "+columns.length);
+		for(int slot = 0;slot<variables.size();slot++){
+			Object column = columns[slot];
+			int size;
+			if(column instanceof double[]) size = ((double[]) column).length;
+			else if(column instanceof long[]) size = ((long[]) column).length;
+			else if(column instanceof int[]) size = ((int[]) column).length;
+			else throw new ExpressionException("Invalid column for variable '"+variables.getName(slot)+"' (expected double[], long[] or int[])");
+			if(size < offset + length) throw new ExpressionException("Column of variable '"+variables.getName(slot)+"' has only "+size+" rows");
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package dev.wolveringer.jee;
+
+/**
+ * An expression compiled into its own JVM class by {@link CompiledExpression#compileBytecode()}.
+ * The bindings are indexed by variable slot, exactly like {@link CompiledExpression#evaluateDouble(double...)}.
+ */
+public interface BytecodeExpression {
+	public double evaluateDouble(double[] bindings);
+	
+	public long evaluateLong(double[] bindings);
+}
@@ -0,0 +1,187 @@
+package dev.wolveringer.jee;
+
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionMetrics.ExpressionStats;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * An expression which has been parsed once by {@link ExpressionEvaluator#compile(String)}.
+ * Instances are immutable and can be evaluated concurrently from multiple threads.
+ * If the evaluator had {@link ExpressionMetrics} while compiling, every evaluation is recorded.
+ */
+public final class CompiledExpression {
+	private static final ExpressionValue<?>[] NO_BINDINGS = new ExpressionValue<?>[0];
+	private static final double[] NO_PRIMITIVE_BINDINGS = new double[0];
+	
+	@Getter
+	private final String expression;
+	private final ExpressionVariables variables;
+	@Getter(AccessLevel.PACKAGE)
+	private final ExpressionElement root;
+	/**
+	 * Whether the expression has been compiled in {@link ExpressionEvaluator#isExact() exact} mode.
+	 */
+	@Getter
+	private final boolean exact;
+	private final ExpressionElement evaluated; //The root, recording every evaluation if compiled with metrics
+	
+	CompiledExpression(String expression, ExpressionVariables variables, ExpressionElement root, boolean exact, ExpressionStats stats) {
+		this.expression = expression;
+		this.variables = variables;
+		this.root = root;
+		this.exact = exact;
+		this.evaluated = stats == null ? root : stats.record(root);
+	}
+	
+	public ExpressionVariables getVariables(){
+		return new ExpressionVariables(variables);
+	}
+	
+	/**
+	 * @return the binding slot of the variable or -1 if the expression hasn't declared it
+	 */
+	public int getSlot(String variable){
+		return variables.getSlot(variable);
+	}
+	
+	public ExpressionValue<?> evaluate(){
+		return evaluate(NO_BINDINGS);
+	}
+	
+	/**
+	 * Bindings of another type than the declared one are converted to the declared type first.
+	 * @param bindings the variable values, indexed by their slot
+	 */
+	public ExpressionValue<?> evaluate(ExpressionValue<?>... bindings){
+		if(bindings.length < variables.size()) throw new ExpressionException("Missing variable bindings. Required "+variables.size()+" but got "+bindings.length);
+		return evaluated.parse(checkBindings(bindings));
+	}
+	
+	/**
+	 * @return the bindings with the declared types, the array is only copied if a binding has to be converted
+	 */
+	private ExpressionValue<?>[] checkBindings(ExpressionValue<?>[] bindings){
+		ExpressionValue<?>[] checked = bindings;
+		for(int slot = 0;slot<variables.size();slot++){
+			ExpressionValue<?> value = bindings[slot];
+			Type type = variables.getType(slot);
+			if(value == null) throw new ExpressionException("Variable '"+variables.getName(slot)+"' isn't bound");
+			if(value.getType() == type) continue;
+			if(checked == bindings) checked = bindings.clone();
+			try {
+				checked[slot] = ExpressionEvaluator.convert(value, type);
+			} catch (ExpressionException e) {
+				throw new ExpressionException("Variable '"+variables.getName(slot)+"' of type "+type+" cant be bound to a value of type "+value.getType());
+			}
+		}
+		return checked;
+	}
+	
+	/**
+	 * @return the names of the variables the expression actually reads, in slot order
+	 */
+	public Set<String> getReferencedVariables(){
+		BitSet slots = new BitSet(variables.size());
+		ExpressionEvaluator.collectSlots(root, slots);
+		Set<String> names = new LinkedHashSet<>();
+		for(int slot = slots.nextSetBit(0);slot >= 0;slot = slots.nextSetBit(slot + 1))
+			names.add(variables.getName(slot));
+		return names;
+	}
+	
+	/**
+	 * @return the parsed expression with all braces made explicit
+	 */
+	public String getTree(){
+		return ExpressionEvaluator.print(root);
+	}
+	
+	/**
+	 * @return the result type of the primitive evaluation, inferred at compile time
+	 */
+	public Type getType(){
+		return root.getType();
+	}
+	
+	public double evaluateDouble(){
+		return evaluateDouble(NO_PRIMITIVE_BINDINGS);
+	}
+	
+	/**
+	 * Evaluates the expression without boxing any value.
+	 * Every variable is read from its slot and converted to its declared type.
+	 */
+	public double evaluateDouble(double... bindings){
+		if(bindings.length < variables.size()) throw new ExpressionException("Missing variable bindings. Required "+variables.size()+" but got "+bindings.length);
+		return evaluated.parseDouble(bindings);
+	}
+	
+	public long evaluateLong(){
+		return evaluateLong(NO_PRIMITIVE_BINDINGS);
+	}
+	
+	/**
+	 * LONG bindings above 2^53 can't be passed as double exactly, use {@link #evaluateLong(long[])} for them.
+	 * @see #evaluateDouble(double...)
+	 */
+	public long evaluateLong(double... bindings){
+		if(bindings.length < variables.size()) throw new ExpressionException("Missing variable bindings. Required "+variables.size()+" but got "+bindings.length);
+		return evaluated.parseLong(bindings);
+	}
+	
+	/**
+	 * Evaluates the expression with integer bindings, which are passed on without rounding them to a double.
+	 * The bindings are boxed like for {@link #evaluate(ExpressionValue...)}, a big result throws an {@link ArithmeticException} if it doesn't fit into a long.
+	 */
+	public long evaluateLong(long[] bindings){
+		if(bindings.length < variables.size()) throw new ExpressionException("Missing variable bindings. Required "+variables.size()+" but got "+bindings.length);
+		ExpressionValue<?>[] values = new ExpressionValue<?>[variables.size()];
+		for(int slot = 0;slot<values.length;slot++)
+			values[slot] = ExpressionValue.of(bindings[slot]);
+		return ExpressionEvaluator.asLongExact(evaluate(values));
+	}
+	
+	/**
+	 * Evaluates a condition, any value other than 0 is true.
+	 * @see #evaluateDouble(double...)
+	 */
+	public boolean evaluateBoolean(double... bindings){
+		if(bindings.length < variables.size()) throw new ExpressionException("Missing variable bindings. Required "+variables.size()+" but got "+bindings.length);
+		return ExpressionEvaluator.isDecimal(root.getType()) || root.getType().isBig() ? evaluated.parseDouble(bindings) != 0 : evaluated.parseLong(bindings) != 0;
+	}
+	
+	/**
+	 * Generates a JVM class evaluating this expression with primitive values.
+	 * Every call defines a new class, so the result should be kept for as long as the expression is used.
+	 */
+	public BytecodeExpression compileBytecode(){
+		return new ExpressionBytecodeCompiler().compile(root);
+	}
+	
+	/**
+	 * Translates this expression into a flat instruction array, evaluated without generating any class.
+	 * Use this instead of {@link #compileBytecode()} where defining classes at runtime isn't possible.
+	 */
+	public InstructionExpression compileInstructions(){
+		return new ExpressionInstructionCompiler().compile(root, variables.size());
+	}
+	
+	/**
+	 * Prepares this expression for the evaluation of whole columns, see {@link BatchExpression}.
+	 */
+	public BatchExpression compileBatch(){
+		return new BatchExpression(variables, root);
+	}
+	
+	@Override
+	public String toString() {
+		return "CompiledExpression [" + expression + "]";
+	}
+}
@@ -0,0 +1,472 @@
+package dev.wolveringer.jee;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+
+import dev.wolveringer.jee.ExpressionEvaluator.CastExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.CompareOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ConditionalExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.EvalatedExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.FunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.LogicalOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NotExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberBiFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberTriFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberUnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.OperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.UnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.VariableExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberBiFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberTriFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicCompareOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicLogicalOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicNumberOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.ExactNumberOperator;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Generates a {@link BytecodeExpression} class for an expression tree.
+ * The built in arithmetic operators, literals and variables are emitted as plain JVM instructions so the JIT can inline the whole formula.
+ * Functions based on {@link BasicNumberFunction}, {@link BasicNumberBiFunction} and {@link BasicNumberTriFunction} are called with primitive values.
+ * Every other element (custom functions and operators) is called through its tree evaluation.
+ * Elements shared within the tree (see {@link ExpressionOptimizer}) are evaluated once and kept in a local variable.
+ */
+class ExpressionBytecodeCompiler {
+	private static final AtomicInteger CLASS_ID = new AtomicInteger();
+	private static final String INTERFACE = org.objectweb.asm.Type.getInternalName(BytecodeExpression.class);
+	private static final String FALLBACKS_DESC = "[" + org.objectweb.asm.Type.getDescriptor(BytecodeExpression.class);
+	private static final String FUNCTIONS_DESC = "[Ljava/lang/Object;";
+	private static final String NUMBER_FUNCTION = org.objectweb.asm.Type.getInternalName(BasicNumberFunction.class);
+	private static final String NUMBER_BI_FUNCTION = org.objectweb.asm.Type.getInternalName(BasicNumberBiFunction.class);
+	private static final String NUMBER_TRI_FUNCTION = org.objectweb.asm.Type.getInternalName(BasicNumberTriFunction.class);
+	
+	private static class ExpressionClassLoader extends ClassLoader {
+		public ExpressionClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+		
+		public Class<?> define(String name, byte[] data){
+			return defineClass(name, data, 0, data.length);
+		}
+	}
+	
+	@RequiredArgsConstructor
+	private static class ElementFallback implements BytecodeExpression {
+		private final ExpressionElement element;
+		
+		@Override
+		public double evaluateDouble(double[] bindings) {
+			return element.parseDouble(bindings);
+		}
+		
+		@Override
+		public long evaluateLong(double[] bindings) {
+			return element.parseLong(bindings);
+		}
+	}
+	
+	private final List<BytecodeExpression> fallbacks = new ArrayList<>();
+	private final List<Object> functions = new ArrayList<>();
+	private final Map<ExpressionElement, Integer> references = new IdentityHashMap<>();
+	private final Map<ExpressionElement, Integer> locals = new IdentityHashMap<>();
+	private int nextLocal;
+	private String className;
+	
+	public BytecodeExpression compile(ExpressionElement root){
+		className = "dev/wolveringer/jee/generated/Expression" + CLASS_ID.incrementAndGet();
+		countReferences(root);
+		
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object", new String[]{ INTERFACE });
+		cw.visitField(ACC_PRIVATE | ACC_FINAL, "fallbacks", FALLBACKS_DESC, null, null).visitEnd();
+		cw.visitField(ACC_PRIVATE | ACC_FINAL, "functions", FUNCTIONS_DESC, null, null).visitEnd();
+		
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + FALLBACKS_DESC + FUNCTIONS_DESC + ")V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitFieldInsn(PUTFIELD, className, "fallbacks", FALLBACKS_DESC);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 2);
+		mv.visitFieldInsn(PUTFIELD, className, "functions", FUNCTIONS_DESC);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		
+		mv = cw.visitMethod(ACC_PUBLIC, "evaluateDouble", "([D)D", null, null);
+		mv.visitCode();
+		resetLocals();
+		emitRoot(mv, root, Type.DOUBLE);
+		mv.visitInsn(DRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		
+		mv = cw.visitMethod(ACC_PUBLIC, "evaluateLong", "([D)J", null, null);
+		mv.visitCode();
+		resetLocals();
+		emitRoot(mv, root, Type.LONG);
+		mv.visitInsn(LRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		
+		try {
+			Class<?> clazz = new ExpressionClassLoader(BytecodeExpression.class.getClassLoader()).define(className.replace('/', '.'), cw.toByteArray());
+			return (BytecodeExpression) clazz.getConstructor(BytecodeExpression[].class, Object[].class).newInstance(fallbacks.toArray(new BytecodeExpression[0]), functions.toArray());
+		} catch (MethodTooLargeException | ClassTooLargeException e) {
+			throw new ExpressionException("Expression is too large to be compiled to bytecode", e);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new ExpressionException("Failed to generate expression class: "+e.getMessage(), e);
+		}
+	}
+	
+	private void countReferences(ExpressionElement element){
+		if(references.merge(element, 1, Integer::sum) > 1) return; //Children already counted
+		if(element instanceof OperatorExpressionElement){
+			countReferences(((OperatorExpressionElement) element).getFirst());
+			countReferences(((OperatorExpressionElement) element).getNext());
+		} else if(element instanceof UnaryOperatorExpressionElement){
+			countReferences(((UnaryOperatorExpressionElement) element).getValue());
+		} else if(element instanceof ConditionalExpressionElement){
+			countReferences(((ConditionalExpressionElement) element).getCondition());
+			countReferences(((ConditionalExpressionElement) element).getThen());
+			countReferences(((ConditionalExpressionElement) element).getOtherwise());
+		} else if(element instanceof FunctionExpressionElement){
+			for(ExpressionElement parm : ((FunctionExpressionElement) element).getParms())
+				countReferences(parm);
+		}
+	}
+	
+	private void resetLocals(){
+		locals.clear();
+		nextLocal = 2; //0 = this, 1 = bindings
+	}
+	
+	/**
+	 * A big result is evaluated by a fallback with the primitive type of the method, so it isn't truncated to the primitive type of the element.
+	 */
+	private void emitRoot(MethodVisitor mv, ExpressionElement root, Type type){
+		if(root.getType().isBig()){
+			emitFallback(mv, root, type);
+			return;
+		}
+		emit(mv, root);
+		convert(mv, root.getType(), type);
+	}
+	
+	private void emit(MethodVisitor mv, ExpressionElement element){
+		Integer local = locals.get(element);
+		if(local != null){
+			mv.visitVarInsn(jvmType(element.getType()).getOpcode(ILOAD), local);
+			return;
+		}
+		
+		emitElement(mv, element);
+		if(references.get(element) > 1 && !(element instanceof EvalatedExpressionElement) && !(element instanceof VariableExpressionElement)){
+			org.objectweb.asm.Type jvmType = jvmType(element.getType());
+			mv.visitInsn(jvmType.getSize() == 2 ? DUP2 : DUP);
+			mv.visitVarInsn(jvmType.getOpcode(ISTORE), nextLocal);
+			locals.put(element, nextLocal);
+			nextLocal += jvmType.getSize();
+		}
+	}
+	
+	private void emitElement(MethodVisitor mv, ExpressionElement element){
+		Type type = element.getType();
+		if(element instanceof CastExpressionElement){
+			ExpressionElement value = ((CastExpressionElement) element).getValue();
+			emit(mv, value);
+			convert(mv, value.getType(), type);
+			return;
+		} else if(element instanceof EvalatedExpressionElement){
+			EvalatedExpressionElement e = (EvalatedExpressionElement) element;
+			switch(type){
+			case DOUBLE:
+				mv.visitLdcInsn(e.getDoubleValue());
+				return;
+			case FLOAT:
+				mv.visitLdcInsn((float) e.getDoubleValue());
+				return;
+			case LONG:
+				mv.visitLdcInsn(e.getLongValue());
+				return;
+			case INT:
+			case SHORT:
+			case BYTE:
+			case BOOLEAN:
+				mv.visitLdcInsn((int) e.getLongValue());
+				return;
+			default:
+				break;
+			}
+		} else if(element instanceof VariableExpressionElement && !type.isBig()){ //Big variables are range checked by the fallback
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitLdcInsn(((VariableExpressionElement) element).getSlot());
+			mv.visitInsn(DALOAD);
+			if(type == Type.BOOLEAN){
+				mv.visitInsn(DCONST_0);
+				mv.visitInsn(DCMPL);
+				emitCondition(mv, IFNE); //Everything except 0 is true
+			} else convert(mv, Type.DOUBLE, type);
+			return;
+		} else if(element instanceof CompareOperatorExpressionElement){
+			CompareOperatorExpressionElement e = (CompareOperatorExpressionElement) element;
+			Type operandType = ((BasicCompareOperator) e.getOperator()).getOperandType(e.getFirst().getType(), e.getNext().getType());
+			Type compareType = ExpressionEvaluator.isDecimal(operandType) ? Type.DOUBLE : Type.LONG;
+			int condition = compareCondition(e.getOperator());
+			if(condition >= 0){
+				emit(mv, e.getFirst());
+				convert(mv, e.getFirst().getType(), operandType);
+				convert(mv, operandType, compareType);
+				emit(mv, e.getNext());
+				convert(mv, e.getNext().getType(), operandType);
+				convert(mv, operandType, compareType);
+				if(compareType == Type.LONG) mv.visitInsn(LCMP);
+				else mv.visitInsn(condition == IFLT || condition == IFLE ? DCMPG : DCMPL); //NaN compares false
+				emitCondition(mv, condition);
+				return;
+			}
+		} else if(element instanceof LogicalOperatorExpressionElement){
+			LogicalOperatorExpressionElement e = (LogicalOperatorExpressionElement) element;
+			boolean shortCircuit = ((BasicLogicalOperator) e.getOperator()).getShortCircuitValue();
+			Label decided = new Label();
+			Label end = new Label();
+			emit(mv, e.getFirst());
+			mv.visitJumpInsn(shortCircuit ? IFNE : IFEQ, decided);
+			emitBranch(mv, e.getNext());
+			mv.visitJumpInsn(GOTO, end);
+			mv.visitLabel(decided);
+			mv.visitInsn(shortCircuit ? ICONST_1 : ICONST_0);
+			mv.visitLabel(end);
+			return;
+		} else if(element instanceof NotExpressionElement){
+			emit(mv, ((NotExpressionElement) element).getValue());
+			mv.visitInsn(ICONST_1);
+			mv.visitInsn(IXOR);
+			return;
+		} else if(element instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+			Label otherwise = new Label();
+			Label end = new Label();
+			emit(mv, e.getCondition());
+			mv.visitJumpInsn(IFEQ, otherwise);
+			emitBranch(mv, e.getThen());
+			convert(mv, e.getThen().getType(), type);
+			mv.visitJumpInsn(GOTO, end);
+			mv.visitLabel(otherwise);
+			emitBranch(mv, e.getOtherwise());
+			convert(mv, e.getOtherwise().getType(), type);
+			mv.visitLabel(end);
+			return;
+		} else if(element instanceof NumberOperatorExpressionElement){
+			NumberOperatorExpressionElement e = (NumberOperatorExpressionElement) element;
+			int opcode = arithmeticOpcode(e.getOperator());
+			String exact = null;
+			if(e.getOperator() instanceof ExactNumberOperator){
+				BasicNumberOperator wrapping = ((ExactNumberOperator) e.getOperator()).getWrapping();
+				if(ExpressionEvaluator.isDecimal(type)) opcode = arithmeticOpcode(wrapping); //Decimals don't overflow
+				else if(type == Type.INT || type == Type.LONG) exact = exactMethod(wrapping);
+			}
+			if(opcode >= 0 || exact != null){
+				emit(mv, e.getFirst());
+				convert(mv, e.getFirst().getType(), type);
+				emit(mv, e.getNext());
+				convert(mv, e.getNext().getType(), type);
+				if(exact != null) mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", exact, type == Type.LONG ? "(JJ)J" : "(II)I", false);
+				else mv.visitInsn(jvmType(type).getOpcode(opcode));
+				narrow(mv, type);
+				return;
+			}
+		} else if(element instanceof NumberUnaryOperatorExpressionElement){
+			NumberUnaryOperatorExpressionElement e = (NumberUnaryOperatorExpressionElement) element;
+			if(e.getOperator() == ExpressionEvaluatorOperators.MATH_POSITIVE || e.getOperator() == ExpressionEvaluatorOperators.MATH_NEGATE){
+				emit(mv, e.getValue());
+				convert(mv, e.getValue().getType(), type);
+				if(e.getOperator() == ExpressionEvaluatorOperators.MATH_NEGATE){
+					mv.visitInsn(jvmType(type).getOpcode(INEG));
+					narrow(mv, type);
+				}
+				return;
+			} else if(e.getOperator() == ExpressionEvaluatorOperators.MATH_NEGATE_EXACT && type != Type.SHORT && type != Type.BYTE){
+				emit(mv, e.getValue());
+				convert(mv, e.getValue().getType(), type);
+				if(type == Type.INT) mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "negateExact", "(I)I", false);
+				else if(type == Type.LONG) mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "negateExact", "(J)J", false);
+				else mv.visitInsn(jvmType(type).getOpcode(INEG));
+				return;
+			}
+		} else if(element instanceof NumberFunctionExpressionElement || element instanceof NumberBiFunctionExpressionElement || element instanceof NumberTriFunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			String owner = element instanceof NumberFunctionExpressionElement ? NUMBER_FUNCTION : element instanceof NumberBiFunctionExpressionElement ? NUMBER_BI_FUNCTION : NUMBER_TRI_FUNCTION;
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "functions", FUNCTIONS_DESC);
+			mv.visitLdcInsn(functions.size());
+			mv.visitInsn(AALOAD);
+			mv.visitTypeInsn(CHECKCAST, owner);
+			functions.add(e.getFunction());
+			
+			StringBuilder desc = new StringBuilder("(");
+			for(ExpressionElement parm : e.getParms()){
+				emit(mv, parm);
+				convert(mv, parm.getType(), type);
+				desc.append(descriptor(type));
+			}
+			desc.append(")").append(descriptor(type));
+			mv.visitMethodInsn(INVOKEVIRTUAL, owner, "applay", desc.toString(), false);
+			return;
+		}
+		
+		emitFallback(mv, element, type);
+	}
+	
+	private void emitFallback(MethodVisitor mv, ExpressionElement element, Type type){
+		int index = fallbacks.size();
+		fallbacks.add(new ElementFallback(element));
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, "fallbacks", FALLBACKS_DESC);
+		mv.visitLdcInsn(index);
+		mv.visitInsn(AALOAD);
+		mv.visitVarInsn(ALOAD, 1);
+		if(ExpressionEvaluator.isDecimal(type)){
+			mv.visitMethodInsn(INVOKEINTERFACE, INTERFACE, "evaluateDouble", "([D)D", true);
+			convert(mv, Type.DOUBLE, type);
+		} else {
+			mv.visitMethodInsn(INVOKEINTERFACE, INTERFACE, "evaluateLong", "([D)J", true);
+			convert(mv, Type.LONG, type);
+		}
+	}
+	
+	/**
+	 * Emits an element which is evaluated conditionally. Values it stores into locals aren't visible afterwards, because they may not have been computed.
+	 */
+	private void emitBranch(MethodVisitor mv, ExpressionElement element){
+		Map<ExpressionElement, Integer> known = new IdentityHashMap<>(locals);
+		emit(mv, element);
+		locals.clear();
+		locals.putAll(known);
+	}
+	
+	/**
+	 * Replaces the compare result on the stack with 1 if the jump condition holds and 0 otherwise.
+	 */
+	private static void emitCondition(MethodVisitor mv, int condition){
+		Label holds = new Label();
+		Label end = new Label();
+		mv.visitJumpInsn(condition, holds);
+		mv.visitInsn(ICONST_0);
+		mv.visitJumpInsn(GOTO, end);
+		mv.visitLabel(holds);
+		mv.visitInsn(ICONST_1);
+		mv.visitLabel(end);
+	}
+	
+	private static int compareCondition(Object operator){
+		if(operator == ExpressionEvaluatorOperators.COMPARE_EQUALS) return IFEQ;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_NOT_EQUALS) return IFNE;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_LESS) return IFLT;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_LESS_EQUALS) return IFLE;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_GREATER) return IFGT;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_GREATER_EQUALS) return IFGE;
+		return -1;
+	}
+	
+	private static int arithmeticOpcode(Object operator){
+		if(operator == ExpressionEvaluatorOperators.MATH_PLUS) return IADD;
+		if(operator == ExpressionEvaluatorOperators.MATH_MUNUS) return ISUB;
+		if(operator == ExpressionEvaluatorOperators.MATH_MULTIPLY) return IMUL;
+		if(operator == ExpressionEvaluatorOperators.MATH_DIVIDIDE) return IDIV;
+		return -1;
+	}
+	
+	/**
+	 * @return the overflow checking method of {@link Math} for the operator, division has none
+	 */
+	private static String exactMethod(Object operator){
+		if(operator == ExpressionEvaluatorOperators.MATH_PLUS) return "addExact";
+		if(operator == ExpressionEvaluatorOperators.MATH_MUNUS) return "subtractExact";
+		if(operator == ExpressionEvaluatorOperators.MATH_MULTIPLY) return "multiplyExact";
+		return null;
+	}
+	
+	private static org.objectweb.asm.Type jvmType(Type type){
+		switch(type){
+		case DOUBLE:
+		case BIG_DECIMAL: //Evaluated by fallbacks, only passed on as primitive
+			return org.objectweb.asm.Type.DOUBLE_TYPE;
+		case FLOAT:
+			return org.objectweb.asm.Type.FLOAT_TYPE;
+		case LONG:
+		case BIG_INTEGER:
+			return org.objectweb.asm.Type.LONG_TYPE;
+		case INT:
+		case SHORT:
+		case BYTE:
+		case BOOLEAN:
+			return org.objectweb.asm.Type.INT_TYPE;
+		default:
+			throw new ExpressionException("Type "+type+" cant be compiled to bytecode");
+		}
+	}
+	
+	/**
+	 * @return the descriptor of the primitive method parameters for the type
+	 */
+	private static String descriptor(Type type){
+		switch(type){
+		case SHORT:
+			return "S";
+		case BYTE:
+			return "B";
+		default:
+			return jvmType(type).getDescriptor();
+		}
+	}
+	
+	private static void narrow(MethodVisitor mv, Type type){
+		if(type == Type.SHORT) mv.visitInsn(I2S);
+		else if(type == Type.BYTE) mv.visitInsn(I2B);
+	}
+	
+	/**
+	 * Emits the same conversion as a java cast from one expression type to another.
+	 */
+	private static void convert(MethodVisitor mv, Type from, Type to){
+		org.objectweb.asm.Type source = jvmType(from);
+		org.objectweb.asm.Type target = jvmType(to);
+		if(!source.equals(target)){
+			switch(source.getSort()){
+			case org.objectweb.asm.Type.DOUBLE:
+				mv.visitInsn(target == org.objectweb.asm.Type.FLOAT_TYPE ? D2F : target == org.objectweb.asm.Type.LONG_TYPE ? D2L : D2I);
+				break;
+			case org.objectweb.asm.Type.FLOAT:
+				mv.visitInsn(target == org.objectweb.asm.Type.DOUBLE_TYPE ? F2D : target == org.objectweb.asm.Type.LONG_TYPE ? F2L : F2I);
+				break;
+			case org.objectweb.asm.Type.LONG:
+				mv.visitInsn(target == org.objectweb.asm.Type.DOUBLE_TYPE ? L2D : target == org.objectweb.asm.Type.FLOAT_TYPE ? L2F : L2I);
+				break;
+			default:
+				mv.visitInsn(target == org.objectweb.asm.Type.DOUBLE_TYPE ? I2D : target == org.objectweb.asm.Type.FLOAT_TYPE ? I2F : I2L);
+				break;
+			}
+		}
+		if(from != to) narrow(mv, to);
+	}
+}
@@ -0,0 +1,198 @@
+package dev.wolveringer.jee;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.Validate;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Bounded cache of compiled expressions in front of an {@link ExpressionEvaluator}.
+ * Lookups only read a {@link ConcurrentHashMap} and stamp the entry, they never lock.
+ * When the entry count or the total weight (the length of the expressions) exceeds the bounds, the least recently used entries are evicted in one batch.
+ */
+public class ExpressionCache {
+	@RequiredArgsConstructor
+	@Getter
+	@ToString
+	public static class CacheStats {
+		private final long hitCount;
+		private final long missCount;
+		private final long evictionCount;
+		private final int size;
+		private final long weight;
+		
+		public double getHitRate(){
+			long requests = hitCount + missCount;
+			return requests == 0 ? 0D : (double) hitCount / requests;
+		}
+	}
+	
+	/**
+	 * The evaluator settings are part of the key, an expression compiled with other settings is never returned.
+	 */
+	@RequiredArgsConstructor
+	@EqualsAndHashCode
+	private static class CacheKey {
+		private final String expression;
+		private final ExpressionVariables variables;
+		private final boolean exact;
+		private final boolean optimize;
+		private final ExpressionTracer tracer;
+		private final ExpressionMetrics metrics;
+	}
+	
+	@RequiredArgsConstructor
+	private static class CacheEntry {
+		private final CacheKey key;
+		private final CompiledExpression expression;
+		private final int weight;
+		private volatile long lastAccess;
+	}
+	
+	private static final float EVICTION_FACTOR = 0.9F;
+	
+	@Getter
+	private final ExpressionEvaluator evaluator;
+	@Getter
+	private final int maxSize;
+	@Getter
+	private final long maxWeight;
+	
+	private final ConcurrentHashMap<CacheKey, CacheEntry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong weight = new AtomicLong();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	
+	public ExpressionCache(ExpressionEvaluator evaluator, int maxSize) {
+		this(evaluator, maxSize, Long.MAX_VALUE);
+	}
+	
+	public ExpressionCache(ExpressionEvaluator evaluator, int maxSize, long maxWeight) {
+		Validate.notNull(evaluator, "evaluator");
+		Validate.isTrue(maxSize > 0, "maxSize must be positive");
+		Validate.isTrue(maxWeight > 0, "maxWeight must be positive");
+		this.evaluator = evaluator;
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+	}
+	
+	/**
+	 * Collapses whitespace runs into one space, which never changes how an expression is tokenized.
+	 */
+	public static String normalize(String expression){
+		StringBuilder sb = new StringBuilder(expression.length());
+		boolean space = false;
+		for(int i = 0;i<expression.length();i++){
+			char c = expression.charAt(i);
+			if(Character.isWhitespace(c)){
+				space = true;
+				continue;
+			}
+			if(space && sb.length() > 0) sb.append(' ');
+			space = false;
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+	
+	public CompiledExpression compile(String expression){
+		return compile(expression, ExpressionVariables.EMPTY);
+	}
+	
+	public CompiledExpression compile(String expression, String... variables){
+		return compile(expression, ExpressionVariables.of(variables));
+	}
+	
+	public CompiledExpression compile(String expression, ExpressionVariables variables){
+		Validate.notNull(expression, "expression");
+		Validate.notNull(variables, "variables");
+		CacheKey key = key(normalize(expression), variables);
+		CacheEntry entry = entries.get(key);
+		if(entry != null){
+			hits.increment();
+			entry.lastAccess = System.nanoTime();
+			return entry.expression;
+		}
+		
+		boolean[] created = new boolean[1];
+		entry = entries.computeIfAbsent(new CacheKey(key.expression, new ExpressionVariables(variables), key.exact, key.optimize, key.tracer, key.metrics), k -> {
+			created[0] = true;
+			CompiledExpression compiled = evaluator.compile(k.expression, k.variables);
+			return new CacheEntry(k, compiled, k.expression.length());
+		});
+		entry.lastAccess = System.nanoTime();
+		if(created[0]){
+			misses.increment();
+			weight.addAndGet(entry.weight);
+			evictIfRequired();
+		} else hits.increment();
+		return entry.expression;
+	}
+	
+	public CompiledExpression getIfPresent(String expression, ExpressionVariables variables){
+		CacheEntry entry = entries.get(key(normalize(expression), variables));
+		if(entry == null) return null;
+		entry.lastAccess = System.nanoTime();
+		return entry.expression;
+	}
+	
+	private CacheKey key(String expression, ExpressionVariables variables){
+		return new CacheKey(expression, variables, evaluator.isExact(), evaluator.isOptimize(), evaluator.getTracer(), evaluator.getMetrics());
+	}
+	
+	public void invalidateAll(){
+		evictionLock.lock();
+		try {
+			for(CacheEntry entry : entries.values())
+				if(entries.remove(entry.key, entry)) weight.addAndGet(-entry.weight);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+	
+	public int size(){
+		return entries.size();
+	}
+	
+	public CacheStats getStats(){
+		return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), weight.get());
+	}
+	
+	private void evictIfRequired(){
+		if(entries.size() <= maxSize && weight.get() <= maxWeight) return;
+		if(!evictionLock.tryLock()) return; //Another thread is already evicting
+		try {
+			List<CacheEntry> candidates = new ArrayList<>(entries.values());
+			Map<CacheEntry, Long> accessed = new IdentityHashMap<>(); //Snapshot, lastAccess may change while sorting
+			for(CacheEntry entry : candidates)
+				accessed.put(entry, entry.lastAccess);
+			candidates.sort(Comparator.comparingLong(accessed::get));
+			int targetSize = Math.max(1, (int) (maxSize * EVICTION_FACTOR));
+			long targetWeight = (long) (maxWeight * (double) EVICTION_FACTOR);
+			for(CacheEntry entry : candidates){
+				if(entries.size() <= targetSize && weight.get() <= targetWeight) break;
+				if(entries.remove(entry.key, entry)){
+					weight.addAndGet(-entry.weight);
+					evictions.increment();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+}
@@ -1,30 +1,94 @@
 package dev.wolveringer.jee;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.Validate;
 
-import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberBiFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberTriFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.ExactNumberFunction;
 import dev.wolveringer.jee.ExpressionEvaluatorFunctions.ExpressionFunction;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.TypeClass;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicCompareOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicLogicalOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicNumberOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicNumberUnaryOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.ExactNumberOperator;
 import dev.wolveringer.jee.ExpressionEvaluatorOperators.Operator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.UnaryOperator;
+import dev.wolveringer.jee.ExpressionLexer.Token;
+import dev.wolveringer.jee.ExpressionMetrics.ExpressionStats;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 
 public class ExpressionEvaluator {
+	private final ExpressionRegistry<ExpressionFunction> functions;
+	private final ExpressionRegistry<Operator> operators;
+	private final ExpressionRegistry<UnaryOperator> unaryOperators;
+	@Getter
+	@Setter
+	private volatile ExpressionTracer tracer;
+	/**
+	 * Metrics recording the evaluations of the expressions compiled afterwards, null to record nothing.
+	 */
+	@Getter
+	@Setter
+	private volatile ExpressionMetrics metrics;
+	/**
+	 * Fold constants and share equal subtrees when compiling. Expressions compiled with a tracer are never optimized.
+	 */
+	@Getter
+	@Setter
+	private volatile boolean optimize = true;
+	/**
+	 * Compile the integer arithmetic with overflow checks, see {@link ExpressionEvaluatorOperators.ExactNumberOperator}.
+	 */
+	@Getter
+	@Setter
+	private volatile boolean exact = false;
+	
+	/**
+	 * Creates an evaluator with its own function and operator scope, inheriting everything registered in {@link ExpressionEvaluatorFunctions} and {@link ExpressionEvaluatorOperators}.
+	 */
+	public ExpressionEvaluator() {
+		this.functions = new ExpressionRegistry<>(ExpressionFunction::getName, ExpressionEvaluatorFunctions.getRegistry());
+		this.operators = new ExpressionRegistry<>(Operator::getOperator, ExpressionEvaluatorOperators.getRegistry());
+		this.unaryOperators = new ExpressionRegistry<>(UnaryOperator::getOperator, ExpressionEvaluatorOperators.getUnaryRegistry());
+	}
+	
+	/**
+	 * Creates an evaluator whose scope inherits the functions and operators of the parent evaluator.
+	 */
+	public ExpressionEvaluator(ExpressionEvaluator parent) {
+		this.functions = new ExpressionRegistry<>(ExpressionFunction::getName, parent.functions);
+		this.operators = new ExpressionRegistry<>(Operator::getOperator, parent.operators);
+		this.unaryOperators = new ExpressionRegistry<>(UnaryOperator::getOperator, parent.unaryOperators);
+	}
+	
 	@RequiredArgsConstructor
 	@ToString
-	static class ExpressionValue<VType> {
+	public static class ExpressionValue<VType> {
 		public static enum TypeClass {
 			TEXT,
 			NUMBER,
 			DECIMAL_NUMBER,
+			BOOLEAN,
 			NULL
 		}
 		
@@ -38,19 +102,59 @@ public class ExpressionEvaluator {
 			INT(TypeClass.NUMBER),
 			SHORT(TypeClass.NUMBER),
 			BYTE(TypeClass.NUMBER),
-			NULL(TypeClass.NULL);
+			BOOLEAN(TypeClass.BOOLEAN),
+			NULL(TypeClass.NULL),
+			BIG_INTEGER(TypeClass.NUMBER),
+			BIG_DECIMAL(TypeClass.DECIMAL_NUMBER);
 			
 			private final TypeClass root;
+			
+			public boolean isNumeric(){
+				return root == TypeClass.NUMBER || root == TypeClass.DECIMAL_NUMBER;
+			}
+			
+			/**
+			 * @return true for the arbitrary precision types, which have no primitive representation
+			 */
+			public boolean isBig(){
+				return this == BIG_INTEGER || this == BIG_DECIMAL;
+			}
+			
+			/**
+			 * @return the type two numbers are promoted to when combined (BIG_DECIMAL > DOUBLE > FLOAT > BIG_INTEGER > LONG > INT > SHORT > BYTE).
+			 * A BIG_INTEGER combined with a decimal is promoted to BIG_DECIMAL.
+			 */
+			public static Type promote(Type a, Type b){
+				if(!a.isNumeric()) throw new ExpressionException("Invalid type! ("+a+" isn't numeric!)");
+				if(!b.isNumeric()) throw new ExpressionException("Invalid type! ("+b+" isn't numeric!)");
+				if(a == BIG_DECIMAL || b == BIG_DECIMAL) return BIG_DECIMAL;
+				if(a == BIG_INTEGER || b == BIG_INTEGER) return a.root == TypeClass.DECIMAL_NUMBER || b.root == TypeClass.DECIMAL_NUMBER ? BIG_DECIMAL : BIG_INTEGER;
+				if(a == DOUBLE || b == DOUBLE) return DOUBLE;
+				if(a == FLOAT || b == FLOAT) return FLOAT;
+				if(a == LONG || b == LONG) return LONG;
+				if(a == INT || b == INT) return INT;
+				if(a == SHORT || b == SHORT) return SHORT;
+				return BYTE;
+			}
 		}
 		
 		@Getter
 		private final Type type;
 		private final VType val;
 		
+		/**
+		 * Booleans are converted to 1 and 0, like in the primitive evaluation.
+		 */
 		public Number asNumber(){
+			if(val instanceof Boolean) return ((Boolean) val) ? 1 : 0;
 			return (Number) val;
 		}
 		
+		public boolean asBoolean(){
+			if(val instanceof Boolean) return (Boolean) val;
+			return asDouble() != 0;
+		}
+		
 		public String asString(){
 			return String.valueOf(val);
 		}
@@ -79,10 +183,63 @@ public class ExpressionEvaluator {
 			return asNumber().byteValue();
 		}
 		
+		/**
+		 * Decimals are converted with their shortest decimal representation, like {@link Double#toString(double)}.
+		 */
+		public BigDecimal asBigDecimal(){
+			Number value = asNumber();
+			if(value instanceof BigDecimal) return (BigDecimal) value;
+			if(value instanceof BigInteger) return new BigDecimal((BigInteger) value);
+			if(value instanceof Double || value instanceof Float){
+				if(Double.isNaN(value.doubleValue()) || Double.isInfinite(value.doubleValue())) throw new ExpressionException("Value "+value+" cant be converted to "+Type.BIG_DECIMAL);
+				return new BigDecimal(value.toString());
+			}
+			return BigDecimal.valueOf(value.longValue());
+		}
+		
+		/**
+		 * Decimals are truncated, like the conversion to long.
+		 */
+		public BigInteger asBigInteger(){
+			Number value = asNumber();
+			if(value instanceof BigInteger) return (BigInteger) value;
+			if(value instanceof BigDecimal) return ((BigDecimal) value).toBigInteger();
+			if(value instanceof Double || value instanceof Float) return asBigDecimal().toBigInteger();
+			return BigInteger.valueOf(value.longValue());
+		}
+		
 		public VType getValue(){
 			return val;
 		}
 		
+		public static ExpressionValue<Integer> of(int value){
+			return new ExpressionValue<Integer>(Type.INT, value);
+		}
+		
+		public static ExpressionValue<Long> of(long value){
+			return new ExpressionValue<Long>(Type.LONG, value);
+		}
+		
+		public static ExpressionValue<Float> of(float value){
+			return new ExpressionValue<Float>(Type.FLOAT, value);
+		}
+		
+		public static ExpressionValue<Double> of(double value){
+			return new ExpressionValue<Double>(Type.DOUBLE, value);
+		}
+		
+		public static ExpressionValue<Boolean> of(boolean value){
+			return new ExpressionValue<Boolean>(Type.BOOLEAN, value);
+		}
+		
+		public static ExpressionValue<BigInteger> of(BigInteger value){
+			return new ExpressionValue<BigInteger>(Type.BIG_INTEGER, value);
+		}
+		
+		public static ExpressionValue<BigDecimal> of(BigDecimal value){
+			return new ExpressionValue<BigDecimal>(Type.BIG_DECIMAL, value);
+		}
+		
 		public void enshureNumeric(){
 			if(!(type.getRoot() == TypeClass.DECIMAL_NUMBER || type.getRoot() == TypeClass.NUMBER))
 				throw new RuntimeException("Invalid type! ("+type+" isn't numeric!)");
@@ -90,48 +247,133 @@ public class ExpressionEvaluator {
 	}
 	
 	static interface ExpressionElement {
-		public ExpressionValue<?> parse();
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings);
+		
+		/**
+		 * @return the type of the value, resolved at compile time
+		 */
+		public Type getType();
+		
+		public double parseDouble(double[] bindings);
+		public long parseLong(double[] bindings);
+		
+		/**
+		 * Evaluates an element of a {@link Type#isBig() big} type with primitive bindings. The value keeps its full precision.
+		 */
+		public default ExpressionValue<?> parseValue(double[] bindings){
+			throw new ExpressionException("Type "+getType()+" cant be evaluated as number");
+		}
 	}
 	
-	@RequiredArgsConstructor
-	@Getter
-	@ToString
-	static class StringExpressionElement implements ExpressionElement{
-		private final String elm;
+	static boolean isDecimal(Type type){
+		return type.getRoot() == TypeClass.DECIMAL_NUMBER;
+	}
 	
-		public ExpressionValue<?> parse(){
-			String elm = this.elm.trim();
-			while(elm.startsWith("(") && elm.endsWith(")")) elm = elm.substring(1, elm.length() - 1);
-			
-			if(elm.matches("[0-9.flsb]+")){
-				if(elm.endsWith("f")){
-					return new ExpressionValue<Float>(Type.FLOAT, Float.valueOf(elm.substring(0, elm.length() - 1)));
-				} else if(elm.endsWith("l")){
-					return new ExpressionValue<Long>(Type.LONG, Long.valueOf(elm.substring(0, elm.length() - 1)));
-				} else if(elm.endsWith("s")){
-					return new ExpressionValue<Short>(Type.SHORT, Short.valueOf(elm.substring(0, elm.length() - 1)));
-				} else if(elm.endsWith("b")){
-					return new ExpressionValue<Byte>(Type.BYTE, Byte.valueOf(elm.substring(0, elm.length() - 1)));
-				} else if(elm.contains(".")){
-					return new ExpressionValue<Double>(Type.DOUBLE, Double.valueOf(elm.substring(0, elm.length() - 1)));
-				}
-				return new ExpressionValue<Integer>(Type.INT, Integer.valueOf(elm));
-			}
-			if(elm.contains(" ")) throw new ExpressionException("Invalid variable name '"+elm+"'/'"+elm.trim()+"'");
-			throw new ExpressionException("Cant find variable: "+elm);
-			//return null;
+	/**
+	 * @return the value as long, big values which don't fit into a long throw an {@link ArithmeticException} instead of being truncated
+	 */
+	static long asLongExact(ExpressionValue<?> value){
+		return value.getType().isBig() ? value.asBigInteger().longValueExact() : value.asLong();
+	}
+	
+	static long toLongExact(double value){
+		if(!(value >= -0x1p63 && value < 0x1p63)) throw new ArithmeticException("long overflow");
+		return (long) value;
+	}
+	
+	static ExpressionValue<?> parseBoxed(ExpressionElement elm, double[] bindings){
+		switch(elm.getType()){
+		case DOUBLE:
+			return new ExpressionValue<Double>(Type.DOUBLE, elm.parseDouble(bindings));
+		case FLOAT:
+			return new ExpressionValue<Float>(Type.FLOAT, (float) elm.parseDouble(bindings));
+		case LONG:
+			return new ExpressionValue<Long>(Type.LONG, elm.parseLong(bindings));
+		case INT:
+			return new ExpressionValue<Integer>(Type.INT, (int) elm.parseLong(bindings));
+		case SHORT:
+			return new ExpressionValue<Short>(Type.SHORT, (short) elm.parseLong(bindings));
+		case BYTE:
+			return new ExpressionValue<Byte>(Type.BYTE, (byte) elm.parseLong(bindings));
+		case BOOLEAN:
+			return ExpressionValue.of(elm.parseLong(bindings) != 0);
+		case BIG_INTEGER:
+		case BIG_DECIMAL:
+			return elm.parseValue(bindings);
+		default:
+			throw new ExpressionException("Type "+elm.getType()+" cant be evaluated as number");
+		}
+	}
+	
+	/**
+	 * Converts a value to the type, like a java cast. Big values are never narrowed, they are the result of an overflow in exact mode.
+	 */
+	static ExpressionValue<?> convert(ExpressionValue<?> value, Type type){
+		Type from = value.getType();
+		if(from == type || (from.isBig() && !type.isBig() && type.isNumeric())) return value;
+		if(!from.isNumeric() && from != Type.BOOLEAN) throw new ExpressionException("Type "+from+" cant be converted to "+type);
+		switch(type){
+		case DOUBLE:
+			return ExpressionValue.of(value.asDouble());
+		case FLOAT:
+			return ExpressionValue.of(value.asFloat());
+		case LONG:
+			return ExpressionValue.of(value.asLong());
+		case INT:
+			return ExpressionValue.of(value.asInt());
+		case SHORT:
+			return new ExpressionValue<Short>(Type.SHORT, value.asShort());
+		case BYTE:
+			return new ExpressionValue<Byte>(Type.BYTE, value.asByte());
+		case BOOLEAN:
+			return ExpressionValue.of(value.asBoolean());
+		case BIG_INTEGER:
+			return ExpressionValue.of(value.asBigInteger());
+		case BIG_DECIMAL:
+			return ExpressionValue.of(value.asBigDecimal());
+		default:
+			throw new ExpressionException("Type "+from+" cant be converted to "+type);
 		}
 	}
 	
-	@RequiredArgsConstructor
 	@Getter
 	static class EvalatedExpressionElement implements ExpressionElement {
 		private final ExpressionValue<?> value;
+		private final double doubleValue;
+		private final long longValue;
 		
-		public ExpressionValue<?> parse() {
+		public EvalatedExpressionElement(ExpressionValue<?> value) {
+			this.value = value;
+			boolean numeric = value.getValue() instanceof Number || value.getValue() instanceof Boolean;
+			this.doubleValue = numeric ? value.asDouble() : 0;
+			this.longValue = numeric ? value.asLong() : 0;
+		}
+		
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
 			return value;
 		};
 		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			return value;
+		}
+		
+		@Override
+		public Type getType() {
+			return value.getType();
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return doubleValue;
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			if(value.getType().isBig()) return asLongExact(value);
+			return longValue;
+		}
+		
 		@Override
 		public String toString() {
 			return "const "+value.toString();
@@ -140,215 +382,1155 @@ public class ExpressionEvaluator {
 	
 	@RequiredArgsConstructor
 	@Getter
-	static class FunctionExpressionElement implements ExpressionElement {
+	static class VariableExpressionElement implements ExpressionElement {
 		private final String name;
-		private final String parm;
+		private final int slot;
+		private final Type type;
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			ExpressionValue<?> value = bindings[slot];
+			if(value == null) throw new ExpressionException("Variable '"+name+"' isn't bound");
+			return value;
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			switch(type){
+			case DOUBLE:
+			case BIG_DECIMAL:
+				return bindings[slot];
+			case FLOAT:
+				return (float) bindings[slot];
+			default:
+				return parseLong(bindings);
+			}
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			switch(type){
+			case LONG:
+				return (long) bindings[slot];
+			case BIG_INTEGER:
+			case BIG_DECIMAL:
+				return toLongExact(bindings[slot]);
+			case INT:
+				return (int) bindings[slot];
+			case SHORT:
+				return (short) bindings[slot];
+			case BYTE:
+				return (byte) bindings[slot];
+			case BOOLEAN:
+				return bindings[slot] != 0 ? 1 : 0;
+			default:
+				return (long) parseDouble(bindings);
+			}
+		}
+		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			BigDecimal value = ExpressionValue.of(bindings[slot]).asBigDecimal();
+			return type == Type.BIG_INTEGER ? ExpressionValue.of(value.toBigInteger()) : ExpressionValue.of(value);
+		}
 		
 		@Override
 		public String toString() {
-			return name + "("+parm+")";
-		}
-		
-		@Override
-		public ExpressionValue<?> parse() { //TODO multi args
-			System.out.println("name: "+name+" parm: "+parm);
-			ExpressionIterator parms = new ExpressionIterator(parm);
-			Optional<ExpressionFunction> fn = ExpressionEvaluatorFunctions.getFunction(name);
-			if(!fn.isPresent()) throw new ExpressionException("Cant find function '"+name+"'");
-			System.out.println("Running fn "+name+" with parm '"+parms.parse()+"'");
-			return fn.get().applay(parms.parse());
-		}
-	}
-	
-	static class ExpressionIterator implements ExpressionElement{
-		private List<ExpressionIteratorElement> elements = new ArrayList<>();
-		
-		private String expression;
-		
-		public ExpressionIterator(String exp) {
-			this.expression = exp;
-			parse(exp);
-		}
-		
-		public boolean isBreaced(){
-			return expression.charAt(0) == '(' && expression.charAt(expression.length() - 1) == ')';
-		}
-		
-		private void parse(String elm){
-			while(elm.charAt(0) == '(' && elm.charAt(elm.length() - 1) == ')') elm = elm.substring(1, elm.length() -1);
-			int braceLevel = 0;
-			mainLoop:
-				for(int i = 0;i<elm.length();i++){
-					
-					switch(elm.charAt(i)){
-					case '(':
-						Validate.isTrue(++braceLevel < 255, "Stack overflow");
-						break;
-					case ')':
-						Validate.isTrue(--braceLevel >= 0, "Stack underflow");
-						break;
-						default:
-							break;
-					}
-					if(braceLevel == 0)
-						for(Operator eop : ExpressionEvaluatorOperators.getAvariableOperators()){
-							String op = eop.getOperator();
-							if(op.length() < elm.length() - i){
-								if(op.equalsIgnoreCase(elm.substring(i, i + op.length()))){
-									ExpressionIterator elmFirst;
-									if(elm.substring(0, i).trim().isEmpty() && (op.equalsIgnoreCase("-") || op.equalsIgnoreCase("+"))){
-										 elmFirst = new ExpressionIterator("0");
-									} else if(elm.substring(0, i).trim().isEmpty()) throw new ExpressionException("First element is null!");
-									else {
-										elmFirst = new ExpressionIterator(elm.substring(0, i));
-									}
-									ExpressionIterator elmLast = new ExpressionIterator(elm.substring(i + op.length()));
-									
-									if(elmFirst.elements.size() == 1 || !elmFirst.isBreaced()){
-										elements.addAll(elmFirst.elements);
-										elmFirst.elements.get(elmFirst.elements.size() - 1).operator = op;
-									} else {
-										elements.add(new ExpressionIteratorElement(null, null, elmFirst, op));
-									}	
-									
-									if(elmLast.elements.size() == 1 || !elmLast.isBreaced()){
-										elements.addAll(elmLast.elements);
-									} else 
-										elements.add(new ExpressionIteratorElement(null, null, elmLast, op));
-									
-									break mainLoop;
-								}	
-							}
-						}
-				}
-			if(elements.size() == 0){
-				fnGetter:
-				if(expression.contains("(") && expression.contains(")")){
-					if(expression.charAt(expression.length() - 1) != ')') throw new ExpressionException("Invalid function parameters '"+expression+"'");
-					int sindex = expression.indexOf('(');
-					String fnName = expression.substring(0, sindex);
-					if(fnName.trim().isEmpty()) break fnGetter;
-					
-					String parm = expression.substring(sindex + 1, expression.length() - 1);
-					System.out.println("Found function '"+fnName+"' with parms '"+parm+"'");
-					elements.add(new ExpressionIteratorElement(null, null, new FunctionExpressionElement(fnName, parm), ""));
-				}
-				if(elements.isEmpty()){
-					System.out.println("Found root: "+expression);
-					elements.add(new ExpressionIteratorElement(null, null, new StringExpressionElement(expression), ""));
-				}
-			} else {
-				ExpressionIteratorElement[] elms = elements.toArray(new ExpressionIteratorElement[0]);
-				for(int i = 0;i<elms.length;i++){
-					if(i > 0){
-						elms[i].prev = elms[i - 1];
-					}
-					if(i + 1 < elms.length)
-						elms[i].next = elms[i + 1];
-				}
+			return name + "@" + slot;
+		}
+	}
+	
+	@Getter
+	static class OperatorExpressionElement implements ExpressionElement {
+		private final Operator operator;
+		private final ExpressionElement first;
+		private final ExpressionElement next;
+		private final Type type;
+		
+		public OperatorExpressionElement(Operator operator, ExpressionElement first, ExpressionElement next) {
+			this.operator = operator;
+			this.first = first;
+			this.next = next;
+			this.type = operator.getResultType(first.getType(), next.getType());
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			return operator.applay(first.parse(bindings), next.parse(bindings));
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return operator.applay(parseBoxed(first, bindings), parseBoxed(next, bindings)).asDouble();
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			return asLongExact(operator.applay(parseBoxed(first, bindings), parseBoxed(next, bindings)));
+		}
+		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			return operator.applay(parseBoxed(first, bindings), parseBoxed(next, bindings));
+		}
+		
+		@Override
+		public String toString() {
+			return "(" + first + " " + operator.getOperator() + " " + next + ")";
+		}
+	}
+	
+	static class NumberOperatorExpressionElement extends OperatorExpressionElement {
+		private final BasicNumberOperator operator;
+		private final boolean exact;
+		
+		public NumberOperatorExpressionElement(BasicNumberOperator operator, ExpressionElement first, ExpressionElement next) {
+			super(operator, first, next);
+			this.operator = operator;
+			this.exact = operator instanceof ExactNumberOperator;
+		}
+		
+		/**
+		 * Calls the primitive method for the type directly if the operands have been cast to it, see {@link ExpressionTypeChecker}.
+		 */
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			ExpressionValue<?> a = getFirst().parse(bindings);
+			ExpressionValue<?> b = getNext().parse(bindings);
+			if(exact || a.getType() != getType() || b.getType() != getType()) return operator.applay(a, b); //Exact results may overflow into a big number
+			switch(getType()){
+			case DOUBLE:
+				return ExpressionValue.of(operator.applay(a.asDouble(), b.asDouble()));
+			case FLOAT:
+				return ExpressionValue.of(operator.applay(a.asFloat(), b.asFloat()));
+			case LONG:
+				return ExpressionValue.of(operator.applay(a.asLong(), b.asLong()));
+			case INT:
+				return ExpressionValue.of(operator.applay(a.asInt(), b.asInt()));
+			case SHORT:
+				return new ExpressionValue<Short>(Type.SHORT, operator.narrow(operator.applay(a.asInt(), b.asInt())));
+			default:
+				return new ExpressionValue<Byte>(Type.BYTE, operator.applay(a.asByte(), b.asByte()));
 			}
 		}
 		
 		@Override
-		public ExpressionValue<?> parse() {
-			List<ExpressionIteratorElement> evalElements = new ArrayList<>();
-			elements.stream().map(ExpressionIteratorElement::clone).forEach(evalElements::add);
-			
-			HashMap<Integer, List<Operator>> operators = new HashMap<>();
-			ExpressionEvaluatorOperators.getAvariableOperators().forEach(e -> {
-				if(!operators.containsKey(e.getPriority())) operators.put(e.getPriority(), new ArrayList<>());
-				operators.get(e.getPriority()).add(e);
-			});
-			List<Entry<Integer, List<Operator>>> loperators = new ArrayList<>(operators.entrySet());
-			Collections.sort(loperators, (a, b) ->  b.getKey().compareTo(a.getKey()));
-			
-			for(Entry<Integer, List<Operator>> eop : loperators){
-				int i;
-				mainLoop:
-				for(i = 0; i < evalElements.size() - 1; i++){
-					for(Operator op : eop.getValue()){
-						if(evalElements.get(i).operator.equalsIgnoreCase(op.getOperator())){
-							ExpressionIteratorElement next = evalElements.get(i + 1); //TODO range check!
-							ExpressionIteratorElement current = evalElements.get(i);
-							ExpressionIteratorElement out = op.applay(current, next);
-							evalElements.remove(i + 1);
-							evalElements.set(i, out);
-							i = i - 1;
-							continue mainLoop;
-						}
-					}
-				}
+		public double parseDouble(double[] bindings) {
+			switch(getType()){
+			case DOUBLE:
+				return operator.applay(getFirst().parseDouble(bindings), getNext().parseDouble(bindings));
+			case FLOAT:
+				return operator.applay((float) getFirst().parseDouble(bindings), (float) getNext().parseDouble(bindings));
+			default:
+				return parseLong(bindings);
 			}
-			
-			String message = "";
-			for(ExpressionIteratorElement e : evalElements){
-				if(!e.operator.isEmpty())
-					message += "\nCant find operator '"+e.operator+"'";
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			switch(getType()){
+			case LONG:
+				return operator.applay(getFirst().parseLong(bindings), getNext().parseLong(bindings));
+			case INT:
+				return operator.applay((int) getFirst().parseLong(bindings), (int) getNext().parseLong(bindings));
+			case SHORT:
+				return operator.narrow(operator.applay((int) getFirst().parseLong(bindings), (int) getNext().parseLong(bindings)));
+			case BYTE:
+				return operator.applay((byte) getFirst().parseLong(bindings), (byte) getNext().parseLong(bindings));
+			default:
+				return (long) parseDouble(bindings);
 			}
-			if(!message.isEmpty()) throw new ExpressionException(message.substring(1));
-			
-			if(evalElements.size() != 1){
-				System.err.println("Invalid elm size "+evalElements.size());
+		}
+	}
+	
+	static class CompareOperatorExpressionElement extends OperatorExpressionElement {
+		private final BasicCompareOperator operator;
+		@Getter
+		private final Type operandType;
+		
+		public CompareOperatorExpressionElement(BasicCompareOperator operator, ExpressionElement first, ExpressionElement next) {
+			super(operator, first, next);
+			this.operator = operator;
+			this.operandType = operator.getOperandType(first.getType(), next.getType());
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			ExpressionValue<?> a = getFirst().parse(bindings);
+			ExpressionValue<?> b = getNext().parse(bindings);
+			if(a.getType() != operandType || b.getType() != operandType) return operator.applay(a, b);
+			switch(operandType){
+			case DOUBLE:
+				return ExpressionValue.of(operator.applay(a.asDouble(), b.asDouble()));
+			case FLOAT:
+				return ExpressionValue.of(operator.applay(a.asFloat(), b.asFloat()));
+			default:
+				return ExpressionValue.of(operator.applay(a.asLong(), b.asLong()));
+			}
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return parseLong(bindings);
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			boolean result;
+			switch(operandType){
+			case DOUBLE:
+				result = operator.applay(getFirst().parseDouble(bindings), getNext().parseDouble(bindings));
+				break;
+			case FLOAT:
+				result = operator.applay((float) getFirst().parseDouble(bindings), (float) getNext().parseDouble(bindings));
+				break;
+			default:
+				result = operator.applay(getFirst().parseLong(bindings), getNext().parseLong(bindings));
+				break;
+			}
+			return result ? 1 : 0;
+		}
+	}
+	
+	/**
+	 * Evaluates the second operand only if the first one doesn't decide the result.
+	 */
+	static class LogicalOperatorExpressionElement extends OperatorExpressionElement {
+		private final boolean shortCircuit;
+		
+		public LogicalOperatorExpressionElement(BasicLogicalOperator operator, ExpressionElement first, ExpressionElement next) {
+			super(operator, first, next);
+			this.shortCircuit = operator.getShortCircuitValue();
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			if(getFirst().parse(bindings).asBoolean() == shortCircuit) return ExpressionValue.of(shortCircuit);
+			return ExpressionValue.of(getNext().parse(bindings).asBoolean());
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return parseLong(bindings);
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			if((getFirst().parseLong(bindings) != 0) == shortCircuit) return shortCircuit ? 1 : 0;
+			return getNext().parseLong(bindings) != 0 ? 1 : 0;
+		}
+	}
+	
+	@Getter
+	static class UnaryOperatorExpressionElement implements ExpressionElement {
+		private final UnaryOperator operator;
+		private final ExpressionElement value;
+		private final Type type;
+		
+		public UnaryOperatorExpressionElement(UnaryOperator operator, ExpressionElement value) {
+			this.operator = operator;
+			this.value = value;
+			this.type = operator.getResultType(value.getType());
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			return operator.applay(value.parse(bindings));
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return operator.applay(parseBoxed(value, bindings)).asDouble();
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			return asLongExact(operator.applay(parseBoxed(value, bindings)));
+		}
+		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			return operator.applay(parseBoxed(value, bindings));
+		}
+		
+		@Override
+		public String toString() {
+			return operator.getOperator() + value;
+		}
+	}
+	
+	static class NumberUnaryOperatorExpressionElement extends UnaryOperatorExpressionElement {
+		private final BasicNumberUnaryOperator operator;
+		
+		public NumberUnaryOperatorExpressionElement(BasicNumberUnaryOperator operator, ExpressionElement value) {
+			super(operator, value);
+			this.operator = operator;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			ExpressionValue<?> value = getValue().parse(bindings);
+			if(value.getType() != getType() || operator == ExpressionEvaluatorOperators.MATH_NEGATE_EXACT) return operator.applay(value);
+			switch(getType()){
+			case DOUBLE:
+				return ExpressionValue.of(operator.applay(value.asDouble()));
+			case FLOAT:
+				return ExpressionValue.of(operator.applay(value.asFloat()));
+			case LONG:
+				return ExpressionValue.of(operator.applay(value.asLong()));
+			case INT:
+				return ExpressionValue.of(operator.applay(value.asInt()));
+			case SHORT:
+				return new ExpressionValue<Short>(Type.SHORT, operator.applay(value.asShort()));
+			default:
+				return new ExpressionValue<Byte>(Type.BYTE, operator.applay(value.asByte()));
+			}
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			switch(getType()){
+			case DOUBLE:
+				return operator.applay(getValue().parseDouble(bindings));
+			case FLOAT:
+				return operator.applay((float) getValue().parseDouble(bindings));
+			default:
+				return parseLong(bindings);
+			}
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			switch(getType()){
+			case LONG:
+				return operator.applay(getValue().parseLong(bindings));
+			case INT:
+				return operator.applay((int) getValue().parseLong(bindings));
+			case SHORT:
+				return operator.applay((short) getValue().parseLong(bindings));
+			case BYTE:
+				return operator.applay((byte) getValue().parseLong(bindings));
+			default:
+				return (long) parseDouble(bindings);
+			}
+		}
+	}
+	
+	static class NotExpressionElement extends UnaryOperatorExpressionElement {
+		public NotExpressionElement(UnaryOperator operator, ExpressionElement value) {
+			super(operator, value);
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return parseLong(bindings);
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			return getValue().parseLong(bindings) != 0 ? 0 : 1;
+		}
+	}
+	
+	/**
+	 * The conversion of a value to another type, see {@link CastExpressionElement}.
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	static class CastOperator implements UnaryOperator {
+		private static final CastOperator[] OPERATORS = Arrays.stream(Type.values()).map(CastOperator::new).toArray(CastOperator[]::new);
+		
+		private final Type type;
+		
+		static CastOperator of(Type type){
+			return OPERATORS[type.ordinal()];
+		}
+		
+		@Override
+		public String getOperator() {
+			return "(" + type.name().toLowerCase(Locale.ROOT) + ")";
+		}
+		
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
+		@Override
+		public Type getResultType(Type value) {
+			return type;
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> value) {
+			return convert(value, type);
+		}
+	}
+	
+	/**
+	 * An explicit widening of a value to the type its parent computes in, inserted by the {@link ExpressionTypeChecker}.
+	 * The primitive evaluation converts like the specialized elements did before, constants are converted once.
+	 */
+	static class CastExpressionElement extends UnaryOperatorExpressionElement {
+		private final ExpressionValue<?> constant;
+		
+		public CastExpressionElement(ExpressionElement value, Type type) {
+			super(CastOperator.of(type), value);
+			this.constant = value instanceof EvalatedExpressionElement ? convert(((EvalatedExpressionElement) value).getValue(), type) : null;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			if(constant != null) return constant;
+			return convert(getValue().parse(bindings), getType());
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			switch(getType()){
+			case DOUBLE:
+			case BIG_DECIMAL:
+				return getValue().parseDouble(bindings);
+			case FLOAT:
+				return (float) getValue().parseDouble(bindings);
+			default:
+				return parseLong(bindings);
 			}
-			return evalElements.get(0).elm.parse();
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			switch(getType()){
+			case LONG:
+			case BIG_INTEGER:
+				return getValue().parseLong(bindings);
+			case INT:
+				return (int) getValue().parseLong(bindings);
+			case SHORT:
+				return (short) getValue().parseLong(bindings);
+			case BYTE:
+				return (byte) getValue().parseLong(bindings);
+			default:
+				return (long) parseDouble(bindings);
+			}
+		}
+		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			if(constant != null) return constant;
+			return convert(parseBoxed(getValue(), bindings), getType());
+		}
+		
+		@Override
+		public String toString() {
+			return getValue().toString();
 		}
 	}
 	
-	@AllArgsConstructor
-	static class ExpressionIteratorElement {
-		static class EndExpressionIteratorElement extends ExpressionIteratorElement {
-			public EndExpressionIteratorElement(ExpressionIteratorElement prev, ExpressionElement elm, String operator) {
-				super(prev, null, elm, operator);
+	/**
+	 * <code>condition ? then : otherwise</code>, only the selected branch is evaluated.
+	 */
+	@Getter
+	static class ConditionalExpressionElement implements ExpressionElement {
+		private final ExpressionElement condition;
+		private final ExpressionElement then;
+		private final ExpressionElement otherwise;
+		private final Type type;
+		
+		public ConditionalExpressionElement(ExpressionElement condition, ExpressionElement then, ExpressionElement otherwise) {
+			if(condition.getType() != Type.BOOLEAN) throw new ExpressionException("Invalid condition type! ("+condition.getType()+" isn't boolean!)");
+			this.condition = condition;
+			this.then = then;
+			this.otherwise = otherwise;
+			if(then.getType() == Type.BOOLEAN && otherwise.getType() == Type.BOOLEAN) this.type = Type.BOOLEAN;
+			else this.type = Type.promote(then.getType(), otherwise.getType());
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			return convert((condition.parse(bindings).asBoolean() ? then : otherwise).parse(bindings), type);
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			if(type.isBig()) return parseValue(bindings).asDouble();
+			ExpressionElement branch = condition.parseLong(bindings) != 0 ? then : otherwise;
+			switch(type){
+			case DOUBLE:
+				return branch.parseDouble(bindings);
+			case FLOAT:
+				return (float) branch.parseDouble(bindings);
+			default:
+				return branch.parseLong(bindings);
 			}
 		}
 		
-		ExpressionIteratorElement prev;
-		ExpressionIteratorElement next;
-		ExpressionElement elm;
-		String operator;
+		@Override
+		public long parseLong(double[] bindings) {
+			if(type.isBig()) return asLongExact(parseValue(bindings));
+			if(isDecimal(type)) return (long) parseDouble(bindings);
+			return (condition.parseLong(bindings) != 0 ? then : otherwise).parseLong(bindings);
+		}
+		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			return convert(parseBoxed(condition.parseLong(bindings) != 0 ? then : otherwise, bindings), type);
+		}
+	}
+	
+	@Getter
+	static class FunctionExpressionElement implements ExpressionElement {
+		private static final ExpressionValue<?>[] NO_PARMS = new ExpressionValue<?>[0];
+		
+		private final ExpressionFunction function;
+		private final ExpressionElement[] parms;
+		private final Type type;
+		
+		public FunctionExpressionElement(ExpressionFunction function, ExpressionElement[] parms) {
+			this.function = function;
+			this.parms = parms;
+			Type[] types = new Type[parms.length];
+			for(int i = 0;i<parms.length;i++)
+				types[i] = parms[i].getType();
+			this.type = function.getResultType(types);
+		}
+		
+		public String getName(){
+			return function.getName();
+		}
 		
 		@Override
 		public String toString() {
-			return "ExpressionIteratorElement [elm=" + elm + ", operator=" + operator + "]";
+			return getName() + "(" + Arrays.stream(parms).map(String::valueOf).collect(Collectors.joining(", ")) + ")";
 		}
 		
-		public ExpressionIteratorElement clone(){
-			return new ExpressionIteratorElement(prev, next, elm, operator);
+		/**
+		 * Calls the fixed arity methods of the function for up to two parameters, so no parameter array is created.
+		 */
+		ExpressionValue<?> applay(ExpressionValue<?>[] bindings, boolean primitive, double[] primitiveBindings) {
+			switch(parms.length){
+			case 0:
+				return function.applay(NO_PARMS);
+			case 1:
+				return function.applay(parm(0, bindings, primitive, primitiveBindings));
+			case 2:
+				return function.applay(parm(0, bindings, primitive, primitiveBindings), parm(1, bindings, primitive, primitiveBindings));
+			default:
+				return function.applay(parms(bindings, primitive, primitiveBindings));
+			}
+		}
+		
+		ExpressionValue<?> parm(int index, ExpressionValue<?>[] bindings, boolean primitive, double[] primitiveBindings){
+			return primitive ? parseBoxed(parms[index], primitiveBindings) : parms[index].parse(bindings);
+		}
+		
+		ExpressionValue<?>[] parms(ExpressionValue<?>[] bindings, boolean primitive, double[] primitiveBindings){
+			ExpressionValue<?>[] values = new ExpressionValue<?>[parms.length];
+			for(int i = 0;i<parms.length;i++)
+				values[i] = parm(i, bindings, primitive, primitiveBindings);
+			return values;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			return applay(bindings, false, null);
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return applay(null, true, bindings).asDouble();
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			return asLongExact(applay(null, true, bindings));
+		}
+		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			return applay(null, true, bindings);
 		}
 	}
 	
-	private StringBuilder print(StringBuilder sb, ExpressionElement elm){
-		if(elm instanceof ExpressionIterator){
-			boolean start = sb.length() == 0;
-			
-			if(!start) sb.append("(");
-			for(ExpressionIteratorElement e : ((ExpressionIterator) elm).elements){
-				print(sb, e.elm);
-				sb.append(e.operator);
+	static class NumberFunctionExpressionElement extends FunctionExpressionElement {
+		private final BasicNumberFunction function;
+		private final ExpressionElement parm;
+		private final boolean exact;
+		
+		public NumberFunctionExpressionElement(BasicNumberFunction function, ExpressionElement[] parms) {
+			super(function, parms);
+			this.function = function;
+			this.parm = parms[0];
+			this.exact = function instanceof ExactNumberFunction;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			ExpressionValue<?> value = parm.parse(bindings);
+			if(exact || value.getType() != getType()) return function.applay(value); //Exact results may overflow into a big number
+			switch(getType()){
+			case DOUBLE:
+				return ExpressionValue.of(function.applay(value.asDouble()));
+			case FLOAT:
+				return ExpressionValue.of(function.applay(value.asFloat()));
+			case LONG:
+				return ExpressionValue.of(function.applay(value.asLong()));
+			case INT:
+				return ExpressionValue.of(function.applay(value.asInt()));
+			case SHORT:
+				return new ExpressionValue<Short>(Type.SHORT, function.applay(value.asShort()));
+			default:
+				return new ExpressionValue<Byte>(Type.BYTE, function.applay(value.asByte()));
 			}
-			if(!start) sb.append(")");
-		} else if(elm instanceof StringExpressionElement) {
-			sb.append(((StringExpressionElement) elm).elm);
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			switch(getType()){
+			case DOUBLE:
+				return function.applay(parm.parseDouble(bindings));
+			case FLOAT:
+				return function.applay((float) parm.parseDouble(bindings));
+			default:
+				return parseLong(bindings);
+			}
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			switch(getType()){
+			case LONG:
+				return function.applay(parm.parseLong(bindings));
+			case INT:
+				return function.applay((int) parm.parseLong(bindings));
+			case SHORT:
+				return function.applay((short) parm.parseLong(bindings));
+			case BYTE:
+				return function.applay((byte) parm.parseLong(bindings));
+			default:
+				return (long) parseDouble(bindings);
+			}
+		}
+	}
+	
+	static class NumberBiFunctionExpressionElement extends FunctionExpressionElement {
+		private final BasicNumberBiFunction function;
+		private final ExpressionElement first;
+		private final ExpressionElement next;
+		
+		public NumberBiFunctionExpressionElement(BasicNumberBiFunction function, ExpressionElement[] parms) {
+			super(function, parms);
+			this.function = function;
+			this.first = parms[0];
+			this.next = parms[1];
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			ExpressionValue<?> a = first.parse(bindings);
+			ExpressionValue<?> b = next.parse(bindings);
+			if(a.getType() != getType() || b.getType() != getType()) return function.applay(a, b);
+			switch(getType()){
+			case DOUBLE:
+				return ExpressionValue.of(function.applay(a.asDouble(), b.asDouble()));
+			case FLOAT:
+				return ExpressionValue.of(function.applay(a.asFloat(), b.asFloat()));
+			case LONG:
+				return ExpressionValue.of(function.applay(a.asLong(), b.asLong()));
+			case INT:
+				return ExpressionValue.of(function.applay(a.asInt(), b.asInt()));
+			case SHORT:
+				return new ExpressionValue<Short>(Type.SHORT, function.applay(a.asShort(), b.asShort()));
+			default:
+				return new ExpressionValue<Byte>(Type.BYTE, function.applay(a.asByte(), b.asByte()));
+			}
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			switch(getType()){
+			case DOUBLE:
+				return function.applay(first.parseDouble(bindings), next.parseDouble(bindings));
+			case FLOAT:
+				return function.applay((float) first.parseDouble(bindings), (float) next.parseDouble(bindings));
+			default:
+				return parseLong(bindings);
+			}
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			switch(getType()){
+			case LONG:
+				return function.applay(first.parseLong(bindings), next.parseLong(bindings));
+			case INT:
+				return function.applay((int) first.parseLong(bindings), (int) next.parseLong(bindings));
+			case SHORT:
+				return function.applay((short) first.parseLong(bindings), (short) next.parseLong(bindings));
+			case BYTE:
+				return function.applay((byte) first.parseLong(bindings), (byte) next.parseLong(bindings));
+			default:
+				return (long) parseDouble(bindings);
+			}
+		}
+	}
+	
+	static class NumberTriFunctionExpressionElement extends FunctionExpressionElement {
+		private final BasicNumberTriFunction function;
+		private final ExpressionElement a, b, c;
+		
+		public NumberTriFunctionExpressionElement(BasicNumberTriFunction function, ExpressionElement[] parms) {
+			super(function, parms);
+			this.function = function;
+			this.a = parms[0];
+			this.b = parms[1];
+			this.c = parms[2];
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			ExpressionValue<?> x = a.parse(bindings);
+			ExpressionValue<?> y = b.parse(bindings);
+			ExpressionValue<?> z = c.parse(bindings);
+			if(x.getType() != getType() || y.getType() != getType() || z.getType() != getType()) return function.applay(x, y, z);
+			switch(getType()){
+			case DOUBLE:
+				return ExpressionValue.of(function.applay(x.asDouble(), y.asDouble(), z.asDouble()));
+			case FLOAT:
+				return ExpressionValue.of(function.applay(x.asFloat(), y.asFloat(), z.asFloat()));
+			case LONG:
+				return ExpressionValue.of(function.applay(x.asLong(), y.asLong(), z.asLong()));
+			case INT:
+				return ExpressionValue.of(function.applay(x.asInt(), y.asInt(), z.asInt()));
+			case SHORT:
+				return new ExpressionValue<Short>(Type.SHORT, function.applay(x.asShort(), y.asShort(), z.asShort()));
+			default:
+				return new ExpressionValue<Byte>(Type.BYTE, function.applay(x.asByte(), y.asByte(), z.asByte()));
+			}
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			switch(getType()){
+			case DOUBLE:
+				return function.applay(a.parseDouble(bindings), b.parseDouble(bindings), c.parseDouble(bindings));
+			case FLOAT:
+				return function.applay((float) a.parseDouble(bindings), (float) b.parseDouble(bindings), (float) c.parseDouble(bindings));
+			default:
+				return parseLong(bindings);
+			}
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			switch(getType()){
+			case LONG:
+				return function.applay(a.parseLong(bindings), b.parseLong(bindings), c.parseLong(bindings));
+			case INT:
+				return function.applay((int) a.parseLong(bindings), (int) b.parseLong(bindings), (int) c.parseLong(bindings));
+			case SHORT:
+				return function.applay((short) a.parseLong(bindings), (short) b.parseLong(bindings), (short) c.parseLong(bindings));
+			case BYTE:
+				return function.applay((byte) a.parseLong(bindings), (byte) b.parseLong(bindings), (byte) c.parseLong(bindings));
+			default:
+				return (long) parseDouble(bindings);
+			}
+		}
+	}
+	
+	static class TracedOperatorExpressionElement extends OperatorExpressionElement {
+		private final ExpressionTracer tracer;
+		
+		public TracedOperatorExpressionElement(ExpressionTracer tracer, Operator operator, ExpressionElement first, ExpressionElement next) {
+			super(operator, first, next);
+			this.tracer = tracer;
+		}
+		
+		private ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next){
+			ExpressionValue<?> result = getOperator().applay(first, next);
+			tracer.onOperator(getOperator(), first, next, result);
+			return result;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			return applay(getFirst().parse(bindings), getNext().parse(bindings));
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return applay(parseBoxed(getFirst(), bindings), parseBoxed(getNext(), bindings)).asDouble();
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			return asLongExact(applay(parseBoxed(getFirst(), bindings), parseBoxed(getNext(), bindings)));
+		}
+		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			return applay(parseBoxed(getFirst(), bindings), parseBoxed(getNext(), bindings));
+		}
+	}
+	
+	static class TracedUnaryOperatorExpressionElement extends UnaryOperatorExpressionElement {
+		private final ExpressionTracer tracer;
+		
+		public TracedUnaryOperatorExpressionElement(ExpressionTracer tracer, UnaryOperator operator, ExpressionElement value) {
+			super(operator, value);
+			this.tracer = tracer;
+		}
+		
+		private ExpressionValue<?> applay(ExpressionValue<?> value){
+			ExpressionValue<?> result = getOperator().applay(value);
+			tracer.onUnaryOperator(getOperator(), value, result);
+			return result;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			return applay(getValue().parse(bindings));
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			return applay(parseBoxed(getValue(), bindings)).asDouble();
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			return asLongExact(applay(parseBoxed(getValue(), bindings)));
+		}
+		
+		@Override
+		public ExpressionValue<?> parseValue(double[] bindings) {
+			return applay(parseBoxed(getValue(), bindings));
+		}
+	}
+	
+	static class TracedFunctionExpressionElement extends FunctionExpressionElement {
+		private final ExpressionTracer tracer;
+		
+		public TracedFunctionExpressionElement(ExpressionTracer tracer, ExpressionFunction function, ExpressionElement[] parms) {
+			super(function, parms);
+			this.tracer = tracer;
+		}
+		
+		@Override
+		ExpressionValue<?> applay(ExpressionValue<?>[] bindings, boolean primitive, double[] primitiveBindings) {
+			ExpressionValue<?>[] parms = parms(bindings, primitive, primitiveBindings);
+			ExpressionValue<?> result = getFunction().applay(parms);
+			tracer.onFunction(getFunction(), parms, result);
+			return result;
+		}
+	}
+	
+	/**
+	 * Counts the calls of a function for {@link ExpressionMetrics}. Only bound to expressions compiled with metrics, see {@link #createCountedFunction(FunctionExpressionElement, ExpressionElement[], LongAdder)}.
+	 */
+	static class CountedFunctionExpressionElement extends FunctionExpressionElement {
+		private final LongAdder calls;
+		
+		public CountedFunctionExpressionElement(LongAdder calls, ExpressionFunction function, ExpressionElement[] parms) {
+			super(function, parms);
+			this.calls = calls;
+		}
+		
+		@Override
+		ExpressionValue<?> applay(ExpressionValue<?>[] bindings, boolean primitive, double[] primitiveBindings) {
+			calls.increment();
+			return super.applay(bindings, primitive, primitiveBindings);
+		}
+	}
+	
+	/*
+	 * The primitive methods of the number function elements call each other for the other type class,
+	 * so the counted elements select the method of the type themselves to count every call once.
+	 */
+	static class CountedNumberFunctionExpressionElement extends NumberFunctionExpressionElement {
+		private final LongAdder calls;
+		
+		public CountedNumberFunctionExpressionElement(LongAdder calls, BasicNumberFunction function, ExpressionElement[] parms) {
+			super(function, parms);
+			this.calls = calls;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			calls.increment();
+			return super.parse(bindings);
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			calls.increment();
+			return isDecimal(getType()) ? super.parseDouble(bindings) : super.parseLong(bindings);
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			calls.increment();
+			return isDecimal(getType()) ? (long) super.parseDouble(bindings) : super.parseLong(bindings);
+		}
+	}
+	
+	static class CountedNumberBiFunctionExpressionElement extends NumberBiFunctionExpressionElement {
+		private final LongAdder calls;
+		
+		public CountedNumberBiFunctionExpressionElement(LongAdder calls, BasicNumberBiFunction function, ExpressionElement[] parms) {
+			super(function, parms);
+			this.calls = calls;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			calls.increment();
+			return super.parse(bindings);
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			calls.increment();
+			return isDecimal(getType()) ? super.parseDouble(bindings) : super.parseLong(bindings);
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			calls.increment();
+			return isDecimal(getType()) ? (long) super.parseDouble(bindings) : super.parseLong(bindings);
+		}
+	}
+	
+	static class CountedNumberTriFunctionExpressionElement extends NumberTriFunctionExpressionElement {
+		private final LongAdder calls;
+		
+		public CountedNumberTriFunctionExpressionElement(LongAdder calls, BasicNumberTriFunction function, ExpressionElement[] parms) {
+			super(function, parms);
+			this.calls = calls;
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			calls.increment();
+			return super.parse(bindings);
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			calls.increment();
+			return isDecimal(getType()) ? super.parseDouble(bindings) : super.parseLong(bindings);
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			calls.increment();
+			return isDecimal(getType()) ? (long) super.parseDouble(bindings) : super.parseLong(bindings);
+		}
+	}
+	
+	static ExpressionElement createOperator(ExpressionTracer tracer, Operator op, ExpressionElement first, ExpressionElement next){
+		if(op instanceof BasicLogicalOperator) return new LogicalOperatorExpressionElement((BasicLogicalOperator) op, first, next); //Never traced, it has to stay lazy
+		if(tracer != null) return new TracedOperatorExpressionElement(tracer, op, first, next);
+		if(op instanceof BasicCompareOperator && !((BasicCompareOperator) op).getOperandType(first.getType(), next.getType()).isBig()) return new CompareOperatorExpressionElement((BasicCompareOperator) op, first, next);
+		if(op instanceof BasicNumberOperator && !op.getResultType(first.getType(), next.getType()).isBig()) return new NumberOperatorExpressionElement((BasicNumberOperator) op, first, next);
+		return new OperatorExpressionElement(op, first, next); //Big numbers are always evaluated boxed
+	}
+	
+	static ExpressionElement createUnaryOperator(ExpressionTracer tracer, UnaryOperator op, ExpressionElement value){
+		if(tracer != null) return new TracedUnaryOperatorExpressionElement(tracer, op, value);
+		if(op == ExpressionEvaluatorOperators.LOGICAL_NOT) return new NotExpressionElement(op, value);
+		if(op instanceof BasicNumberUnaryOperator && !op.getResultType(value.getType()).isBig()) return new NumberUnaryOperatorExpressionElement((BasicNumberUnaryOperator) op, value);
+		return new UnaryOperatorExpressionElement(op, value);
+	}
+	
+	static ExpressionElement createFunction(ExpressionTracer tracer, ExpressionFunction fn, ExpressionElement[] parms){
+		if(fn instanceof BasicNumberFunction || fn instanceof BasicNumberBiFunction || fn instanceof BasicNumberTriFunction){
+			for(ExpressionElement parm : parms)
+				if(!parm.getType().isNumeric()) throw new ExpressionException("Invalid type! ("+parm.getType()+" isn't numeric!)"); //Like the operators, see Type#promote
+		}
+		if(tracer != null) return new TracedFunctionExpressionElement(tracer, fn, parms);
+		if(fn instanceof BasicNumberFunction && parms.length == 1 && isPrimitive(fn.getResultType(parms[0].getType()))) return new NumberFunctionExpressionElement((BasicNumberFunction) fn, parms);
+		if(fn instanceof BasicNumberBiFunction && parms.length == 2 && isPrimitive(fn.getResultType(parms[0].getType(), parms[1].getType()))) return new NumberBiFunctionExpressionElement((BasicNumberBiFunction) fn, parms);
+		if(fn instanceof BasicNumberTriFunction && parms.length == 3 && isPrimitive(fn.getResultType(parms[0].getType(), parms[1].getType(), parms[2].getType()))) return new NumberTriFunctionExpressionElement((BasicNumberTriFunction) fn, parms);
+		return new FunctionExpressionElement(fn, parms);
+	}
+	
+	/**
+	 * @return an element evaluated like the given one with other parameters of the same types, which increments the counter on every call
+	 */
+	static FunctionExpressionElement createCountedFunction(FunctionExpressionElement element, ExpressionElement[] parms, LongAdder calls){
+		ExpressionFunction fn = element.getFunction();
+		if(element instanceof NumberFunctionExpressionElement) return new CountedNumberFunctionExpressionElement(calls, (BasicNumberFunction) fn, parms);
+		if(element instanceof NumberBiFunctionExpressionElement) return new CountedNumberBiFunctionExpressionElement(calls, (BasicNumberBiFunction) fn, parms);
+		if(element instanceof NumberTriFunctionExpressionElement) return new CountedNumberTriFunctionExpressionElement(calls, (BasicNumberTriFunction) fn, parms);
+		return new CountedFunctionExpressionElement(calls, fn, parms);
+	}
+	
+	private static boolean isPrimitive(Type type){
+		return type.isNumeric() && !type.isBig();
+	}
+	
+	static ExpressionElement createConditional(ExpressionElement condition, ExpressionElement then, ExpressionElement otherwise){
+		return new ConditionalExpressionElement(condition, then, otherwise);
+	}
+	
+	/**
+	 * Marks the slots of all variables read by the element and its children.
+	 */
+	static void collectSlots(ExpressionElement elm, BitSet slots){
+		if(elm instanceof OperatorExpressionElement){
+			collectSlots(((OperatorExpressionElement) elm).getFirst(), slots);
+			collectSlots(((OperatorExpressionElement) elm).getNext(), slots);
+		} else if(elm instanceof UnaryOperatorExpressionElement) {
+			collectSlots(((UnaryOperatorExpressionElement) elm).getValue(), slots);
+		} else if(elm instanceof VariableExpressionElement) {
+			slots.set(((VariableExpressionElement) elm).getSlot());
+		} else if(elm instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) elm;
+			collectSlots(e.getCondition(), slots);
+			collectSlots(e.getThen(), slots);
+			collectSlots(e.getOtherwise(), slots);
+		} else if(elm instanceof FunctionExpressionElement){
+			for(ExpressionElement parm : ((FunctionExpressionElement) elm).getParms())
+				collectSlots(parm, slots);
+		}
+	}
+	
+	static String print(ExpressionElement elm){
+		return print(new StringBuilder(), elm).toString();
+	}
+	
+	private static StringBuilder print(StringBuilder sb, ExpressionElement elm){
+		if(elm instanceof CastExpressionElement){
+			print(sb, ((CastExpressionElement) elm).getValue()); //Implicit in the source
+		} else if(elm instanceof OperatorExpressionElement){
+			OperatorExpressionElement e = (OperatorExpressionElement) elm;
+			sb.append("(");
+			print(sb, e.getFirst());
+			sb.append(e.getOperator().getOperator());
+			print(sb, e.getNext());
+			sb.append(")");
+		} else if(elm instanceof UnaryOperatorExpressionElement) {
+			UnaryOperatorExpressionElement e = (UnaryOperatorExpressionElement) elm;
+			sb.append(e.getOperator().getOperator());
+			print(sb, e.getValue());
+		} else if(elm instanceof VariableExpressionElement) {
+			sb.append(((VariableExpressionElement) elm).getName());
+		} else if(elm instanceof EvalatedExpressionElement) {
+			sb.append(((EvalatedExpressionElement) elm).getValue().getValue());
+		} else if(elm instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) elm;
+			sb.append("(");
+			print(sb, e.getCondition());
+			sb.append("?");
+			print(sb, e.getThen());
+			sb.append(":");
+			print(sb, e.getOtherwise());
+			sb.append(")");
 		} else if(elm instanceof FunctionExpressionElement){
 			FunctionExpressionElement e = (FunctionExpressionElement) elm;
-			sb.append(e.getName()+"("+e.getParm()+")");
+			sb.append(e.getName()+"(");
+			for(int i = 0;i<e.getParms().length;i++){
+				if(i > 0) sb.append(",");
+				print(sb, e.getParms()[i]);
+			}
+			sb.append(")");
 		} else {
 			sb.append("<"+elm.getClass().getName()+">");
 		}
 		return sb;
 	}
 	
-	public void evaluate(String expression){
-		System.out.println("Evaluate: '"+expression+"'");
-		//if(!expression.startsWith("(")) expression = "(" + expression + ")";
-		
-		ExpressionIterator it = new ExpressionIterator(expression);
-		System.out.println(it.elements);
-		System.out.println("Parse: "+it.parse());
+	public Optional<ExpressionFunction> getFunction(String name){
+		return Optional.ofNullable(functions.get(name));
+	}
 	
-		
-		System.out.println(print(new StringBuilder(), it).toString());
-		//ExpressionStackElement root = new ExpressionStackElement(expression);
-		//System.out.println("Root: "+root);
+	public List<ExpressionFunction> getAvariableFunctions(){
+		return functions.values();
+	}
+	
+	/**
+	 * Registers a function only visible to this evaluator (and evaluators inheriting from it).
+	 */
+	public void registerFunction(ExpressionFunction function){
+		if(!functions.register(function)) throw new ExpressionException.FunctionExpressionException("Function '"+function.getName()+"' alredy registered!");
+	}
+	
+	public Optional<Operator> getOperator(String op){
+		return Optional.ofNullable(operators.get(op));
+	}
+	
+	public void registerOperator(Operator op){
+		if(!operators.register(op)) throw new RuntimeException("Operator '"+op.getOperator()+"' alredy registered!");
+	}
+	
+	public Optional<UnaryOperator> getUnaryOperator(String op){
+		return Optional.ofNullable(unaryOperators.get(op));
+	}
+	
+	/**
+	 * @return the operator used when compiling, the exact variant of the built-in arithmetic in {@link #isExact() exact} mode
+	 */
+	Optional<Operator> resolveOperator(String op, boolean exact){
+		Optional<Operator> result = getOperator(op);
+		return exact ? result.map(ExpressionEvaluatorOperators::exact) : result;
+	}
+	
+	/**
+	 * @return the function used when compiling, the exact variant of the built-in integer functions in {@link #isExact() exact} mode
+	 */
+	Optional<ExpressionFunction> resolveFunction(String name, boolean exact){
+		Optional<ExpressionFunction> result = getFunction(name);
+		return exact ? result.map(ExpressionEvaluatorFunctions::exact) : result;
+	}
+	
+	Optional<UnaryOperator> resolveUnaryOperator(String op, boolean exact){
+		Optional<UnaryOperator> result = getUnaryOperator(op);
+		return exact ? result.map(ExpressionEvaluatorOperators::exact) : result;
+	}
+	
+	public void registerUnaryOperator(UnaryOperator op){
+		if(!unaryOperators.register(op)) throw new RuntimeException("Unary operator '"+op.getOperator()+"' alredy registered!");
+	}
+	
+	Set<String> getOperatorSymbols(){
+		if(operators.values() == ExpressionEvaluatorOperators.getAvariableOperators() && unaryOperators.values() == ExpressionEvaluatorOperators.getAvariableUnaryOperators())
+			return ExpressionEvaluatorOperators.getOperatorSymbols(); //Nothing registered in this scope
+		Set<String> symbols = new LinkedHashSet<>();
+		for(Operator op : operators.values())
+			symbols.add(op.getOperator());
+		for(UnaryOperator op : unaryOperators.values())
+			symbols.add(op.getOperator());
+		return symbols;
+	}
+	
+	public CompiledExpression compile(String expression){
+		return compile(expression, ExpressionVariables.EMPTY);
+	}
+	
+	public CompiledExpression compile(String expression, String... variables){
+		return compile(expression, ExpressionVariables.of(variables));
+	}
+	
+	public CompiledExpression compile(String expression, ExpressionVariables variables){
+		Validate.notNull(expression, "expression");
+		Validate.notNull(variables, "variables");
+		if(expression.trim().isEmpty()) throw new ExpressionException("Empty expression");
+		variables = new ExpressionVariables(variables);
+		List<Token> tokens = new ExpressionLexer(expression, getOperatorSymbols()).tokenize();
+		ExpressionTracer tracer = this.tracer;
+		boolean exact = this.exact;
+		ExpressionElement root = new ExpressionParser(this, tracer, exact, expression, tokens, variables).parse();
+		if(optimize && tracer == null) root = new ExpressionOptimizer().optimize(root);
+		if(tracer == null) root = new ExpressionTypeChecker().check(root);
+		ExpressionMetrics metrics = this.metrics;
+		ExpressionStats stats = metrics == null ? null : metrics.stats(expression, variables, exact);
+		if(stats != null && tracer == null) root = stats.count(root);
+		CompiledExpression compiled = new CompiledExpression(expression, variables, root, exact, stats);
+		if(tracer != null) tracer.onCompile(compiled);
+		return compiled;
+	}
+	
+	public ExpressionValue<?> evaluate(String expression){
+		return compile(expression).evaluate();
 	}
 }
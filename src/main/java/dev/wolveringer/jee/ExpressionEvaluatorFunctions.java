@@ -1,36 +1,82 @@
 package dev.wolveringer.jee;
 
 import java.lang.reflect.Array;
-import java.util.ArrayList;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 
 import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
 import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.val;
 
 public class ExpressionEvaluatorFunctions {
-	private static List<ExpressionFunction> avariableFunctions = new ArrayList<>();
+	private static final ExpressionRegistry<ExpressionFunction> avariableFunctions = new ExpressionRegistry<>(ExpressionFunction::getName);
+	
+	static ExpressionRegistry<ExpressionFunction> getRegistry(){
+		return avariableFunctions;
+	}
+	
+	public static List<ExpressionFunction> getAvariableFunctions(){
+		return avariableFunctions.values();
+	}
 	
 	public static Optional<ExpressionFunction> getFunction(String name){
-		synchronized (avariableFunctions) {
-			return avariableFunctions.stream().filter(e -> e.getName().equalsIgnoreCase(name)).findAny();
-		}
+		return Optional.ofNullable(avariableFunctions.get(name));
 	}
 	
 	public static void registerFunction(ExpressionFunction function){
-		synchronized (avariableFunctions) {
-			if(getFunction(function.getName()).isPresent()) throw new ExpressionException.FunctionExpressionException("Function '"+function.getName()+"' alredy registered!");
-			avariableFunctions.add(function);
-		}
+		if(!avariableFunctions.register(function)) throw new ExpressionException.FunctionExpressionException("Function '"+function.getName()+"' alredy registered!");
 	}
 	
 	public static interface ExpressionFunction {
 		public ExpressionValue<?> applay(ExpressionValue<?>...values);
 		
+		/**
+		 * Called for one parameter. Override it to avoid the parameter array.
+		 */
+		public default ExpressionValue<?> applay(ExpressionValue<?> value){
+			return applay(new ExpressionValue<?>[]{ value });
+		}
+		
+		/**
+		 * Called for two parameters. Override it to avoid the parameter array.
+		 */
+		public default ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next){
+			return applay(new ExpressionValue<?>[]{ first, next });
+		}
+		
 		public String getName();
+		
+		/**
+		 * The parameter count is checked when an expression gets compiled.
+		 */
+		public default int getMinArgs(){
+			return 0;
+		}
+		
+		public default int getMaxArgs(){
+			return Integer.MAX_VALUE;
+		}
+		
+		/**
+		 * A pure function always returns the same value for the same parameters and has no side effects.
+		 * Calls of pure functions with constant parameters are evaluated at compile time.
+		 */
+		public default boolean isPure(){
+			return false;
+		}
+		
+		public default Type getResultType(Type...parms){
+			Type type = parms.length == 0 ? Type.INT : parms[0];
+			for(Type parm : parms)
+				type = Type.promote(type, parm);
+			return type;
+		}
 	}
 	
 	public static abstract class SingleParmFunction implements ExpressionFunction{
@@ -40,10 +86,328 @@ public class ExpressionEvaluatorFunctions {
 			return applay(values[0]);
 		}
 		
+		@Override
 		public abstract ExpressionValue<?> applay(ExpressionValue<?> value);
+		
+		@Override
+		public int getMinArgs() {
+			return 1;
+		}
+		
+		@Override
+		public int getMaxArgs() {
+			return 1;
+		}
+	}
+	
+	/**
+	 * A numeric function with one parameter. The parameter is converted to the result type ({@link #getResultType(Type...)}) and the matching primitive method is called.
+	 * Compiled expressions call the primitive methods directly, so a call doesn't allocate anything.
+	 */
+	public static abstract class BasicNumberFunction implements ExpressionFunction {
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
+		@Override
+		public int getMinArgs() {
+			return 1;
+		}
+		
+		@Override
+		public int getMaxArgs() {
+			return 1;
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?>... values) {
+			if(values.length != 1) throw new ExpressionException.FunctionExpressionException("Invalid function parameter count. Required 1!");
+			return applay(values[0]);
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> value) {
+			Type type = getResultType(value.getType());
+			switch(type){
+			case DOUBLE:
+				return new ExpressionValue<Double>(type, applay(value.asDouble()));
+			case FLOAT:
+				return new ExpressionValue<Float>(type, applay(value.asFloat()));
+			case LONG:
+				return new ExpressionValue<Long>(type, applay(value.asLong()));
+			case INT:
+				return new ExpressionValue<Integer>(type, applay(value.asInt()));
+			case SHORT:
+				return new ExpressionValue<Short>(type, applay(value.asShort()));
+			case BYTE:
+				return new ExpressionValue<Byte>(type, applay(value.asByte()));
+			case BIG_INTEGER:
+				return ExpressionValue.of(applay(value.asBigInteger()));
+			case BIG_DECIMAL:
+				return ExpressionValue.of(applay(value.asBigDecimal()));
+			default:
+				throw new ExpressionException("Cant find value type for "+value);
+			}
+		}
+		
+		public abstract double applay(double value);
+		public abstract float applay(float value);
+		
+		public abstract long applay(long value);
+		public abstract int applay(int value);
+		public abstract short applay(short value);
+		public abstract byte applay(byte value);
+		
+		/**
+		 * Called for big number parameters. The default calls the double method, override it to keep the precision.
+		 */
+		public BigDecimal applay(BigDecimal value){
+			return bigDecimal(applay(value.doubleValue()));
+		}
+		
+		public BigInteger applay(BigInteger value){
+			return applay(new BigDecimal(value)).toBigInteger();
+		}
 	}
 	
+	/**
+	 * A numeric function with two parameters, see {@link BasicNumberFunction}.
+	 */
+	public static abstract class BasicNumberBiFunction implements ExpressionFunction {
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
+		@Override
+		public int getMinArgs() {
+			return 2;
+		}
+		
+		@Override
+		public int getMaxArgs() {
+			return 2;
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?>... values) {
+			if(values.length != 2) throw new ExpressionException.FunctionExpressionException("Invalid function parameter count. Required 2!");
+			return applay(values[0], values[1]);
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next) {
+			Type type = getResultType(first.getType(), next.getType());
+			switch(type){
+			case DOUBLE:
+				return new ExpressionValue<Double>(type, applay(first.asDouble(), next.asDouble()));
+			case FLOAT:
+				return new ExpressionValue<Float>(type, applay(first.asFloat(), next.asFloat()));
+			case LONG:
+				return new ExpressionValue<Long>(type, applay(first.asLong(), next.asLong()));
+			case INT:
+				return new ExpressionValue<Integer>(type, applay(first.asInt(), next.asInt()));
+			case SHORT:
+				return new ExpressionValue<Short>(type, applay(first.asShort(), next.asShort()));
+			case BYTE:
+				return new ExpressionValue<Byte>(type, applay(first.asByte(), next.asByte()));
+			case BIG_INTEGER:
+				return ExpressionValue.of(applay(first.asBigInteger(), next.asBigInteger()));
+			case BIG_DECIMAL:
+				return ExpressionValue.of(applay(first.asBigDecimal(), next.asBigDecimal()));
+			default:
+				throw new ExpressionException("Cant find value type for "+first+" and "+next);
+			}
+		}
+		
+		public abstract double applay(double first, double next);
+		public abstract float applay(float first, float next);
+		
+		public abstract long applay(long first, long next);
+		public abstract int applay(int first, int next);
+		public abstract short applay(short first, short next);
+		public abstract byte applay(byte first, byte next);
+		
+		/**
+		 * Called for big number parameters, see {@link BasicNumberFunction#applay(BigDecimal)}.
+		 */
+		public BigDecimal applay(BigDecimal first, BigDecimal next){
+			return bigDecimal(applay(first.doubleValue(), next.doubleValue()));
+		}
+		
+		public BigInteger applay(BigInteger first, BigInteger next){
+			return applay(new BigDecimal(first), new BigDecimal(next)).toBigInteger();
+		}
+	}
+	
+	/**
+	 * A numeric function with three parameters, see {@link BasicNumberFunction}.
+	 */
+	public static abstract class BasicNumberTriFunction implements ExpressionFunction {
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
+		@Override
+		public int getMinArgs() {
+			return 3;
+		}
+		
+		@Override
+		public int getMaxArgs() {
+			return 3;
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?>... values) {
+			if(values.length != 3) throw new ExpressionException.FunctionExpressionException("Invalid function parameter count. Required 3!");
+			ExpressionValue<?> a = values[0], b = values[1], c = values[2];
+			Type type = getResultType(a.getType(), b.getType(), c.getType());
+			switch(type){
+			case DOUBLE:
+				return new ExpressionValue<Double>(type, applay(a.asDouble(), b.asDouble(), c.asDouble()));
+			case FLOAT:
+				return new ExpressionValue<Float>(type, applay(a.asFloat(), b.asFloat(), c.asFloat()));
+			case LONG:
+				return new ExpressionValue<Long>(type, applay(a.asLong(), b.asLong(), c.asLong()));
+			case INT:
+				return new ExpressionValue<Integer>(type, applay(a.asInt(), b.asInt(), c.asInt()));
+			case SHORT:
+				return new ExpressionValue<Short>(type, applay(a.asShort(), b.asShort(), c.asShort()));
+			case BYTE:
+				return new ExpressionValue<Byte>(type, applay(a.asByte(), b.asByte(), c.asByte()));
+			case BIG_INTEGER:
+				return ExpressionValue.of(applay(a.asBigInteger(), b.asBigInteger(), c.asBigInteger()));
+			case BIG_DECIMAL:
+				return ExpressionValue.of(applay(a.asBigDecimal(), b.asBigDecimal(), c.asBigDecimal()));
+			default:
+				throw new ExpressionException("Cant find value type for "+Arrays.toString(values));
+			}
+		}
+		
+		public abstract double applay(double a, double b, double c);
+		public abstract float applay(float a, float b, float c);
+		
+		public abstract long applay(long a, long b, long c);
+		public abstract int applay(int a, int b, int c);
+		public abstract short applay(short a, short b, short c);
+		public abstract byte applay(byte a, byte b, byte c);
+		
+		/**
+		 * Called for big number parameters, see {@link BasicNumberFunction#applay(BigDecimal)}.
+		 */
+		public BigDecimal applay(BigDecimal a, BigDecimal b, BigDecimal c){
+			return bigDecimal(applay(a.doubleValue(), b.doubleValue(), c.doubleValue()));
+		}
+		
+		public BigInteger applay(BigInteger a, BigInteger b, BigInteger c){
+			return applay(new BigDecimal(a), new BigDecimal(b), new BigDecimal(c)).toBigInteger();
+		}
+	}
+	
+	/**
+	 * An integer function which detects overflows instead of wrapping around, like {@link ExpressionEvaluatorOperators.ExactNumberOperator}.
+	 * The boxed evaluation continues with a {@link Type#BIG_INTEGER} once a result overflows, the primitive evaluation throws an {@link ArithmeticException}.
+	 */
+	public static abstract class ExactNumberFunction extends BasicNumberFunction {
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> value) {
+			try {
+				return super.applay(value);
+			} catch (ArithmeticException e) {
+				return ExpressionValue.of(applay(value.asBigInteger()));
+			}
+		}
+	}
+	
+	/**
+	 * A function which is only defined for decimal numbers. It returns a float for float parameters and a double for everything else.
+	 */
+	public static abstract class BasicDecimalFunction extends BasicNumberFunction {
+		@Override
+		public Type getResultType(Type... parms) {
+			return ExpressionEvaluatorFunctions.getDecimalType(parms);
+		}
+		
+		@Override
+		public float applay(float value) {
+			return (float) applay((double) value);
+		}
+		
+		@Override
+		public long applay(long value) {
+			return (long) applay((double) value);
+		}
+		
+		@Override
+		public int applay(int value) {
+			return (int) applay((double) value);
+		}
+		
+		@Override
+		public short applay(short value) {
+			return (short) applay((double) value);
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			return (byte) applay((double) value);
+		}
+	}
+	
+	/**
+	 * A function with two parameters which is only defined for decimal numbers, see {@link BasicDecimalFunction}.
+	 */
+	public static abstract class BasicDecimalBiFunction extends BasicNumberBiFunction {
+		@Override
+		public Type getResultType(Type... parms) {
+			return ExpressionEvaluatorFunctions.getDecimalType(parms);
+		}
+		
+		@Override
+		public float applay(float first, float next) {
+			return (float) applay((double) first, (double) next);
+		}
+		
+		@Override
+		public long applay(long first, long next) {
+			return (long) applay((double) first, (double) next);
+		}
+		
+		@Override
+		public int applay(int first, int next) {
+			return (int) applay((double) first, (double) next);
+		}
+		
+		@Override
+		public short applay(short first, short next) {
+			return (short) applay((double) first, (double) next);
+		}
+		
+		@Override
+		public byte applay(byte first, byte next) {
+			return (byte) applay((double) first, (double) next);
+		}
+	}
+	
+	private static BigDecimal bigDecimal(double value){
+		return ExpressionValue.of(value).asBigDecimal();
+	}
+	
+	private static Type getDecimalType(Type... parms){
+		for(Type parm : parms)
+			if(parm != Type.FLOAT) return Type.DOUBLE;
+		return parms.length == 0 ? Type.DOUBLE : Type.FLOAT;
+	}
+	
+	/**
+	 * @deprecated boxes and copies every parameter on each call, use {@link BasicNumberFunction} or {@link BasicNumberBiFunction}
+	 */
+	@Deprecated
 	@RequiredArgsConstructor
+	@Getter
 	public static abstract class NumberParmFunction implements ExpressionFunction {
 		private final int minArgs;
 		private final int maxArgs;
@@ -56,30 +420,34 @@ public class ExpressionEvaluatorFunctions {
 			return out;
 		}
 		
-		private <T> boolean isAny(Class<T> clazz, ExpressionValue<?>... values){
-			for(int i = 0;i<values.length;i++)
-				if(values[i].getValue().getClass().isAssignableFrom(clazz) ||
-						clazz.isAssignableFrom(values[i].getValue().getClass()))
-					return true;
-			return false;
+		@Override
+		public Type getResultType(Type... parms) {
+			for(Type type : new Type[]{ Type.FLOAT, Type.DOUBLE, Type.LONG, Type.INT, Type.SHORT, Type.BYTE })
+				for(Type parm : parms)
+					if(parm == type) return type;
+			throw new ExpressionException("Cant find value type for "+Arrays.toString(parms));
 		}
 		
 		@Override
 		public ExpressionValue<?> applay(ExpressionValue<?>... values) {
-			if(values.length < minArgs || values.length > maxArgs) throw new ExpressionException.FunctionExpressionException("Function parameter count out of bounds! ("+minArgs+" < "+val.class+" < "+maxArgs+")");
-			if(isAny(Float.class, values)){
+			if(values.length < minArgs || values.length > maxArgs) throw new ExpressionException.FunctionExpressionException("Function parameter count out of bounds! ("+minArgs+" <= "+values.length+" <= "+maxArgs+")");
+			Type[] types = new Type[values.length];
+			for(int i = 0;i<values.length;i++)
+				types[i] = values[i].getType();
+			switch(getResultType(types)){
+			case FLOAT:
 				return new ExpressionValue<Float>(Type.FLOAT, applay(mapTo(Float.class, a ->  a.asFloat(), values)));
-			} else if(isAny(Double.class, values)){
+			case DOUBLE:
 				return new ExpressionValue<Double>(Type.DOUBLE, applay(mapTo(Double.class, a ->  a.asDouble(), values)));
-			} else if(isAny(Long.class, values)){
+			case LONG:
 				return new ExpressionValue<Long>(Type.LONG, applay(mapTo(Long.class, a ->  a.asLong(), values)));
-			} else if(isAny(Integer.class, values)){
+			case INT:
 				return new ExpressionValue<Integer>(Type.INT, applay(mapTo(Integer.class, a ->  a.asInt(), values)));
-			} else if(isAny(Short.class, values)){
+			case SHORT:
 				return new ExpressionValue<Short>(Type.SHORT, applay(mapTo(Short.class, a ->  a.asShort(), values)));
-			} else if(isAny(Byte.class, values)){
+			default:
 				return new ExpressionValue<Byte>(Type.BYTE, applay(mapTo(Byte.class, a ->  a.asByte(), values)));
-			} else throw new ExpressionException("Cant find value type for "+values.length+"");
+			}
 		}
 		
 		abstract float applay(Float...args);
@@ -90,82 +458,591 @@ public class ExpressionEvaluatorFunctions {
 		abstract byte applay(Byte...args);
 	}
 	
-	public static final ExpressionFunction MATH_ABS = new NumberParmFunction(1, 1) {
+	public static final ExpressionFunction MATH_ABS = new BasicNumberFunction() {
 		@Override
 		public String getName() {
 			return "abs";
 		}
 		
 		@Override
-		byte applay(Byte... args) {
-			return (byte) (args[0].byteValue() < 0 ? -args[0].byteValue() : args[0].byteValue());
+		public byte applay(byte value) {
+			return (byte) (value < 0 ? -value : value);
+		}
+		
+		@Override
+		public short applay(short value) {
+			return (short) (value < 0 ? -value : value);
+		}
+		
+		@Override
+		public int applay(int value) {
+			return value < 0 ? -value : value;
+		}
+		
+		@Override
+		public long applay(long value) {
+			return value < 0 ? -value : value;
+		}
+		
+		@Override
+		public double applay(double value) {
+			return value < 0 ? -value : value;
+		}
+		
+		@Override
+		public float applay(float value) {
+			return value < 0 ? -value : value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value.abs();
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value.abs();
+		}
+	};
+	
+	public static final ExpressionFunction MATH_SQR = new BasicNumberFunction() {
+		@Override
+		public String getName() {
+			return "sqr";
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			return (byte) (value * value);
+		}
+		
+		@Override
+		public short applay(short value) {
+			return (short) (value * value);
+		}
+		
+		@Override
+		public int applay(int value) {
+			return value * value;
 		}
 		
 		@Override
-		short applay(Short... args) {
-			return (short) (args[0].shortValue() < 0 ? -args[0].shortValue() : args[0].shortValue());
+		public long applay(long value) {
+			return value * value;
 		}
 		
 		@Override
-		int applay(Integer... args) {
-			return args[0].intValue() < 0 ? -args[0].intValue() : args[0].intValue();
+		public double applay(double value) {
+			return value * value;
 		}
 		
 		@Override
-		long applay(Long... args) {
-			return args[0].longValue() < 0 ? -args[0].longValue() : args[0].longValue();
+		public float applay(float value) {
+			return value * value;
 		}
 		
 		@Override
-		double applay(Double... args) {
-			return args[0].doubleValue() < 0 ? -args[0].doubleValue() : args[0].doubleValue();
+		public BigDecimal applay(BigDecimal value) {
+			return value.multiply(value);
 		}
 		
 		@Override
-		float applay(Float... args) {
-			return args[0].floatValue() < 0 ? -args[0].floatValue() : args[0].floatValue();
+		public BigInteger applay(BigInteger value) {
+			return value.multiply(value);
 		}
 	};
+	
+	/**
+	 * {@link #MATH_ABS} with overflow checks, used in {@link ExpressionEvaluator#isExact() exact} mode.
+	 */
+	public static final ExpressionFunction MATH_ABS_EXACT = new ExactNumberFunction() {
+		@Override
+		public String getName() {
+			return "abs";
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			if(value == Byte.MIN_VALUE) throw new ArithmeticException("byte overflow");
+			return (byte) (value < 0 ? -value : value);
+		}
+		
+		@Override
+		public short applay(short value) {
+			if(value == Short.MIN_VALUE) throw new ArithmeticException("short overflow");
+			return (short) (value < 0 ? -value : value);
+		}
+		
+		@Override
+		public int applay(int value) {
+			return value < 0 ? Math.negateExact(value) : value;
+		}
 		
-	public static final ExpressionFunction MATH_SQR = new NumberParmFunction(1, 1) {
+		@Override
+		public long applay(long value) {
+			return value < 0 ? Math.negateExact(value) : value;
+		}
+		
+		@Override
+		public double applay(double value) {
+			return value < 0 ? -value : value;
+		}
+		
+		@Override
+		public float applay(float value) {
+			return value < 0 ? -value : value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value.abs();
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value.abs();
+		}
+	};
+	
+	/**
+	 * {@link #MATH_SQR} with overflow checks, used in {@link ExpressionEvaluator#isExact() exact} mode.
+	 */
+	public static final ExpressionFunction MATH_SQR_EXACT = new ExactNumberFunction() {
 		@Override
 		public String getName() {
 			return "sqr";
 		}
 		
 		@Override
-		byte applay(Byte... args) {
-			return (byte) (args[0].byteValue() * args[0].byteValue());
+		public byte applay(byte value) {
+			int result = value * value;
+			if(result != (byte) result) throw new ArithmeticException("byte overflow");
+			return (byte) result;
+		}
+		
+		@Override
+		public short applay(short value) {
+			int result = value * value;
+			if(result != (short) result) throw new ArithmeticException("short overflow");
+			return (short) result;
+		}
+		
+		@Override
+		public int applay(int value) {
+			return Math.multiplyExact(value, value);
+		}
+		
+		@Override
+		public long applay(long value) {
+			return Math.multiplyExact(value, value);
+		}
+		
+		@Override
+		public double applay(double value) {
+			return value * value;
+		}
+		
+		@Override
+		public float applay(float value) {
+			return value * value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value.multiply(value);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value.multiply(value);
+		}
+	};
+	
+	/**
+	 * @return the exact variant of a built-in integer function, or the function itself
+	 */
+	public static ExpressionFunction exact(ExpressionFunction function){
+		if(function == MATH_ABS) return MATH_ABS_EXACT;
+		if(function == MATH_SQR) return MATH_SQR_EXACT;
+		return function;
+	}
+	
+	public static final ExpressionFunction MATH_SQRT = new BasicDecimalFunction() {
+		@Override
+		public String getName() {
+			return "sqrt";
+		}
+		
+		@Override
+		public double applay(double value) {
+			return Math.sqrt(value);
+		}
+	};
+	
+	public static final ExpressionFunction MATH_POW = new BasicDecimalBiFunction() {
+		@Override
+		public String getName() {
+			return "pow";
+		}
+		
+		@Override
+		public double applay(double first, double next) {
+			return Math.pow(first, next);
+		}
+	};
+	
+	public static final ExpressionFunction MATH_MIN = new BasicNumberBiFunction() {
+		@Override
+		public String getName() {
+			return "min";
+		}
+		
+		@Override
+		public double applay(double first, double next) {
+			return Math.min(first, next);
+		}
+		
+		@Override
+		public float applay(float first, float next) {
+			return Math.min(first, next);
+		}
+		
+		@Override
+		public long applay(long first, long next) {
+			return Math.min(first, next);
+		}
+		
+		@Override
+		public int applay(int first, int next) {
+			return Math.min(first, next);
+		}
+		
+		@Override
+		public short applay(short first, short next) {
+			return (short) Math.min(first, next);
+		}
+		
+		@Override
+		public byte applay(byte first, byte next) {
+			return (byte) Math.min(first, next);
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal first, BigDecimal next) {
+			return first.min(next);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger first, BigInteger next) {
+			return first.min(next);
+		}
+	};
+	
+	public static final ExpressionFunction MATH_MAX = new BasicNumberBiFunction() {
+		@Override
+		public String getName() {
+			return "max";
+		}
+		
+		@Override
+		public double applay(double first, double next) {
+			return Math.max(first, next);
+		}
+		
+		@Override
+		public float applay(float first, float next) {
+			return Math.max(first, next);
+		}
+		
+		@Override
+		public long applay(long first, long next) {
+			return Math.max(first, next);
+		}
+		
+		@Override
+		public int applay(int first, int next) {
+			return Math.max(first, next);
+		}
+		
+		@Override
+		public short applay(short first, short next) {
+			return (short) Math.max(first, next);
+		}
+		
+		@Override
+		public byte applay(byte first, byte next) {
+			return (byte) Math.max(first, next);
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal first, BigDecimal next) {
+			return first.max(next);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger first, BigInteger next) {
+			return first.max(next);
+		}
+	};
+	
+	public static final ExpressionFunction MATH_FLOOR = new BasicNumberFunction() {
+		@Override
+		public String getName() {
+			return "floor";
+		}
+		
+		@Override
+		public double applay(double value) {
+			return Math.floor(value);
+		}
+		
+		@Override
+		public float applay(float value) {
+			return (float) Math.floor(value);
+		}
+		
+		@Override
+		public long applay(long value) {
+			return value;
+		}
+		
+		@Override
+		public int applay(int value) {
+			return value;
+		}
+		
+		@Override
+		public short applay(short value) {
+			return value;
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			return value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value.setScale(0, RoundingMode.FLOOR);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value;
+		}
+	};
+	
+	public static final ExpressionFunction MATH_CEIL = new BasicNumberFunction() {
+		@Override
+		public String getName() {
+			return "ceil";
+		}
+		
+		@Override
+		public double applay(double value) {
+			return Math.ceil(value);
+		}
+		
+		@Override
+		public float applay(float value) {
+			return (float) Math.ceil(value);
+		}
+		
+		@Override
+		public long applay(long value) {
+			return value;
+		}
+		
+		@Override
+		public int applay(int value) {
+			return value;
+		}
+		
+		@Override
+		public short applay(short value) {
+			return value;
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			return value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value.setScale(0, RoundingMode.CEILING);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value;
+		}
+	};
+	
+	/**
+	 * Rounds half up like {@link Math#round(double)}, but keeps the type of the parameter.
+	 */
+	public static final ExpressionFunction MATH_ROUND = new BasicNumberFunction() {
+		private final BigDecimal half = new BigDecimal("0.5");
+		
+		@Override
+		public String getName() {
+			return "round";
+		}
+		
+		@Override
+		public double applay(double value) {
+			return Math.abs(value) < 0x1p52 ? Math.round(value) : value;
+		}
+		
+		@Override
+		public float applay(float value) {
+			return Math.abs(value) < 0x1p23F ? Math.round(value) : value;
+		}
+		
+		@Override
+		public long applay(long value) {
+			return value;
+		}
+		
+		@Override
+		public int applay(int value) {
+			return value;
+		}
+		
+		@Override
+		public short applay(short value) {
+			return value;
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			return value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value.add(half).setScale(0, RoundingMode.FLOOR);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value;
+		}
+	};
+	
+	public static final ExpressionFunction MATH_LOG = new BasicDecimalFunction() {
+		@Override
+		public String getName() {
+			return "log";
+		}
+		
+		@Override
+		public double applay(double value) {
+			return Math.log(value);
+		}
+	};
+	
+	public static final ExpressionFunction MATH_EXP = new BasicDecimalFunction() {
+		@Override
+		public String getName() {
+			return "exp";
+		}
+		
+		@Override
+		public double applay(double value) {
+			return Math.exp(value);
+		}
+	};
+	
+	public static final ExpressionFunction MATH_SIN = new BasicDecimalFunction() {
+		@Override
+		public String getName() {
+			return "sin";
+		}
+		
+		@Override
+		public double applay(double value) {
+			return Math.sin(value);
+		}
+	};
+	
+	public static final ExpressionFunction MATH_COS = new BasicDecimalFunction() {
+		@Override
+		public String getName() {
+			return "cos";
+		}
+		
+		@Override
+		public double applay(double value) {
+			return Math.cos(value);
+		}
+	};
+	
+	/**
+	 * <code>clamp(value, min, max)</code>
+	 */
+	public static final ExpressionFunction MATH_CLAMP = new BasicNumberTriFunction() {
+		@Override
+		public String getName() {
+			return "clamp";
+		}
+		
+		@Override
+		public double applay(double value, double min, double max) {
+			return Math.min(Math.max(value, min), max);
+		}
+		
+		@Override
+		public float applay(float value, float min, float max) {
+			return Math.min(Math.max(value, min), max);
+		}
+		
+		@Override
+		public long applay(long value, long min, long max) {
+			return Math.min(Math.max(value, min), max);
 		}
 		
 		@Override
-		short applay(Short... args) {
-			return (short) (args[0].shortValue() * args[0].shortValue());
+		public int applay(int value, int min, int max) {
+			return Math.min(Math.max(value, min), max);
 		}
 		
 		@Override
-		int applay(Integer... args) {
-			return args[0].intValue() * args[0].intValue();
+		public short applay(short value, short min, short max) {
+			return (short) Math.min(Math.max(value, min), max);
 		}
 		
 		@Override
-		long applay(Long... args) {
-			return args[0].longValue() * args[0].longValue();
+		public byte applay(byte value, byte min, byte max) {
+			return (byte) Math.min(Math.max(value, min), max);
 		}
 		
 		@Override
-		double applay(Double... args) {
-			return args[0].doubleValue() * args[0].doubleValue();
+		public BigDecimal applay(BigDecimal value, BigDecimal min, BigDecimal max) {
+			return value.max(min).min(max);
 		}
 		
 		@Override
-		float applay(Float... args) {
-			return args[0].floatValue() * args[0].floatValue();
+		public BigInteger applay(BigInteger value, BigInteger min, BigInteger max) {
+			return value.max(min).min(max);
 		}
 	};
 	
 	static {
 		registerFunction(MATH_SQR);
 		registerFunction(MATH_ABS);
+		registerFunction(MATH_SQRT);
+		registerFunction(MATH_POW);
+		registerFunction(MATH_MIN);
+		registerFunction(MATH_MAX);
+		registerFunction(MATH_FLOOR);
+		registerFunction(MATH_CEIL);
+		registerFunction(MATH_ROUND);
+		registerFunction(MATH_LOG);
+		registerFunction(MATH_EXP);
+		registerFunction(MATH_SIN);
+		registerFunction(MATH_COS);
+		registerFunction(MATH_CLAMP);
 	}
 }
@@ -1,55 +1,140 @@
 package dev.wolveringer.jee;
 
-import java.util.ArrayList;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
-import dev.wolveringer.jee.ExpressionEvaluator.EvalatedExpressionElement;
-import dev.wolveringer.jee.ExpressionEvaluator.ExpressionIteratorElement;
 import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
 import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import lombok.Getter;
 
 public class ExpressionEvaluatorOperators {
 	public static interface Operator {
 		String getOperator();
 		int getPriority();
-		default ExpressionIteratorElement applay(ExpressionIteratorElement first, ExpressionIteratorElement last){
-			ExpressionValue<?> val = applay(first.elm.parse(), last.elm.parse());
-			return new ExpressionIteratorElement(first.prev, last.next, new EvalatedExpressionElement(val), last.operator);
-		}
 		ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next);
+		default Type getResultType(Type first, Type next){
+			return Type.promote(first, next);
+		}
+		/**
+		 * @see dev.wolveringer.jee.ExpressionEvaluatorFunctions.ExpressionFunction#isPure()
+		 */
+		default boolean isPure(){
+			return false;
+		}
+		/**
+		 * An associative operator may evaluate <code>(a op b) op c</code> as <code>a op (b op c)</code> if all operands have the same type.
+		 * The parser builds chains of it as a balanced tree, so a decimal chain is rounded like a pairwise sum instead of from left to right.
+		 */
+		default boolean isAssociative(){
+			return false;
+		}
+	}
+	
+	public static interface UnaryOperator {
+		String getOperator();
+		ExpressionValue<?> applay(ExpressionValue<?> value);
+		default Type getResultType(Type value){
+			return Type.promote(value, value);
+		}
+		default boolean isPure(){
+			return false;
+		}
+	}
+	
+	private static final ExpressionRegistry<Operator> avariableOperators = new ExpressionRegistry<>(Operator::getOperator);
+	private static final ExpressionRegistry<UnaryOperator> avariableUnaryOperators = new ExpressionRegistry<>(UnaryOperator::getOperator);
+	private static volatile Set<String> operatorSymbols = Collections.emptySet();
+	
+	static ExpressionRegistry<Operator> getRegistry(){
+		return avariableOperators;
 	}
 	
-	private static List<Operator> avariableOperators = new ArrayList<>();
+	static ExpressionRegistry<UnaryOperator> getUnaryRegistry(){
+		return avariableUnaryOperators;
+	}
 	
 	public static List<Operator> getAvariableOperators(){
-		return Collections.unmodifiableList(avariableOperators);
+		return avariableOperators.values();
 	}
 	
 	public static Optional<Operator> getOperator(String op){
-		return avariableOperators.stream().filter(e -> e.getOperator().equalsIgnoreCase(op)).findFirst();
+		return Optional.ofNullable(avariableOperators.get(op));
 	}
 	
-	public static void registerOperator(Operator op){
-		if(getOperator(op.getOperator()).isPresent()) throw new RuntimeException("Operator '"+op.getOperator()+"' alredy registered!");
-		synchronized (avariableOperators) {
-			avariableOperators.add(op);
-		}
+	public static synchronized void registerOperator(Operator op){
+		if(!avariableOperators.register(op)) throw new RuntimeException("Operator '"+op.getOperator()+"' alredy registered!");
+		updateSymbols();
+	}
+	
+	public static List<UnaryOperator> getAvariableUnaryOperators(){
+		return avariableUnaryOperators.values();
+	}
+	
+	public static Optional<UnaryOperator> getUnaryOperator(String op){
+		return Optional.ofNullable(avariableUnaryOperators.get(op));
+	}
+	
+	public static synchronized void registerUnaryOperator(UnaryOperator op){
+		if(!avariableUnaryOperators.register(op)) throw new RuntimeException("Unary operator '"+op.getOperator()+"' alredy registered!");
+		updateSymbols();
+	}
+	
+	private static void updateSymbols(){
+		Set<String> symbols = new LinkedHashSet<>();
+		for(Operator op : avariableOperators.values())
+			symbols.add(op.getOperator());
+		for(UnaryOperator op : avariableUnaryOperators.values())
+			symbols.add(op.getOperator());
+		operatorSymbols = Collections.unmodifiableSet(symbols);
+	}
+	
+	/**
+	 * @return the symbols of all binary and unary operators, used by the lexer
+	 */
+	public static Set<String> getOperatorSymbols(){
+		return operatorSymbols;
 	}
 	
 	public static final int PRIORITY_FUNCTION = 20;
 	public static final int PRIORITY_SQUARE = 15;
+	public static final int PRIORITY_UNARY = 12;
 	public static final int PRIORITY_POINT = 10;
 	public static final int PRIORITY_LINE = 5;
+	public static final int PRIORITY_COMPARE = 4;
+	public static final int PRIORITY_EQUALITY = 3;
+	public static final int PRIORITY_AND = 2;
+	public static final int PRIORITY_OR = 1;
+	public static final int PRIORITY_TERNARY = 0;
+	
+	/**
+	 * Symbols of the conditional <code>condition ? then : otherwise</code>, which is handled by the parser itself.
+	 */
+	public static final String TERNARY_CONDITION = "?";
+	public static final String TERNARY_ELSE = ":";
 	
 	public abstract static class BasicNumberOperator implements Operator{
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
 		@Override
 		public ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next) {
 			Number a = first.asNumber();
 			Number b = next.asNumber();
 			
-			if(a instanceof Double || b instanceof Double)
+			if(isBig(a) || isBig(b)){
+				if(a instanceof BigDecimal || b instanceof BigDecimal || isDecimal(a) || isDecimal(b))
+					return ExpressionValue.of(applay(first.asBigDecimal(), next.asBigDecimal()));
+				return ExpressionValue.of(applay(first.asBigInteger(), next.asBigInteger()));
+			}
+			else if(a instanceof Double || b instanceof Double)
 				return new ExpressionValue<Double>(Type.DOUBLE, applay(a.doubleValue(), b.doubleValue()));
 			else if(a instanceof Float || b instanceof Float)
 				return new ExpressionValue<Float>(Type.FLOAT, applay(a.floatValue(), b.floatValue()));
@@ -59,7 +144,7 @@ public class ExpressionEvaluatorOperators {
 			else if(a instanceof Integer || b instanceof Integer)
 				return new ExpressionValue<Integer>(Type.INT, applay(a.intValue(), b.intValue()));
 			else if(a instanceof Short || b instanceof Short)
-				return new ExpressionValue<Short>(Type.SHORT, (short) applay(a.shortValue(), b.shortValue()));
+				return new ExpressionValue<Short>(Type.SHORT, narrow(applay(a.shortValue(), b.shortValue())));
 			else if(a instanceof Byte || b instanceof Byte)
 				return new ExpressionValue<Byte>(Type.BYTE, applay(a.byteValue(), b.byteValue()));
 			
@@ -73,8 +158,514 @@ public class ExpressionEvaluatorOperators {
 		public abstract int applay(int first, int next);
 		public abstract short applay(short first, byte next);
 		public abstract byte applay(byte first, byte next);
+		
+		/**
+		 * Narrows the int result of two short operands.
+		 */
+		public short narrow(int result){
+			return (short) result;
+		}
+		
+		public BigDecimal applay(BigDecimal first, BigDecimal next){
+			throw new ExpressionException("Operator '"+getOperator()+"' doesn't support "+Type.BIG_DECIMAL);
+		}
+		
+		public BigInteger applay(BigInteger first, BigInteger next){
+			throw new ExpressionException("Operator '"+getOperator()+"' doesn't support "+Type.BIG_INTEGER);
+		}
+	}
+	
+	/**
+	 * Integer arithmetic which detects overflows instead of wrapping around, decimals and big numbers are computed by the wrapped operator.
+	 * The boxed evaluation continues with a {@link Type#BIG_INTEGER} once a result overflows, so arbitrary precision is only used when it is needed.
+	 * The primitive evaluation can't represent such a result and throws an {@link ArithmeticException}.
+	 */
+	public abstract static class ExactNumberOperator extends BasicNumberOperator {
+		@Getter
+		private final BasicNumberOperator wrapping;
+		
+		public ExactNumberOperator(BasicNumberOperator wrapping) {
+			this.wrapping = wrapping;
+		}
+		
+		@Override
+		public String getOperator() {
+			return wrapping.getOperator();
+		}
+		
+		@Override
+		public int getPriority() {
+			return wrapping.getPriority();
+		}
+		
+		@Override
+		public boolean isAssociative() {
+			return wrapping.isAssociative();
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next) {
+			Type type = integerType(first.asNumber(), next.asNumber());
+			if(type == null) return super.applay(first, next);
+			try {
+				long result = applay(first.asLong(), next.asLong());
+				switch(type){
+				case LONG:
+					return ExpressionValue.of(result);
+				case INT:
+					return ExpressionValue.of(Math.toIntExact(result));
+				case SHORT:
+					return new ExpressionValue<Short>(Type.SHORT, narrow(Math.toIntExact(result)));
+				default:
+					return new ExpressionValue<Byte>(Type.BYTE, narrowByte(Math.toIntExact(result)));
+				}
+			} catch (ArithmeticException e) {
+				return ExpressionValue.of(applay(first.asBigInteger(), next.asBigInteger())); //Division by zero fails again
+			}
+		}
+		
+		private static Type integerType(Number first, Number next){
+			Type a = integerType(first);
+			Type b = integerType(next);
+			return a == null || b == null ? null : Type.promote(a, b);
+		}
+		
+		private static Type integerType(Number value){
+			if(value instanceof Long) return Type.LONG;
+			if(value instanceof Integer) return Type.INT;
+			if(value instanceof Short) return Type.SHORT;
+			if(value instanceof Byte) return Type.BYTE;
+			return null;
+		}
+		
+		private static byte narrowByte(int result){
+			if(result != (byte) result) throw new ArithmeticException("byte overflow");
+			return (byte) result;
+		}
+		
+		@Override
+		public short narrow(int result) {
+			if(result != (short) result) throw new ArithmeticException("short overflow");
+			return (short) result;
+		}
+		
+		@Override
+		public double applay(double first, double next) {
+			return wrapping.applay(first, next);
+		}
+		
+		@Override
+		public float applay(float first, float next) {
+			return wrapping.applay(first, next);
+		}
+		
+		@Override
+		public int applay(int first, int next) {
+			return Math.toIntExact(applay((long) first, (long) next));
+		}
+		
+		@Override
+		public short applay(short first, byte next) {
+			return narrow(applay((int) first, (int) next));
+		}
+		
+		@Override
+		public byte applay(byte first, byte next) {
+			return narrowByte(applay((int) first, (int) next));
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal first, BigDecimal next) {
+			return wrapping.applay(first, next);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger first, BigInteger next) {
+			return wrapping.applay(first, next);
+		}
+	}
+	
+	public abstract static class BasicNumberUnaryOperator implements UnaryOperator{
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> value) {
+			Number a = value.asNumber();
+			
+			if(a instanceof BigDecimal)
+				return ExpressionValue.of(applay((BigDecimal) a));
+			else if(a instanceof BigInteger)
+				return ExpressionValue.of(applay((BigInteger) a));
+			else if(a instanceof Double)
+				return new ExpressionValue<Double>(Type.DOUBLE, applay(a.doubleValue()));
+			else if(a instanceof Float)
+				return new ExpressionValue<Float>(Type.FLOAT, applay(a.floatValue()));
+			else if(a instanceof Long)
+				return new ExpressionValue<Long>(Type.LONG, applay(a.longValue()));
+			else if(a instanceof Integer)
+				return new ExpressionValue<Integer>(Type.INT, applay(a.intValue()));
+			else if(a instanceof Short)
+				return new ExpressionValue<Short>(Type.SHORT, applay(a.shortValue()));
+			else if(a instanceof Byte)
+				return new ExpressionValue<Byte>(Type.BYTE, applay(a.byteValue()));
+			
+			else throw new UnsupportedOperationException("Class "+a.getClass().getName()+" isnt an number instance!");
+		}
+		
+		public abstract double applay(double value);
+		public abstract float applay(float value);
+		
+		public abstract long applay(long value);
+		public abstract int applay(int value);
+		public abstract short applay(short value);
+		public abstract byte applay(byte value);
+		
+		public BigDecimal applay(BigDecimal value){
+			throw new ExpressionException("Unary operator '"+getOperator()+"' doesn't support "+Type.BIG_DECIMAL);
+		}
+		
+		public BigInteger applay(BigInteger value){
+			throw new ExpressionException("Unary operator '"+getOperator()+"' doesn't support "+Type.BIG_INTEGER);
+		}
+	}
+	
+	private static boolean isBig(Number value){
+		return value instanceof BigInteger || value instanceof BigDecimal;
+	}
+	
+	private static boolean isDecimal(Number value){
+		return value instanceof Double || value instanceof Float;
+	}
+	
+	/**
+	 * Compares two numbers (or two booleans for equality) and results in a {@link Type#BOOLEAN}.
+	 * The operands are promoted like for arithmetic operators, decimals are compared as double, big numbers by their exact value and everything else as long.
+	 */
+	public abstract static class BasicCompareOperator implements Operator {
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
+		/**
+		 * @return true if booleans can be compared, which only makes sense for (in)equality
+		 */
+		protected boolean isEquality(){
+			return false;
+		}
+		
+		/**
+		 * @return the type both operands are converted to before comparing them
+		 */
+		public Type getOperandType(Type first, Type next){
+			if(first == Type.BOOLEAN && next == Type.BOOLEAN && isEquality()) return Type.BOOLEAN;
+			return Type.promote(first, next);
+		}
+		
+		@Override
+		public Type getResultType(Type first, Type next) {
+			getOperandType(first, next);
+			return Type.BOOLEAN;
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next) {
+			Type type = getOperandType(first.getType(), next.getType());
+			switch(type){
+			case DOUBLE:
+				return ExpressionValue.of(applay(first.asDouble(), next.asDouble()));
+			case FLOAT:
+				return ExpressionValue.of(applay(first.asFloat(), next.asFloat()));
+			case BIG_INTEGER:
+			case BIG_DECIMAL:
+				return ExpressionValue.of(applay((long) first.asBigDecimal().compareTo(next.asBigDecimal()), 0L));
+			default:
+				return ExpressionValue.of(applay(first.asLong(), next.asLong()));
+			}
+		}
+		
+		public abstract boolean applay(double first, double next);
+		public abstract boolean applay(long first, long next);
+	}
+	
+	/**
+	 * Combines two booleans. The second operand is only evaluated if the first one doesn't decide the result already.
+	 */
+	public abstract static class BasicLogicalOperator implements Operator {
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
+		@Override
+		public Type getResultType(Type first, Type next) {
+			if(first != Type.BOOLEAN) throw new ExpressionException("Invalid type! ("+first+" isn't boolean!)");
+			if(next != Type.BOOLEAN) throw new ExpressionException("Invalid type! ("+next+" isn't boolean!)");
+			return Type.BOOLEAN;
+		}
+		
+		/**
+		 * @return the value of the first operand which decides the result alone
+		 */
+		public abstract boolean getShortCircuitValue();
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next) {
+			return ExpressionValue.of(first.asBoolean() == getShortCircuitValue() ? getShortCircuitValue() : next.asBoolean());
+		}
 	}
 	
+	private static abstract class CompareOperator extends BasicCompareOperator {
+		private final String operator;
+		private final int priority;
+		
+		public CompareOperator(String operator, int priority) {
+			this.operator = operator;
+			this.priority = priority;
+		}
+		
+		@Override
+		public String getOperator() {
+			return operator;
+		}
+		
+		@Override
+		public int getPriority() {
+			return priority;
+		}
+		
+		@Override
+		protected boolean isEquality() {
+			return priority == PRIORITY_EQUALITY;
+		}
+	}
+	
+	public static final Operator COMPARE_EQUALS = new CompareOperator("==", PRIORITY_EQUALITY) {
+		@Override
+		public boolean applay(double first, double next) {
+			return first == next;
+		}
+		
+		@Override
+		public boolean applay(long first, long next) {
+			return first == next;
+		}
+	};
+	
+	public static final Operator COMPARE_NOT_EQUALS = new CompareOperator("!=", PRIORITY_EQUALITY) {
+		@Override
+		public boolean applay(double first, double next) {
+			return first != next;
+		}
+		
+		@Override
+		public boolean applay(long first, long next) {
+			return first != next;
+		}
+	};
+	
+	public static final Operator COMPARE_LESS = new CompareOperator("<", PRIORITY_COMPARE) {
+		@Override
+		public boolean applay(double first, double next) {
+			return first < next;
+		}
+		
+		@Override
+		public boolean applay(long first, long next) {
+			return first < next;
+		}
+	};
+	
+	public static final Operator COMPARE_LESS_EQUALS = new CompareOperator("<=", PRIORITY_COMPARE) {
+		@Override
+		public boolean applay(double first, double next) {
+			return first <= next;
+		}
+		
+		@Override
+		public boolean applay(long first, long next) {
+			return first <= next;
+		}
+	};
+	
+	public static final Operator COMPARE_GREATER = new CompareOperator(">", PRIORITY_COMPARE) {
+		@Override
+		public boolean applay(double first, double next) {
+			return first > next;
+		}
+		
+		@Override
+		public boolean applay(long first, long next) {
+			return first > next;
+		}
+	};
+	
+	public static final Operator COMPARE_GREATER_EQUALS = new CompareOperator(">=", PRIORITY_COMPARE) {
+		@Override
+		public boolean applay(double first, double next) {
+			return first >= next;
+		}
+		
+		@Override
+		public boolean applay(long first, long next) {
+			return first >= next;
+		}
+	};
+	
+	public static final Operator LOGICAL_AND = new BasicLogicalOperator() {
+		@Override
+		public String getOperator() {
+			return "&&";
+		}
+		
+		@Override
+		public int getPriority() {
+			return PRIORITY_AND;
+		}
+		
+		@Override
+		public boolean getShortCircuitValue() {
+			return false;
+		}
+	};
+	
+	public static final Operator LOGICAL_OR = new BasicLogicalOperator() {
+		@Override
+		public String getOperator() {
+			return "||";
+		}
+		
+		@Override
+		public int getPriority() {
+			return PRIORITY_OR;
+		}
+		
+		@Override
+		public boolean getShortCircuitValue() {
+			return true;
+		}
+	};
+	
+	public static final UnaryOperator LOGICAL_NOT = new UnaryOperator() {
+		@Override
+		public String getOperator() {
+			return "!";
+		}
+		
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+		
+		@Override
+		public Type getResultType(Type value) {
+			if(value != Type.BOOLEAN) throw new ExpressionException("Invalid type! ("+value+" isn't boolean!)");
+			return Type.BOOLEAN;
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> value) {
+			return ExpressionValue.of(!value.asBoolean());
+		}
+	};
+	
+	public static final UnaryOperator MATH_NEGATE = new BasicNumberUnaryOperator() {
+		@Override
+		public String getOperator() {
+			return "-";
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			return (byte) -value;
+		}
+		
+		@Override
+		public short applay(short value) {
+			return (short) -value;
+		}
+		
+		@Override
+		public int applay(int value) {
+			return -value;
+		}
+		
+		@Override
+		public long applay(long value) {
+			return -value;
+		}
+		
+		@Override
+		public float applay(float value) {
+			return -value;
+		}
+		
+		@Override
+		public double applay(double value) {
+			return -value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value.negate();
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value.negate();
+		}
+	};
+	
+	public static final UnaryOperator MATH_POSITIVE = new BasicNumberUnaryOperator() {
+		@Override
+		public String getOperator() {
+			return "+";
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			return value;
+		}
+		
+		@Override
+		public short applay(short value) {
+			return value;
+		}
+		
+		@Override
+		public int applay(int value) {
+			return value;
+		}
+		
+		@Override
+		public long applay(long value) {
+			return value;
+		}
+		
+		@Override
+		public float applay(float value) {
+			return value;
+		}
+		
+		@Override
+		public double applay(double value) {
+			return value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value;
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value;
+		}
+	};
+	
 	public static final Operator MATH_PLUS = new BasicNumberOperator() {
 		@Override
 		public int getPriority() {
@@ -86,6 +677,11 @@ public class ExpressionEvaluatorOperators {
 			return "+";
 		}
 		
+		@Override
+		public boolean isAssociative() {
+			return true;
+		}
+		
 		@Override
 		public byte applay(byte first, byte next) {
 			return (byte) (first + next);
@@ -115,6 +711,16 @@ public class ExpressionEvaluatorOperators {
 		public double applay(double first, double next) {
 			return first + next;
 		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal first, BigDecimal next) {
+			return first.add(next);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger first, BigInteger next) {
+			return first.add(next);
+		}
 	};
 	
 	public static final Operator MATH_MUNUS = new BasicNumberOperator() {
@@ -157,6 +763,16 @@ public class ExpressionEvaluatorOperators {
 		public double applay(double first, double next) {
 			return first - next;
 		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal first, BigDecimal next) {
+			return first.subtract(next);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger first, BigInteger next) {
+			return first.subtract(next);
+		}
 	};
 	
 	public static final Operator MATH_MULTIPLY = new BasicNumberOperator() {
@@ -170,6 +786,11 @@ public class ExpressionEvaluatorOperators {
 			return "*";
 		}
 		
+		@Override
+		public boolean isAssociative() {
+			return true;
+		}
+		
 		@Override
 		public byte applay(byte first, byte next) {
 			return (byte) (first * next);
@@ -199,6 +820,16 @@ public class ExpressionEvaluatorOperators {
 		public double applay(double first, double next) {
 			return first * next;
 		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal first, BigDecimal next) {
+			return first.multiply(next);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger first, BigInteger next) {
+			return first.multiply(next);
+		}
 	};
 	
 	public static final Operator MATH_DIVIDIDE = new BasicNumberOperator() {
@@ -241,12 +872,140 @@ public class ExpressionEvaluatorOperators {
 		public double applay(double first, double next) {
 			return first / next;
 		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal first, BigDecimal next) {
+			return first.divide(next, MathContext.DECIMAL128);
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger first, BigInteger next) {
+			return first.divide(next);
+		}
+	};
+	
+	public static final Operator MATH_PLUS_EXACT = new ExactNumberOperator((BasicNumberOperator) MATH_PLUS) {
+		@Override
+		public long applay(long first, long next) {
+			return Math.addExact(first, next);
+		}
+	};
+	
+	public static final Operator MATH_MUNUS_EXACT = new ExactNumberOperator((BasicNumberOperator) MATH_MUNUS) {
+		@Override
+		public long applay(long first, long next) {
+			return Math.subtractExact(first, next);
+		}
+	};
+	
+	public static final Operator MATH_MULTIPLY_EXACT = new ExactNumberOperator((BasicNumberOperator) MATH_MULTIPLY) {
+		@Override
+		public long applay(long first, long next) {
+			return Math.multiplyExact(first, next);
+		}
+	};
+	
+	public static final Operator MATH_DIVIDIDE_EXACT = new ExactNumberOperator((BasicNumberOperator) MATH_DIVIDIDE) {
+		@Override
+		public long applay(long first, long next) {
+			if(first == Long.MIN_VALUE && next == -1) throw new ArithmeticException("long overflow");
+			return first / next;
+		}
 	};
 	
+	/**
+	 * Negation which detects overflows, like {@link ExactNumberOperator}.
+	 */
+	public static final UnaryOperator MATH_NEGATE_EXACT = new BasicNumberUnaryOperator() {
+		@Override
+		public String getOperator() {
+			return "-";
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> value) {
+			try {
+				return super.applay(value);
+			} catch (ArithmeticException e) {
+				return ExpressionValue.of(value.asBigInteger().negate());
+			}
+		}
+		
+		@Override
+		public byte applay(byte value) {
+			if(value == Byte.MIN_VALUE) throw new ArithmeticException("byte overflow");
+			return (byte) -value;
+		}
+		
+		@Override
+		public short applay(short value) {
+			if(value == Short.MIN_VALUE) throw new ArithmeticException("short overflow");
+			return (short) -value;
+		}
+		
+		@Override
+		public int applay(int value) {
+			return Math.negateExact(value);
+		}
+		
+		@Override
+		public long applay(long value) {
+			return Math.negateExact(value);
+		}
+		
+		@Override
+		public float applay(float value) {
+			return -value;
+		}
+		
+		@Override
+		public double applay(double value) {
+			return -value;
+		}
+		
+		@Override
+		public BigDecimal applay(BigDecimal value) {
+			return value.negate();
+		}
+		
+		@Override
+		public BigInteger applay(BigInteger value) {
+			return value.negate();
+		}
+	};
+	
+	/**
+	 * @return the exact variant of a built-in arithmetic operator, or the operator itself
+	 */
+	public static Operator exact(Operator op){
+		if(op == MATH_PLUS) return MATH_PLUS_EXACT;
+		if(op == MATH_MUNUS) return MATH_MUNUS_EXACT;
+		if(op == MATH_MULTIPLY) return MATH_MULTIPLY_EXACT;
+		if(op == MATH_DIVIDIDE) return MATH_DIVIDIDE_EXACT;
+		return op;
+	}
+	
+	public static UnaryOperator exact(UnaryOperator op){
+		return op == MATH_NEGATE ? MATH_NEGATE_EXACT : op;
+	}
+	
 	static {
 		registerOperator(MATH_PLUS);
 		registerOperator(MATH_MUNUS);
 		registerOperator(MATH_MULTIPLY);
 		registerOperator(MATH_DIVIDIDE);
+		
+		registerUnaryOperator(MATH_NEGATE);
+		registerUnaryOperator(MATH_POSITIVE);
+		
+		registerOperator(COMPARE_EQUALS);
+		registerOperator(COMPARE_NOT_EQUALS);
+		registerOperator(COMPARE_LESS);
+		registerOperator(COMPARE_LESS_EQUALS);
+		registerOperator(COMPARE_GREATER);
+		registerOperator(COMPARE_GREATER_EQUALS);
+		registerOperator(LOGICAL_AND);
+		registerOperator(LOGICAL_OR);
+		registerUnaryOperator(LOGICAL_NOT);
 	}
 }
@@ -0,0 +1,363 @@
+package dev.wolveringer.jee;
+
+import static dev.wolveringer.jee.InstructionExpression.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.wolveringer.jee.ExpressionEvaluator.CastExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.CompareOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ConditionalExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.EvalatedExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.FunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.LogicalOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NotExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberBiFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberTriFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberUnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.OperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.UnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.VariableExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicCompareOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicLogicalOperator;
+
+/**
+ * Translates an expression tree into the instructions of an {@link InstructionExpression}.
+ * Covers the same elements as {@link ExpressionBytecodeCompiler}, everything else is evaluated through the tree.
+ */
+class ExpressionInstructionCompiler {
+	private static final int KIND_DOUBLE = 0;
+	private static final int KIND_FLOAT = 1;
+	private static final int KIND_LONG = 2;
+	private static final int KIND_INT = 3;
+	
+	private final List<Long> constants = new ArrayList<>();
+	private final Map<Long, Integer> constantIndex = new HashMap<>();
+	private final List<Object> functions = new ArrayList<>();
+	private final List<ExpressionElement> fallbacks = new ArrayList<>();
+	private final Map<ExpressionElement, Integer> references = new IdentityHashMap<>();
+	private final Map<ExpressionElement, Integer> locals = new IdentityHashMap<>();
+	private int[] code = new int[32];
+	private int length;
+	private int stack;
+	private int maxStack;
+	private int nextLocal;
+	
+	public InstructionExpression compile(ExpressionElement root, int variables){
+		countReferences(root);
+		emit(root);
+		write(RETURN);
+		
+		long[] constants = new long[this.constants.size()];
+		for(int i = 0;i<constants.length;i++)
+			constants[i] = this.constants.get(i);
+		return new InstructionExpression(Arrays.copyOf(code, length), constants, functions.toArray(), fallbacks.toArray(new ExpressionElement[0]), maxStack, nextLocal, variables, root);
+	}
+	
+	private void countReferences(ExpressionElement element){
+		if(references.merge(element, 1, Integer::sum) > 1) return; //Children already counted
+		if(element instanceof OperatorExpressionElement){
+			countReferences(((OperatorExpressionElement) element).getFirst());
+			countReferences(((OperatorExpressionElement) element).getNext());
+		} else if(element instanceof UnaryOperatorExpressionElement){
+			countReferences(((UnaryOperatorExpressionElement) element).getValue());
+		} else if(element instanceof ConditionalExpressionElement){
+			countReferences(((ConditionalExpressionElement) element).getCondition());
+			countReferences(((ConditionalExpressionElement) element).getThen());
+			countReferences(((ConditionalExpressionElement) element).getOtherwise());
+		} else if(element instanceof FunctionExpressionElement){
+			for(ExpressionElement parm : ((FunctionExpressionElement) element).getParms())
+				countReferences(parm);
+		}
+	}
+	
+	private void write(int value){
+		if(length == code.length) code = Arrays.copyOf(code, length * 2);
+		code[length++] = value;
+	}
+	
+	private void write(int instruction, int operand){
+		write(instruction);
+		write(operand);
+	}
+	
+	/**
+	 * Tracks the stack depth, so the evaluation can allocate the stack once.
+	 */
+	private void stack(int change){
+		stack += change;
+		maxStack = Math.max(maxStack, stack);
+	}
+	
+	/**
+	 * Writes a jump and returns the position of its target, see {@link #bind(int)}.
+	 */
+	private int jump(int instruction){
+		write(instruction, -1);
+		if(instruction != JUMP) stack(-1);
+		return length - 1;
+	}
+	
+	private void bind(int jump){
+		code[jump] = length;
+	}
+	
+	private void emit(ExpressionElement element){
+		Integer local = locals.get(element);
+		if(local != null){
+			write(LOAD_LOCAL, local);
+			stack(1);
+			return;
+		}
+		
+		emitElement(element);
+		if(references.get(element) > 1 && !(element instanceof EvalatedExpressionElement) && !(element instanceof VariableExpressionElement)){
+			write(STORE_LOCAL, nextLocal);
+			locals.put(element, nextLocal++);
+		}
+	}
+	
+	private void emitElement(ExpressionElement element){
+		Type type = element.getType();
+		if(element instanceof CastExpressionElement){
+			ExpressionElement value = ((CastExpressionElement) element).getValue();
+			emit(value);
+			convert(value.getType(), type);
+			return;
+		} else if(element instanceof EvalatedExpressionElement){
+			EvalatedExpressionElement e = (EvalatedExpressionElement) element;
+			switch(type){
+			case DOUBLE:
+				emitConstant(Double.doubleToRawLongBits(e.getDoubleValue()));
+				return;
+			case FLOAT:
+				emitConstant(Double.doubleToRawLongBits((float) e.getDoubleValue()));
+				return;
+			case LONG:
+			case INT:
+			case SHORT:
+			case BYTE:
+			case BOOLEAN:
+				emitConstant(e.getLongValue());
+				return;
+			default:
+				break;
+			}
+		} else if(element instanceof VariableExpressionElement && !type.isBig()){ //Big variables are range checked by the fallback
+			int slot = ((VariableExpressionElement) element).getSlot();
+			switch(type){
+			case DOUBLE:
+				write(LOAD_D, slot);
+				break;
+			case FLOAT:
+				write(LOAD_F, slot);
+				break;
+			case LONG:
+				write(LOAD_L, slot);
+				break;
+			case INT:
+				write(LOAD_I, slot);
+				break;
+			case SHORT:
+				write(LOAD_S, slot);
+				break;
+			case BYTE:
+				write(LOAD_B, slot);
+				break;
+			case BOOLEAN:
+				write(LOAD_Z, slot);
+				break;
+			default:
+				throw new ExpressionException("Type "+type+" cant be compiled to instructions");
+			}
+			stack(1);
+			return;
+		} else if(element instanceof CompareOperatorExpressionElement){
+			CompareOperatorExpressionElement e = (CompareOperatorExpressionElement) element;
+			Type operandType = ((BasicCompareOperator) e.getOperator()).getOperandType(e.getFirst().getType(), e.getNext().getType());
+			Type compareType = ExpressionEvaluator.isDecimal(operandType) ? Type.DOUBLE : Type.LONG;
+			int instruction = compareInstruction(e.getOperator());
+			if(instruction >= 0){
+				emit(e.getFirst());
+				convert(e.getFirst().getType(), operandType);
+				convert(operandType, compareType);
+				emit(e.getNext());
+				convert(e.getNext().getType(), operandType);
+				convert(operandType, compareType);
+				write(compareType == Type.DOUBLE ? instruction : instruction + EQ_L - EQ_D);
+				stack(-1);
+				return;
+			}
+		} else if(element instanceof LogicalOperatorExpressionElement){
+			LogicalOperatorExpressionElement e = (LogicalOperatorExpressionElement) element;
+			boolean shortCircuit = ((BasicLogicalOperator) e.getOperator()).getShortCircuitValue();
+			emit(e.getFirst());
+			int decided = jump(shortCircuit ? JUMP_IF_NOT_ZERO : JUMP_IF_ZERO);
+			emitBranch(e.getNext());
+			int end = jump(JUMP);
+			stack(-1);
+			bind(decided);
+			emitConstant(shortCircuit ? 1 : 0);
+			bind(end);
+			return;
+		} else if(element instanceof NotExpressionElement){
+			emit(((NotExpressionElement) element).getValue());
+			write(NOT);
+			return;
+		} else if(element instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+			emit(e.getCondition());
+			int otherwise = jump(JUMP_IF_ZERO);
+			emitBranch(e.getThen());
+			convert(e.getThen().getType(), type);
+			int end = jump(JUMP);
+			stack(-1);
+			bind(otherwise);
+			emitBranch(e.getOtherwise());
+			convert(e.getOtherwise().getType(), type);
+			bind(end);
+			return;
+		} else if(element instanceof NumberOperatorExpressionElement){
+			NumberOperatorExpressionElement e = (NumberOperatorExpressionElement) element;
+			int instruction = arithmeticInstruction(e.getOperator());
+			if(instruction >= 0){
+				emit(e.getFirst());
+				convert(e.getFirst().getType(), type);
+				emit(e.getNext());
+				convert(e.getNext().getType(), type);
+				write(instruction + kind(type));
+				stack(-1);
+				narrow(type);
+				return;
+			}
+		} else if(element instanceof NumberUnaryOperatorExpressionElement){
+			NumberUnaryOperatorExpressionElement e = (NumberUnaryOperatorExpressionElement) element;
+			if(e.getOperator() == ExpressionEvaluatorOperators.MATH_POSITIVE || e.getOperator() == ExpressionEvaluatorOperators.MATH_NEGATE){
+				emit(e.getValue());
+				convert(e.getValue().getType(), type);
+				if(e.getOperator() == ExpressionEvaluatorOperators.MATH_NEGATE){
+					write(NEG_D + kind(type));
+					narrow(type);
+				}
+				return;
+			}
+		} else if(element instanceof NumberFunctionExpressionElement || element instanceof NumberBiFunctionExpressionElement || element instanceof NumberTriFunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			for(ExpressionElement parm : e.getParms()){
+				emit(parm);
+				convert(parm.getType(), type);
+			}
+			int instruction = element instanceof NumberFunctionExpressionElement ? CALL_1 : element instanceof NumberBiFunctionExpressionElement ? CALL_2 : CALL_3;
+			write(instruction, functions.size());
+			write(type.ordinal());
+			functions.add(e.getFunction());
+			stack(1 - e.getParms().length);
+			return;
+		}
+		
+		write(ExpressionEvaluator.isDecimal(type) ? FALLBACK_D : FALLBACK_L, fallbacks.size());
+		fallbacks.add(element);
+		stack(1);
+		convert(ExpressionEvaluator.isDecimal(type) ? Type.DOUBLE : Type.LONG, type);
+	}
+	
+	/**
+	 * Emits an element which is evaluated conditionally. Values it stores into locals aren't visible afterwards, because they may not have been computed.
+	 */
+	private void emitBranch(ExpressionElement element){
+		Map<ExpressionElement, Integer> known = new IdentityHashMap<>(locals);
+		emit(element);
+		locals.clear();
+		locals.putAll(known);
+	}
+	
+	private void emitConstant(long value){
+		Integer index = constantIndex.get(value);
+		if(index == null){
+			index = constants.size();
+			constants.add(value);
+			constantIndex.put(value, index);
+		}
+		write(CONST, index);
+		stack(1);
+	}
+	
+	private static int compareInstruction(Object operator){
+		if(operator == ExpressionEvaluatorOperators.COMPARE_EQUALS) return EQ_D;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_NOT_EQUALS) return NE_D;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_LESS) return LT_D;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_LESS_EQUALS) return LE_D;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_GREATER) return GT_D;
+		if(operator == ExpressionEvaluatorOperators.COMPARE_GREATER_EQUALS) return GE_D;
+		return -1;
+	}
+	
+	private static int arithmeticInstruction(Object operator){
+		if(operator == ExpressionEvaluatorOperators.MATH_PLUS) return ADD_D;
+		if(operator == ExpressionEvaluatorOperators.MATH_MUNUS) return SUB_D;
+		if(operator == ExpressionEvaluatorOperators.MATH_MULTIPLY) return MUL_D;
+		if(operator == ExpressionEvaluatorOperators.MATH_DIVIDIDE) return DIV_D;
+		return -1;
+	}
+	
+	/**
+	 * @return the offset of the typed variant of an instruction, the same as the JVM type used by the bytecode compiler
+	 */
+	private static int kind(Type type){
+		switch(type){
+		case DOUBLE:
+		case BIG_DECIMAL: //Evaluated by fallbacks, only passed on as primitive
+			return KIND_DOUBLE;
+		case FLOAT:
+			return KIND_FLOAT;
+		case LONG:
+		case BIG_INTEGER:
+			return KIND_LONG;
+		case INT:
+		case SHORT:
+		case BYTE:
+		case BOOLEAN:
+			return KIND_INT;
+		default:
+			throw new ExpressionException("Type "+type+" cant be compiled to instructions");
+		}
+	}
+	
+	private void narrow(Type type){
+		if(type == Type.SHORT) write(I2S);
+		else if(type == Type.BYTE) write(I2B);
+	}
+	
+	/**
+	 * Emits the same conversion as a java cast from one expression type to another.
+	 */
+	private void convert(Type from, Type to){
+		int source = kind(from);
+		int target = kind(to);
+		if(source != target){
+			switch(source){
+			case KIND_DOUBLE:
+				write(target == KIND_FLOAT ? D2F : target == KIND_LONG ? D2L : D2I);
+				break;
+			case KIND_FLOAT:
+				if(target != KIND_DOUBLE) write(target == KIND_LONG ? D2L : D2I); //Floats are already stored as double
+				break;
+			case KIND_LONG:
+				write(target == KIND_DOUBLE ? L2D : target == KIND_FLOAT ? L2F : L2I);
+				break;
+			default:
+				if(target != KIND_LONG) write(target == KIND_DOUBLE ? L2D : L2F); //Ints are already stored as long
+				break;
+			}
+		}
+		if(from != to) narrow(to);
+	}
+}
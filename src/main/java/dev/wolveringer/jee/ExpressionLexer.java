@@ -0,0 +1,221 @@
+package dev.wolveringer.jee;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Splits an expression into {@link Token}s within one linear pass.
+ * Tokens only reference their region in the source, no substrings are created while scanning.
+ */
+class ExpressionLexer {
+	public static enum TokenType {
+		NUMBER,
+		IDENTIFIER,
+		OPERATOR,
+		OPEN_BRACE,
+		CLOSE_BRACE,
+		COMMA,
+		END
+	}
+	
+	@AllArgsConstructor
+	@Getter
+	public static class Token {
+		private final TokenType type;
+		private final int start;
+		private final int end;
+		private final String symbol;
+		
+		public boolean is(TokenType type){
+			return this.type == type;
+		}
+		
+		public String text(CharSequence source){
+			return source.subSequence(start, end).toString();
+		}
+		
+		@Override
+		public String toString() {
+			return type + "[" + start + "," + end + "]";
+		}
+	}
+	
+	private final CharSequence source;
+	private final List<String> symbols;
+	private int index;
+	
+	public ExpressionLexer(CharSequence source) {
+		this(source, ExpressionEvaluatorOperators.getOperatorSymbols());
+	}
+	
+	public ExpressionLexer(CharSequence source, Collection<String> symbols) {
+		this.source = source;
+		this.symbols = new ArrayList<>(symbols);
+		this.symbols.add(ExpressionEvaluatorOperators.TERNARY_CONDITION);
+		this.symbols.add(ExpressionEvaluatorOperators.TERNARY_ELSE);
+		Collections.sort(this.symbols, (a, b) -> Integer.compare(b.length(), a.length())); //Longest match first
+	}
+	
+	public List<Token> tokenize(){
+		List<Token> tokens = new ArrayList<>();
+		Token token;
+		do {
+			tokens.add(token = next());
+		} while(!token.is(TokenType.END));
+		return tokens;
+	}
+	
+	public Token next(){
+		int length = source.length();
+		while(index < length && Character.isWhitespace(source.charAt(index))) index++;
+		if(index >= length) return new Token(TokenType.END, length, length, null);
+		
+		int start = index;
+		char c = source.charAt(index);
+		switch(c){
+		case '(':
+			index++;
+			return new Token(TokenType.OPEN_BRACE, start, index, null);
+		case ')':
+			index++;
+			return new Token(TokenType.CLOSE_BRACE, start, index, null);
+		case ',':
+			index++;
+			return new Token(TokenType.COMMA, start, index, null);
+		default:
+			break;
+		}
+		
+		if(isDigit(c) || (c == '.' && index + 1 < length && isDigit(source.charAt(index + 1)))){
+			while(index < length && (isDigit(source.charAt(index)) || source.charAt(index) == '.')) index++;
+			if(index < length && isNumberSuffix(source.charAt(index))) index++;
+			if(index < length && Character.isJavaIdentifierPart(source.charAt(index)))
+				throw new ExpressionException("Invalid number literal at index " + start);
+			return new Token(TokenType.NUMBER, start, index, null);
+		}
+		
+		if(Character.isJavaIdentifierStart(c)){
+			while(index < length && Character.isJavaIdentifierPart(source.charAt(index))) index++;
+			String symbol = findSymbol(start, index - start);
+			return new Token(symbol == null ? TokenType.IDENTIFIER : TokenType.OPERATOR, start, index, symbol);
+		}
+		
+		for(String symbol : symbols){
+			if(source.length() - start >= symbol.length() && regionMatches(start, symbol)){
+				index += symbol.length();
+				return new Token(TokenType.OPERATOR, start, index, symbol);
+			}
+		}
+		throw new ExpressionException("Unexpected character '" + c + "' at index " + start);
+	}
+	
+	private String findSymbol(int start, int length){
+		for(String symbol : symbols)
+			if(symbol.length() == length && regionMatches(start, symbol))
+				return symbol;
+		return null;
+	}
+	
+	private boolean regionMatches(int start, String symbol){
+		for(int i = 0;i<symbol.length();i++)
+			if(Character.toLowerCase(source.charAt(start + i)) != Character.toLowerCase(symbol.charAt(i)))
+				return false;
+		return true;
+	}
+	
+	private static boolean isDigit(char c){
+		return c >= '0' && c <= '9';
+	}
+	
+	private static boolean isNumberSuffix(char c){
+		switch(Character.toLowerCase(c)){
+		case 'f':
+		case 'd':
+		case 'l':
+		case 's':
+		case 'b':
+		case 'n':
+		case 'm':
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Converts a {@link TokenType#NUMBER} token into its value.
+	 * Integer literals are accumulated directly from the source characters.
+	 * The suffix 'n' marks a {@link Type#BIG_INTEGER} and 'm' a {@link Type#BIG_DECIMAL}, both are unlimited in range.
+	 */
+	public static ExpressionValue<?> parseNumber(CharSequence source, Token token){
+		int end = token.getEnd();
+		char suffix = Character.toLowerCase(source.charAt(end - 1));
+		if(!isDigit(suffix) && suffix != '.') end--;
+		else suffix = 0;
+		
+		boolean decimal = false;
+		for(int i = token.getStart(); i < end; i++)
+			if(source.charAt(i) == '.'){
+				if(decimal) throw new ExpressionException("Invalid number literal at index " + token.getStart());
+				decimal = true;
+			}
+		
+		try {
+			if(suffix == 'n' && !decimal) return ExpressionValue.of(new BigInteger(source.subSequence(token.getStart(), end).toString()));
+			if(decimal || suffix == 'f' || suffix == 'd' || suffix == 'm'){
+				String number = source.subSequence(token.getStart(), end).toString();
+				if(suffix == 'm') return ExpressionValue.of(new BigDecimal(number));
+				if(suffix == 'f') return new ExpressionValue<Float>(Type.FLOAT, Float.valueOf(number));
+				if(suffix == 0 || suffix == 'd') return new ExpressionValue<Double>(Type.DOUBLE, Double.valueOf(number));
+				throw new ExpressionException("Invalid number literal at index " + token.getStart());
+			}
+			
+			long value = 0;
+			for(int i = token.getStart(); i < end; i++)
+				value = Math.addExact(Math.multiplyExact(value, 10), source.charAt(i) - '0');
+			switch(suffix){
+			case 'l':
+				return new ExpressionValue<Long>(Type.LONG, value);
+			case 's':
+				if(value > Short.MAX_VALUE) break;
+				return new ExpressionValue<Short>(Type.SHORT, (short) value);
+			case 'b':
+				if(value > Byte.MAX_VALUE) break;
+				return new ExpressionValue<Byte>(Type.BYTE, (byte) value);
+			default:
+				if(value > Integer.MAX_VALUE) break;
+				return new ExpressionValue<Integer>(Type.INT, (int) value);
+			}
+		} catch (NumberFormatException | ArithmeticException e) { }
+		throw new ExpressionException("Number literal out of range at index " + token.getStart());
+	}
+	
+	/**
+	 * @return the minimum of the literal type if the token is its magnitude, like 2147483648 for {@link Integer#MIN_VALUE}, otherwise null.
+	 * Like in java, these literals are only valid as the operand of a unary minus.
+	 */
+	public static ExpressionValue<?> parseMinimum(CharSequence source, Token token){
+		switch(token.text(source).toLowerCase(Locale.ROOT)){
+		case "2147483648":
+			return new ExpressionValue<Integer>(Type.INT, Integer.MIN_VALUE);
+		case "9223372036854775808l":
+			return new ExpressionValue<Long>(Type.LONG, Long.MIN_VALUE);
+		case "32768s":
+			return new ExpressionValue<Short>(Type.SHORT, Short.MIN_VALUE);
+		case "128b":
+			return new ExpressionValue<Byte>(Type.BYTE, Byte.MIN_VALUE);
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,388 @@
+package dev.wolveringer.jee;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang3.Validate;
+
+import dev.wolveringer.jee.ExpressionCache.CacheStats;
+import dev.wolveringer.jee.ExpressionEvaluator.CastExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ConditionalExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.FunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.OperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.UnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Collects evaluation metrics of compiled expressions, see {@link ExpressionEvaluator#setMetrics(ExpressionMetrics)}.
+ * The metrics are bound when an expression gets compiled, like a tracer. Expressions compiled without metrics don't record anything.
+ * <p>
+ * Every evaluation through {@link CompiledExpression} records its latency into {@link LongAdder} counters, so concurrent evaluations don't contend.
+ * Function calls are counted by the function elements of these expressions, unless they are traced.
+ * The bytecode, instruction and batch forms compiled from an expression are not recorded.
+ * Expressions with the same text, variables and exact mode share their metrics.
+ * <p>
+ * Snapshots are either pulled with {@link #snapshot()}, pushed into a {@link MetricsSink} or read through JMX, see {@link #registerMBean(ObjectName)}.
+ */
+public class ExpressionMetrics implements ExpressionMetricsMXBean {
+	/**
+	 * Latencies are counted in buckets of powers of two nanoseconds.
+	 */
+	public static final int LATENCY_BUCKETS = 64;
+	
+	/**
+	 * Receives the snapshots of {@link #report(MetricsSink)}.
+	 */
+	public static interface MetricsSink {
+		public void report(Snapshot snapshot);
+	}
+	
+	@RequiredArgsConstructor
+	@Getter
+	@ToString(exclude = "latencies")
+	public static class ExpressionSnapshot {
+		private final String expression;
+		/**
+		 * The declared variables and their types, like <code>x:DOUBLE, y:INT</code>.
+		 */
+		private final String variables;
+		private final boolean exact;
+		private final long evaluations;
+		private final long totalNanos;
+		/**
+		 * Bytes allocated by the evaluating threads, 0 if not measured. See {@link ExpressionMetrics#setMeasureAllocations(boolean)}.
+		 */
+		private final long allocatedBytes;
+		/**
+		 * Evaluations per latency bucket, bucket i holds the evaluations taking less than 2^(i + 1) nanoseconds.
+		 */
+		private final long[] latencies;
+		/**
+		 * Calls of every function in the expression. Functions in branches not taken and in skipped operands of <code>&amp;&amp;</code> and <code>||</code> aren't called.
+		 */
+		private final Map<String, Long> functionCalls;
+		
+		public double getMeanNanos(){
+			return evaluations == 0 ? 0 : (double) totalNanos / evaluations;
+		}
+		
+		public long getMedianNanos(){
+			return getLatencyPercentile(0.5);
+		}
+		
+		public long getP99Nanos(){
+			return getLatencyPercentile(0.99);
+		}
+		
+		/**
+		 * @param percentile between 0 and 1
+		 * @return the latency of the percentile, rounded up to the next power of two nanoseconds
+		 */
+		public long getLatencyPercentile(double percentile){
+			Validate.inclusiveBetween(0D, 1D, percentile);
+			long count = 0;
+			for(long latency : latencies)
+				count += latency;
+			if(count == 0) return 0;
+			long rank = Math.max(1, (long) Math.ceil(percentile * count));
+			for(int bucket = 0;bucket<latencies.length;bucket++){
+				rank -= latencies[bucket];
+				if(rank <= 0) return bucket >= 62 ? Long.MAX_VALUE : 1L << (bucket + 1);
+			}
+			return Long.MAX_VALUE;
+		}
+	}
+	
+	@RequiredArgsConstructor
+	@Getter
+	@ToString
+	public static class Snapshot {
+		private final List<ExpressionSnapshot> expressions;
+		private final Map<String, CacheStats> caches;
+	}
+	
+	@RequiredArgsConstructor
+	@EqualsAndHashCode
+	private static class StatsKey {
+		private final String expression;
+		private final ExpressionVariables variables;
+		private final boolean exact;
+	}
+	
+	/**
+	 * Counters of one expression. Recording is done by the root of the {@link CompiledExpression}, see {@link #record(ExpressionElement)}.
+	 */
+	static final class ExpressionStats {
+		private final StatsKey key;
+		private final ExpressionMetrics metrics;
+		private final Map<String, LongAdder> functions = new ConcurrentHashMap<>();
+		private final LongAdder evaluations = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder allocated = new LongAdder();
+		private final LongAdder[] latencies = new LongAdder[LATENCY_BUCKETS];
+		
+		private ExpressionStats(StatsKey key, ExpressionMetrics metrics) {
+			this.key = key;
+			this.metrics = metrics;
+			for(int i = 0;i<latencies.length;i++)
+				latencies[i] = new LongAdder();
+		}
+		
+		/**
+		 * @return the allocated bytes of the current thread, or 0 if allocations aren't measured
+		 */
+		long allocatedBytes(){
+			return metrics.measureAllocations ? threadAllocatedBytes() : 0;
+		}
+		
+		/**
+		 * @return the tree with every function element replaced by one counting its calls, shared elements stay shared
+		 */
+		ExpressionElement count(ExpressionElement root){
+			return count(root, new IdentityHashMap<>());
+		}
+		
+		private ExpressionElement count(ExpressionElement element, Map<ExpressionElement, ExpressionElement> counted){
+			ExpressionElement result = counted.get(element);
+			if(result == null){
+				result = countElement(element, counted);
+				counted.put(element, result);
+			}
+			return result;
+		}
+		
+		private ExpressionElement countElement(ExpressionElement element, Map<ExpressionElement, ExpressionElement> counted){
+			if(element instanceof OperatorExpressionElement){
+				OperatorExpressionElement e = (OperatorExpressionElement) element;
+				ExpressionElement first = count(e.getFirst(), counted);
+				ExpressionElement next = count(e.getNext(), counted);
+				if(first == e.getFirst() && next == e.getNext()) return element;
+				return ExpressionEvaluator.createOperator(null, e.getOperator(), first, next);
+			} else if(element instanceof UnaryOperatorExpressionElement){
+				UnaryOperatorExpressionElement e = (UnaryOperatorExpressionElement) element;
+				ExpressionElement value = count(e.getValue(), counted);
+				if(value == e.getValue()) return element;
+				if(element instanceof CastExpressionElement) return new CastExpressionElement(value, element.getType());
+				return ExpressionEvaluator.createUnaryOperator(null, e.getOperator(), value);
+			} else if(element instanceof ConditionalExpressionElement){
+				ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+				ExpressionElement condition = count(e.getCondition(), counted);
+				ExpressionElement then = count(e.getThen(), counted);
+				ExpressionElement otherwise = count(e.getOtherwise(), counted);
+				if(condition == e.getCondition() && then == e.getThen() && otherwise == e.getOtherwise()) return element;
+				return ExpressionEvaluator.createConditional(condition, then, otherwise);
+			} else if(element instanceof FunctionExpressionElement){
+				FunctionExpressionElement e = (FunctionExpressionElement) element;
+				ExpressionElement[] parms = new ExpressionElement[e.getParms().length];
+				for(int i = 0;i<parms.length;i++)
+					parms[i] = count(e.getParms()[i], counted);
+				LongAdder calls = functions.computeIfAbsent(e.getName(), name -> new LongAdder());
+				return ExpressionEvaluator.createCountedFunction(e, parms, calls);
+			}
+			return element;
+		}
+		
+		/**
+		 * @return the root wrapped into an element recording every evaluation
+		 */
+		ExpressionElement record(ExpressionElement root){
+			return new RecordedExpressionElement(this, root);
+		}
+		
+		private void record(long start, long allocatedBytes){
+			long duration = Math.max(0, System.nanoTime() - start);
+			evaluations.increment();
+			nanos.add(duration);
+			latencies[duration == 0 ? 0 : 63 - Long.numberOfLeadingZeros(duration)].increment();
+			if(metrics.measureAllocations) allocated.add(Math.max(0, threadAllocatedBytes() - allocatedBytes));
+		}
+		
+		private ExpressionSnapshot snapshot(){
+			long[] latencies = new long[LATENCY_BUCKETS];
+			for(int i = 0;i<latencies.length;i++)
+				latencies[i] = this.latencies[i].sum();
+			Map<String, Long> calls = new TreeMap<>();
+			for(Map.Entry<String, LongAdder> function : functions.entrySet())
+				calls.put(function.getKey(), function.getValue().sum());
+			StringJoiner variables = new StringJoiner(", ");
+			for(int slot = 0;slot<key.variables.size();slot++)
+				variables.add(key.variables.getName(slot) + ":" + key.variables.getType(slot));
+			return new ExpressionSnapshot(key.expression, variables.toString(), key.exact, evaluations.sum(), nanos.sum(), allocated.sum(), latencies, calls);
+		}
+		
+		private void reset(){
+			evaluations.reset();
+			nanos.reset();
+			allocated.reset();
+			for(LongAdder latency : latencies)
+				latency.reset();
+			for(LongAdder calls : functions.values())
+				calls.reset();
+		}
+	}
+	
+	/**
+	 * Wraps the root of a {@link CompiledExpression}, so the expression doesn't check for metrics on every evaluation.
+	 */
+	@RequiredArgsConstructor
+	private static final class RecordedExpressionElement implements ExpressionElement {
+		private final ExpressionStats stats;
+		private final ExpressionElement root;
+		
+		@Override
+		public Type getType() {
+			return root.getType();
+		}
+		
+		@Override
+		public ExpressionValue<?> parse(ExpressionValue<?>[] bindings) {
+			long start = System.nanoTime(), allocated = stats.allocatedBytes();
+			try {
+				return root.parse(bindings);
+			} finally {
+				stats.record(start, allocated);
+			}
+		}
+		
+		@Override
+		public double parseDouble(double[] bindings) {
+			long start = System.nanoTime(), allocated = stats.allocatedBytes();
+			try {
+				return root.parseDouble(bindings);
+			} finally {
+				stats.record(start, allocated);
+			}
+		}
+		
+		@Override
+		public long parseLong(double[] bindings) {
+			long start = System.nanoTime(), allocated = stats.allocatedBytes();
+			try {
+				return root.parseLong(bindings);
+			} finally {
+				stats.record(start, allocated);
+			}
+		}
+	}
+	
+	private final Map<StatsKey, ExpressionStats> expressions = new ConcurrentHashMap<>();
+	private final Map<String, ExpressionCache> caches = new ConcurrentHashMap<>();
+	/**
+	 * Measure the bytes allocated by every evaluation. Requires a JVM supporting thread allocation measurement, every evaluation gets noticeably slower.
+	 */
+	@Getter
+	@Setter
+	private volatile boolean measureAllocations = false;
+	
+	/**
+	 * Includes the hit rate of a cache into the snapshots.
+	 */
+	public ExpressionMetrics addCache(String name, ExpressionCache cache){
+		Validate.notEmpty(name, "name");
+		Validate.notNull(cache, "cache");
+		caches.put(name, cache);
+		return this;
+	}
+	
+	public void removeCache(String name){
+		caches.remove(name);
+	}
+	
+	/**
+	 * @return the counters of the expression, shared by every expression with the same text, variables and exact mode
+	 */
+	ExpressionStats stats(String expression, ExpressionVariables variables, boolean exact){
+		return expressions.computeIfAbsent(new StatsKey(ExpressionCache.normalize(expression), new ExpressionVariables(variables), exact), key -> new ExpressionStats(key, this));
+	}
+	
+	private static long threadAllocatedBytes(){
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)) return 0;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/**
+	 * @return the metrics of every expression, the expressions with the highest total latency first
+	 */
+	public Snapshot snapshot(){
+		List<ExpressionSnapshot> expressions = new ArrayList<>();
+		for(ExpressionStats stats : this.expressions.values())
+			expressions.add(stats.snapshot());
+		expressions.sort((a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+		return new Snapshot(Collections.unmodifiableList(expressions), getCaches());
+	}
+	
+	public void report(MetricsSink sink){
+		Validate.notNull(sink, "sink");
+		sink.report(snapshot());
+	}
+	
+	/**
+	 * Registers these metrics at the platform MBean server.
+	 */
+	public void registerMBean(ObjectName name){
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		} catch (JMException e) {
+			throw new ExpressionException("Failed to register the metrics as "+name+": "+e.getMessage());
+		}
+	}
+	
+	@Override
+	public long getEvaluations(){
+		long evaluations = 0;
+		for(ExpressionStats stats : expressions.values())
+			evaluations += stats.evaluations.sum();
+		return evaluations;
+	}
+	
+	@Override
+	public long getTotalNanos(){
+		long nanos = 0;
+		for(ExpressionStats stats : expressions.values())
+			nanos += stats.nanos.sum();
+		return nanos;
+	}
+	
+	@Override
+	public List<ExpressionSnapshot> getExpressions(){
+		return snapshot().getExpressions();
+	}
+	
+	@Override
+	public Map<String, CacheStats> getCaches(){
+		Map<String, CacheStats> stats = new LinkedHashMap<>();
+		for(Map.Entry<String, ExpressionCache> cache : caches.entrySet())
+			stats.put(cache.getKey(), cache.getValue().getStats());
+		return Collections.unmodifiableMap(stats);
+	}
+	
+	/**
+	 * Resets the counters of every expression. Expressions compiled before keep recording.
+	 */
+	@Override
+	public void reset(){
+		for(ExpressionStats stats : expressions.values())
+			stats.reset();
+	}
+}
@@ -0,0 +1,22 @@
+package dev.wolveringer.jee;
+
+import java.util.List;
+import java.util.Map;
+
+import dev.wolveringer.jee.ExpressionCache.CacheStats;
+import dev.wolveringer.jee.ExpressionMetrics.ExpressionSnapshot;
+
+/**
+ * Attributes of the {@link ExpressionMetrics} exposed through JMX.
+ */
+public interface ExpressionMetricsMXBean {
+	public long getEvaluations();
+	
+	public long getTotalNanos();
+	
+	public List<ExpressionSnapshot> getExpressions();
+	
+	public Map<String, CacheStats> getCaches();
+	
+	public void reset();
+}
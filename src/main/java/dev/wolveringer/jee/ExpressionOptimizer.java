@@ -0,0 +1,231 @@
+package dev.wolveringer.jee;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import dev.wolveringer.jee.ExpressionEvaluator.ConditionalExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.EvalatedExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.FunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.OperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.UnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.VariableExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.BasicLogicalOperator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.ExactNumberOperator;
+import lombok.AllArgsConstructor;
+
+/**
+ * Simplifies an expression tree after parsing:
+ * <ul>
+ * <li>pure operators and functions with constant operands are replaced by their value</li>
+ * <li>conditionals and logical operators with a constant condition are replaced by the selected operand</li>
+ * <li>identities like x*1, x+0, x-0, x/1 and (for integer variables) x*0 are removed</li>
+ * <li>equal pure subtrees are merged into one shared element</li>
+ * </ul>
+ * The result type of every element stays the same.
+ * <p>
+ * Merging only shares the nodes. The bytecode, instruction and batch backends evaluate a shared element once per evaluation,
+ * the evaluation of the tree itself still evaluates it at every use.
+ */
+class ExpressionOptimizer {
+	private static final double[] NO_BINDINGS = new double[0];
+	
+	@AllArgsConstructor
+	private static class ElementKey {
+		private final Class<?> kind;
+		private final Object operator;
+		private final Object value;
+		private final ExpressionElement[] children;
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof ElementKey)) return false;
+			ElementKey other = (ElementKey) obj;
+			if(kind != other.kind || operator != other.operator || !Objects.equals(value, other.value) || children.length != other.children.length) return false;
+			for(int i = 0;i<children.length;i++)
+				if(children[i] != other.children[i]) return false; //Children are already merged
+			return true;
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = kind.hashCode() * 31 + System.identityHashCode(operator);
+			hash = hash * 31 + Objects.hashCode(value);
+			for(ExpressionElement child : children)
+				hash = hash * 31 + System.identityHashCode(child);
+			return hash;
+		}
+	}
+	
+	private final Map<ElementKey, ExpressionElement> elements = new HashMap<>();
+	private final Map<ExpressionElement, Boolean> pure = new IdentityHashMap<>();
+	
+	public ExpressionElement optimize(ExpressionElement element){
+		if(element instanceof OperatorExpressionElement){
+			OperatorExpressionElement e = (OperatorExpressionElement) element;
+			ExpressionElement first = optimize(e.getFirst());
+			ExpressionElement next = optimize(e.getNext());
+			if(first != e.getFirst() || next != e.getNext())
+				element = ExpressionEvaluator.createOperator(null, e.getOperator(), first, next);
+			if(e.getOperator() instanceof BasicLogicalOperator && isConstant(first)){
+				boolean shortCircuit = ((BasicLogicalOperator) e.getOperator()).getShortCircuitValue();
+				element = (((EvalatedExpressionElement) first).getLongValue() != 0) == shortCircuit ? first : next;
+			} else if(e.getOperator().isPure() && isConstant(first) && isConstant(next))
+				element = fold(element);
+			else
+				element = simplify((OperatorExpressionElement) element);
+		} else if(element instanceof UnaryOperatorExpressionElement){
+			UnaryOperatorExpressionElement e = (UnaryOperatorExpressionElement) element;
+			ExpressionElement value = optimize(e.getValue());
+			if(value != e.getValue())
+				element = ExpressionEvaluator.createUnaryOperator(null, e.getOperator(), value);
+			if(e.getOperator().isPure() && isConstant(value))
+				element = fold(element);
+		} else if(element instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+			ExpressionElement condition = optimize(e.getCondition());
+			ExpressionElement then = optimize(e.getThen());
+			ExpressionElement otherwise = optimize(e.getOtherwise());
+			if(condition != e.getCondition() || then != e.getThen() || otherwise != e.getOtherwise())
+				element = ExpressionEvaluator.createConditional(condition, then, otherwise);
+			if(isConstant(condition)){
+				ExpressionElement branch = ((EvalatedExpressionElement) condition).getLongValue() != 0 ? then : otherwise;
+				if(branch.getType() == element.getType()) element = branch;
+			}
+		} else if(element instanceof FunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			ExpressionElement[] parms = e.getParms().clone();
+			boolean changed = false, constant = true;
+			for(int i = 0;i<parms.length;i++){
+				parms[i] = optimize(parms[i]);
+				changed |= parms[i] != e.getParms()[i];
+				constant &= isConstant(parms[i]);
+			}
+			if(changed)
+				element = ExpressionEvaluator.createFunction(null, e.getFunction(), parms);
+			if(e.getFunction().isPure() && constant)
+				element = fold(element);
+		}
+		return merge(element);
+	}
+	
+	private static boolean isConstant(ExpressionElement element){
+		return element instanceof EvalatedExpressionElement;
+	}
+	
+	private static boolean isConstant(ExpressionElement element, double value){
+		return isConstant(element) && element.getType().isNumeric() && Double.compare(((EvalatedExpressionElement) element).getDoubleValue(), value) == 0; //-0.0 is no identity
+	}
+	
+	private ExpressionElement fold(ExpressionElement element){
+		try {
+			return new EvalatedExpressionElement(ExpressionEvaluator.parseBoxed(element, NO_BINDINGS));
+		} catch (ExpressionException | ArithmeticException e) {
+			return element; //Keep the element, so the error is raised when evaluating
+		}
+	}
+	
+	private ExpressionElement simplify(OperatorExpressionElement element){
+		Type type = element.getType();
+		ExpressionElement first = element.getFirst();
+		ExpressionElement next = element.getNext();
+		boolean decimal = ExpressionEvaluator.isDecimal(type);
+		
+		Object op = element.getOperator();
+		if(op instanceof ExactNumberOperator) op = ((ExactNumberOperator) op).getWrapping(); //Identities don't overflow
+		if(op == ExpressionEvaluatorOperators.MATH_PLUS){
+			if(!decimal && isConstant(next, 0) && first.getType() == type) return first;
+			if(!decimal && isConstant(first, 0) && next.getType() == type) return next;
+		} else if(op == ExpressionEvaluatorOperators.MATH_MUNUS){
+			if(isConstant(next, 0) && first.getType() == type) return first; //x - 0.0 keeps the sign of -0.0
+		} else if(op == ExpressionEvaluatorOperators.MATH_MULTIPLY){
+			if(isConstant(next, 1) && first.getType() == type) return first;
+			if(isConstant(first, 1) && next.getType() == type) return next;
+			if(!decimal && ((isConstant(next, 0) && first instanceof VariableExpressionElement) || (isConstant(first, 0) && next instanceof VariableExpressionElement)))
+				return constant(type, 0);
+		} else if(op == ExpressionEvaluatorOperators.MATH_DIVIDIDE){
+			if(isConstant(next, 1) && first.getType() == type) return first;
+		}
+		return element;
+	}
+	
+	private static ExpressionElement constant(Type type, long value){
+		switch(type){
+		case LONG:
+			return new EvalatedExpressionElement(ExpressionValue.of(value));
+		case INT:
+			return new EvalatedExpressionElement(ExpressionValue.of((int) value));
+		case SHORT:
+			return new EvalatedExpressionElement(new ExpressionValue<Short>(Type.SHORT, (short) value));
+		case BYTE:
+			return new EvalatedExpressionElement(new ExpressionValue<Byte>(Type.BYTE, (byte) value));
+		case BIG_INTEGER:
+			return new EvalatedExpressionElement(ExpressionValue.of(BigInteger.valueOf(value)));
+		default:
+			throw new ExpressionException("Invalid integer type "+type);
+		}
+	}
+	
+	private boolean isPure(ExpressionElement element){
+		Boolean result = pure.get(element);
+		if(result != null) return result;
+		
+		if(element instanceof OperatorExpressionElement){
+			OperatorExpressionElement e = (OperatorExpressionElement) element;
+			result = e.getOperator().isPure() && isPure(e.getFirst()) && isPure(e.getNext());
+		} else if(element instanceof UnaryOperatorExpressionElement){
+			UnaryOperatorExpressionElement e = (UnaryOperatorExpressionElement) element;
+			result = e.getOperator().isPure() && isPure(e.getValue());
+		} else if(element instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+			result = isPure(e.getCondition()) && isPure(e.getThen()) && isPure(e.getOtherwise());
+		} else if(element instanceof FunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			result = e.getFunction().isPure();
+			for(ExpressionElement parm : e.getParms())
+				result &= isPure(parm);
+		} else {
+			result = element instanceof EvalatedExpressionElement || element instanceof VariableExpressionElement;
+		}
+		pure.put(element, result);
+		return result;
+	}
+	
+	/**
+	 * @return an already known element equal to this one, or the element itself
+	 */
+	private ExpressionElement merge(ExpressionElement element){
+		if(!isPure(element)) return element;
+		ElementKey key = key(element);
+		if(key == null) return element;
+		ExpressionElement known = elements.putIfAbsent(key, element);
+		return known == null ? element : known;
+	}
+	
+	private static ElementKey key(ExpressionElement element){
+		if(element instanceof EvalatedExpressionElement){
+			ExpressionValue<?> value = ((EvalatedExpressionElement) element).getValue();
+			return new ElementKey(element.getClass(), value.getType(), value.getValue(), new ExpressionElement[0]);
+		} else if(element instanceof VariableExpressionElement){
+			return new ElementKey(element.getClass(), null, ((VariableExpressionElement) element).getSlot(), new ExpressionElement[0]);
+		} else if(element instanceof OperatorExpressionElement){
+			OperatorExpressionElement e = (OperatorExpressionElement) element;
+			return new ElementKey(element.getClass(), e.getOperator(), null, new ExpressionElement[]{ e.getFirst(), e.getNext() });
+		} else if(element instanceof UnaryOperatorExpressionElement){
+			UnaryOperatorExpressionElement e = (UnaryOperatorExpressionElement) element;
+			return new ElementKey(element.getClass(), e.getOperator(), null, new ExpressionElement[]{ e.getValue() });
+		} else if(element instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+			return new ElementKey(element.getClass(), null, null, new ExpressionElement[]{ e.getCondition(), e.getThen(), e.getOtherwise() });
+		} else if(element instanceof FunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			return new ElementKey(element.getClass(), e.getFunction(), null, e.getParms());
+		}
+		return null;
+	}
+}
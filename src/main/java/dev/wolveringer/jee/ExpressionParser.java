@@ -0,0 +1,235 @@
+package dev.wolveringer.jee;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import dev.wolveringer.jee.ExpressionEvaluator.EvalatedExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.VariableExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.ExpressionFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.Operator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.UnaryOperator;
+import dev.wolveringer.jee.ExpressionLexer.Token;
+import dev.wolveringer.jee.ExpressionLexer.TokenType;
+
+/**
+ * Precedence climbing parser which builds the expression tree from the lexer tokens.
+ * Binary operators bind by {@link Operator#getPriority()} and are left associative.
+ * Chains of an {@link Operator#isAssociative() associative} operator with operands of one type are built as a balanced tree.
+ * The conditional <code>a ? b : c</code> binds weakest and is right associative.
+ */
+class ExpressionParser {
+	private static final int MAX_DEPTH = 255;
+	/**
+	 * Maximal height of the built tree. The tree is walked recursively by the optimizer and the evaluation,
+	 * long chains of operators which can't be balanced build deep trees too.
+	 */
+	static final int MAX_HEIGHT = 1024;
+	
+	private final ExpressionEvaluator evaluator;
+	private final ExpressionTracer tracer;
+	private final boolean exact;
+	private final CharSequence source;
+	private final List<Token> tokens;
+	private final ExpressionVariables variables;
+	private int index;
+	private int depth;
+	private int height; //Height of the element parsed last
+	
+	public ExpressionParser(ExpressionEvaluator evaluator, ExpressionTracer tracer, boolean exact, CharSequence source, List<Token> tokens, ExpressionVariables variables) {
+		this.evaluator = evaluator;
+		this.tracer = tracer;
+		this.exact = exact;
+		this.source = source;
+		this.tokens = tokens;
+		this.variables = variables;
+	}
+	
+	public ExpressionElement parse(){
+		ExpressionElement root = parseExpression(Integer.MIN_VALUE);
+		Token token = peek();
+		if(!token.is(TokenType.END)){
+			if(token.is(TokenType.CLOSE_BRACE)) throw new ExpressionException("Unexpected closing brace at index "+token.getStart());
+			throw new ExpressionException("Unexpected '"+token.text(source)+"' at index "+token.getStart());
+		}
+		return root;
+	}
+	
+	private Token peek(){
+		return tokens.get(index);
+	}
+	
+	private Token next(){
+		Token token = tokens.get(index);
+		if(!token.is(TokenType.END)) index++;
+		return token;
+	}
+	
+	private Token expect(TokenType type, String message){
+		Token token = next();
+		if(!token.is(type)) throw new ExpressionException(message+" at index "+token.getStart());
+		return token;
+	}
+	
+	private ExpressionElement parseExpression(int minPriority){
+		if(++depth > MAX_DEPTH) throw new ExpressionException("Expression is nested too deep");
+		ExpressionElement first = parsePrefix();
+		int firstHeight = height;
+		while(true){
+			Token token = peek();
+			if(!token.is(TokenType.OPERATOR)) break;
+			if(ExpressionEvaluatorOperators.TERNARY_ELSE.equals(token.getSymbol())) break; //Closes the enclosing conditional
+			if(ExpressionEvaluatorOperators.TERNARY_CONDITION.equals(token.getSymbol())){
+				if(ExpressionEvaluatorOperators.PRIORITY_TERNARY < minPriority) break;
+				next();
+				ExpressionElement then = parseExpression(Integer.MIN_VALUE);
+				int thenHeight = height;
+				Token separator = next();
+				if(!separator.is(TokenType.OPERATOR) || !ExpressionEvaluatorOperators.TERNARY_ELSE.equals(separator.getSymbol()))
+					throw new ExpressionException("Missing '"+ExpressionEvaluatorOperators.TERNARY_ELSE+"' of conditional at index "+separator.getStart());
+				ExpressionElement otherwise = parseExpression(ExpressionEvaluatorOperators.PRIORITY_TERNARY); //Right associative
+				first = ExpressionEvaluator.createConditional(first, then, otherwise);
+				firstHeight = checkHeight(Math.max(firstHeight, Math.max(thenHeight, height)) + 1);
+				continue;
+			}
+			
+			Optional<Operator> op = evaluator.resolveOperator(token.getSymbol(), exact);
+			if(!op.isPresent()) throw new ExpressionException("Cant find operator '"+token.getSymbol()+"' at index "+token.getStart());
+			if(op.get().getPriority() < minPriority) break;
+			
+			next();
+			ExpressionElement next = parseExpression(op.get().getPriority() + 1);
+			if(op.get().isAssociative()){
+				first = parseChain(op.get(), first, firstHeight, next);
+				firstHeight = height;
+				continue;
+			}
+			first = ExpressionEvaluator.createOperator(tracer, op.get(), first, next);
+			firstHeight = checkHeight(Math.max(firstHeight, height) + 1);
+		}
+		depth--;
+		height = firstHeight;
+		return first;
+	}
+	
+	/**
+	 * Parses the remaining operands of a chain like <code>a + b + c</code>. The chain is balanced if all operands have the same type,
+	 * mixed types are promoted from left to right like any other operator.
+	 */
+	private ExpressionElement parseChain(Operator op, ExpressionElement first, int firstHeight, ExpressionElement next){
+		List<ExpressionElement> operands = new ArrayList<>();
+		List<Integer> heights = new ArrayList<>();
+		operands.add(first);
+		heights.add(firstHeight);
+		operands.add(next);
+		heights.add(height);
+		boolean balanced = first.getType() == next.getType();
+		while(peek().is(TokenType.OPERATOR) && op.getOperator().equals(peek().getSymbol())){
+			next();
+			ExpressionElement operand = parseExpression(op.getPriority() + 1);
+			balanced &= operand.getType() == first.getType();
+			operands.add(operand);
+			heights.add(height);
+		}
+		if(balanced && op.getResultType(first.getType(), first.getType()) == first.getType()) return balance(op, operands, heights, 0, operands.size());
+		ExpressionElement element = first;
+		for(int i = 1;i<operands.size();i++){
+			element = ExpressionEvaluator.createOperator(tracer, op, element, operands.get(i));
+			firstHeight = checkHeight(Math.max(firstHeight, heights.get(i)) + 1);
+		}
+		height = firstHeight;
+		return element;
+	}
+	
+	private ExpressionElement balance(Operator op, List<ExpressionElement> operands, List<Integer> heights, int from, int to){
+		if(to - from == 1){
+			height = heights.get(from);
+			return operands.get(from);
+		}
+		int middle = (from + to) >>> 1;
+		ExpressionElement first = balance(op, operands, heights, from, middle);
+		int firstHeight = height;
+		ExpressionElement next = balance(op, operands, heights, middle, to);
+		height = checkHeight(Math.max(firstHeight, height) + 1);
+		return ExpressionEvaluator.createOperator(tracer, op, first, next);
+	}
+	
+	private int checkHeight(int height){
+		if(height > MAX_HEIGHT) throw new ExpressionException("Expression is nested too deep (more than "+MAX_HEIGHT+" levels)");
+		return height;
+	}
+	
+	private ExpressionElement parsePrefix(){
+		Token token = next();
+		height = 1;
+		switch(token.getType()){
+		case NUMBER:
+			return new EvalatedExpressionElement(ExpressionLexer.parseNumber(source, token));
+		case OPEN_BRACE:
+			ExpressionElement element = parseExpression(Integer.MIN_VALUE);
+			expect(TokenType.CLOSE_BRACE, "Missing closing brace");
+			return element;
+		case IDENTIFIER:
+			String name = token.text(source);
+			if(peek().is(TokenType.OPEN_BRACE)){
+				next();
+				return parseFunction(name);
+			}
+			int slot = variables.getSlot(name);
+			if(slot < 0){
+				if(name.equalsIgnoreCase("true") || name.equalsIgnoreCase("false")) return new EvalatedExpressionElement(ExpressionValue.of(name.equalsIgnoreCase("true")));
+				throw new ExpressionException("Cant find variable: "+name);
+			}
+			return new VariableExpressionElement(variables.getName(slot), slot, variables.getType(slot));
+		case OPERATOR:
+			Optional<UnaryOperator> op = evaluator.resolveUnaryOperator(token.getSymbol(), exact);
+			if(!op.isPresent()) throw new ExpressionException("First element is null! (Operator '"+token.getSymbol()+"' at index "+token.getStart()+")");
+			if(isNegation(op.get()) && peek().is(TokenType.NUMBER)){
+				ExpressionValue<?> minimum = ExpressionLexer.parseMinimum(source, peek()); //The literal alone is out of range
+				if(minimum != null){
+					next();
+					return new EvalatedExpressionElement(minimum);
+				}
+			}
+			ExpressionElement value = parseExpression(ExpressionEvaluatorOperators.PRIORITY_UNARY);
+			height = checkHeight(height + 1);
+			return ExpressionEvaluator.createUnaryOperator(tracer, op.get(), value);
+		case END:
+			throw new ExpressionException("Unexpected end of expression");
+		default:
+			throw new ExpressionException("Unexpected '"+token.text(source)+"' at index "+token.getStart());
+		}
+	}
+	
+	private static boolean isNegation(UnaryOperator op){
+		return op == ExpressionEvaluatorOperators.MATH_NEGATE || op == ExpressionEvaluatorOperators.MATH_NEGATE_EXACT;
+	}
+	
+	private ExpressionElement parseFunction(String name){
+		Optional<ExpressionFunction> fn = evaluator.resolveFunction(name, exact);
+		if(!fn.isPresent()) throw new ExpressionException("Cant find function '"+name+"'");
+		
+		List<ExpressionElement> parms = new ArrayList<>();
+		int parmHeight = 0;
+		if(peek().is(TokenType.CLOSE_BRACE)) next();
+		else {
+			while(true){
+				parms.add(parseExpression(Integer.MIN_VALUE));
+				parmHeight = Math.max(parmHeight, height);
+				if(peek().is(TokenType.COMMA)) next();
+				else break;
+			}
+			expect(TokenType.CLOSE_BRACE, "Invalid function parameters for '"+name+"'");
+		}
+		
+		int min = fn.get().getMinArgs(), max = fn.get().getMaxArgs();
+		if(parms.size() < min || parms.size() > max){
+			String expected = min == max ? String.valueOf(min) : max == Integer.MAX_VALUE ? "at least "+min : min+" to "+max;
+			throw new ExpressionException.FunctionExpressionException("Function '"+name+"' requires "+expected+" parameters but got "+parms.size());
+		}
+		height = checkHeight(parmHeight + 1);
+		return ExpressionEvaluator.createFunction(tracer, fn.get(), parms.toArray(new ExpressionElement[0]));
+	}
+}
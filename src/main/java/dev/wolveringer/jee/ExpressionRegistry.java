@@ -0,0 +1,82 @@
+package dev.wolveringer.jee;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Copy on write registry with case insensitive names.
+ * Lookups read an immutable snapshot without locking, registrations copy the snapshot and publish the new one.
+ * A registry may inherit the entries of a parent registry, registrations only ever change the registry they are made on.
+ */
+class ExpressionRegistry<T> {
+	private final Function<T, String> nameGetter;
+	private final ExpressionRegistry<T> parent;
+	
+	private volatile Map<String, T> entries = Collections.emptyMap();
+	private volatile List<T> values = Collections.emptyList();
+	
+	public ExpressionRegistry(Function<T, String> nameGetter) {
+		this(nameGetter, null);
+	}
+	
+	public ExpressionRegistry(Function<T, String> nameGetter, ExpressionRegistry<T> parent) {
+		this.nameGetter = nameGetter;
+		this.parent = parent;
+	}
+	
+	static String fold(String name){
+		return name.toLowerCase(Locale.ROOT);
+	}
+	
+	public T get(String name){
+		String key = fold(name);
+		for(ExpressionRegistry<T> registry = this; registry != null; registry = registry.parent){
+			T value = registry.entries.get(key);
+			if(value != null) return value;
+		}
+		return null;
+	}
+	
+	public boolean contains(String name){
+		return get(name) != null;
+	}
+	
+	/**
+	 * @return true if nothing has been registered on this registry itself
+	 */
+	public boolean isEmpty(){
+		return values.isEmpty();
+	}
+	
+	/**
+	 * @return the inherited and registered values in registration order
+	 */
+	public List<T> values(){
+		if(parent == null || values.isEmpty()) return parent == null ? values : parent.values();
+		List<T> values = new ArrayList<>(parent.values());
+		values.addAll(this.values);
+		return Collections.unmodifiableList(values);
+	}
+	
+	/**
+	 * @return false if an entry with the same name is already registered
+	 */
+	public synchronized boolean register(T value){
+		String key = fold(nameGetter.apply(value));
+		if(contains(key)) return false;
+		
+		Map<String, T> entries = new HashMap<>(this.entries);
+		entries.put(key, value);
+		List<T> values = new ArrayList<>(this.values);
+		values.add(value);
+		
+		this.values = Collections.unmodifiableList(values);
+		this.entries = Collections.unmodifiableMap(entries);
+		return true;
+	}
+}
@@ -0,0 +1,385 @@
+package dev.wolveringer.jee;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+
+import dev.wolveringer.jee.ExpressionEvaluator.CastExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ConditionalExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.EvalatedExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.FunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.OperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.UnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.VariableExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.ExpressionFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.Operator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.UnaryOperator;
+import dev.wolveringer.jee.ExpressionMetrics.ExpressionStats;
+import lombok.Getter;
+
+/**
+ * Writes compiled expressions into a compact binary format and loads them again without lexing or parsing.
+ * <p>
+ * A file starts with {@link #MAGIC} and {@link #VERSION}, followed by the expressions. Every expression contains its source text, its variables,
+ * the names of the operators and functions it references and its (already optimized) tree, with shared elements written only once.
+ * Operators and functions are resolved by name against the evaluator when loading, so they have to be registered in its scope.
+ * Whether an expression has been compiled in {@link ExpressionEvaluator#isExact() exact} mode is stored with it, the loaded tree uses the same arithmetic.
+ * The bytecode form isn't stored, it can be generated again with {@link CompiledExpression#compileBytecode()}.
+ */
+public class ExpressionSerializer {
+	public static final int MAGIC = 0x4A454558; //JEEX
+	public static final short VERSION = 2;
+	
+	private static final byte TAG_CONSTANT = 1;
+	private static final byte TAG_VARIABLE = 2;
+	private static final byte TAG_OPERATOR = 3;
+	private static final byte TAG_UNARY_OPERATOR = 4;
+	private static final byte TAG_FUNCTION = 5;
+	private static final byte TAG_CONDITIONAL = 6;
+	
+	@Getter
+	private final ExpressionEvaluator evaluator;
+	
+	public ExpressionSerializer(ExpressionEvaluator evaluator) {
+		Validate.notNull(evaluator, "evaluator");
+		this.evaluator = evaluator;
+	}
+	
+	public void write(Collection<CompiledExpression> expressions, OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeInt(expressions.size());
+		for(CompiledExpression expression : expressions)
+			writeExpression(data, expression);
+		data.flush();
+	}
+	
+	public void write(Collection<CompiledExpression> expressions, Path file) throws IOException {
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+			write(expressions, out);
+		}
+	}
+	
+	public byte[] toBytes(Collection<CompiledExpression> expressions){
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			write(expressions, out);
+		} catch (IOException e) {
+			throw new ExpressionException("Failed to serialize expressions: "+e.getMessage(), e); //Never thrown by a ByteArrayOutputStream
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Loads the expressions from a memory mapped file.
+	 */
+	public List<CompiledExpression> read(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	public List<CompiledExpression> read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while((read = in.read(buffer)) > 0)
+			out.write(buffer, 0, read);
+		return read(ByteBuffer.wrap(out.toByteArray()));
+	}
+	
+	public List<CompiledExpression> read(ByteBuffer buffer){
+		try {
+			if(buffer.getInt() != MAGIC) throw new ExpressionException("Invalid compiled expression data (unknown header)");
+			short version = buffer.getShort();
+			if(version != VERSION) throw new ExpressionException("Unsupported compiled expression version "+version+" (supported: "+VERSION+")");
+			int count = readCount(buffer, 4, "expression");
+			List<CompiledExpression> expressions = new ArrayList<>(Math.min(count, 1024));
+			for(int i = 0;i<count;i++)
+				expressions.add(readExpression(buffer));
+			return expressions;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new ExpressionException("Invalid compiled expression data (truncated)", e);
+		}
+	}
+	
+	private void writeExpression(DataOutputStream out, CompiledExpression expression) throws IOException {
+		writeString(out, expression.getExpression());
+		out.writeBoolean(expression.isExact());
+		ExpressionVariables variables = expression.getVariables();
+		out.writeInt(variables.size());
+		for(int slot = 0;slot<variables.size();slot++){
+			writeString(out, variables.getName(slot));
+			out.writeByte(variables.getType(slot).ordinal());
+		}
+		
+		List<ExpressionElement> elements = new ArrayList<>();
+		Map<ExpressionElement, Integer> ids = new IdentityHashMap<>();
+		Map<String, Integer> names = new LinkedHashMap<>();
+		collect(expression.getRoot(), elements, ids, names);
+		
+		out.writeInt(names.size());
+		for(String name : names.keySet())
+			writeString(out, name);
+		out.writeInt(elements.size());
+		for(ExpressionElement element : elements)
+			writeElement(out, element, ids, names);
+	}
+	
+	/**
+	 * Orders the elements children first, so every reference points to an element which has already been read.
+	 */
+	private static void collect(ExpressionElement element, List<ExpressionElement> elements, Map<ExpressionElement, Integer> ids, Map<String, Integer> names){
+		if(ids.containsKey(element)) return;
+		String name = null;
+		if(element instanceof CastExpressionElement){
+			ExpressionElement value = ((CastExpressionElement) element).getValue();
+			collect(value, elements, ids, names);
+			ids.put(element, ids.get(value)); //Casts are inserted again while reading
+			return;
+		} else if(element instanceof OperatorExpressionElement){
+			OperatorExpressionElement e = (OperatorExpressionElement) element;
+			collect(e.getFirst(), elements, ids, names);
+			collect(e.getNext(), elements, ids, names);
+			name = e.getOperator().getOperator();
+		} else if(element instanceof UnaryOperatorExpressionElement){
+			UnaryOperatorExpressionElement e = (UnaryOperatorExpressionElement) element;
+			collect(e.getValue(), elements, ids, names);
+			name = e.getOperator().getOperator();
+		} else if(element instanceof FunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			for(ExpressionElement parm : e.getParms())
+				collect(parm, elements, ids, names);
+			name = e.getName();
+		} else if(element instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+			collect(e.getCondition(), elements, ids, names);
+			collect(e.getThen(), elements, ids, names);
+			collect(e.getOtherwise(), elements, ids, names);
+		}
+		if(name != null && !names.containsKey(name)) names.put(name, names.size());
+		ids.put(element, elements.size());
+		elements.add(element);
+	}
+	
+	private static void writeElement(DataOutputStream out, ExpressionElement element, Map<ExpressionElement, Integer> ids, Map<String, Integer> names) throws IOException {
+		if(element instanceof EvalatedExpressionElement){
+			ExpressionValue<?> value = ((EvalatedExpressionElement) element).getValue();
+			out.writeByte(TAG_CONSTANT);
+			out.writeByte(value.getType().ordinal());
+			switch(value.getType()){
+			case DOUBLE:
+				out.writeDouble(value.asDouble());
+				break;
+			case FLOAT:
+				out.writeFloat(value.asFloat());
+				break;
+			case LONG:
+				out.writeLong(value.asLong());
+				break;
+			case INT:
+				out.writeInt(value.asInt());
+				break;
+			case SHORT:
+				out.writeShort(value.asShort());
+				break;
+			case BYTE:
+				out.writeByte(value.asByte());
+				break;
+			case BOOLEAN:
+				out.writeBoolean(value.asBoolean());
+				break;
+			case BIG_INTEGER:
+			case BIG_DECIMAL:
+				writeString(out, value.asString());
+				break;
+			default:
+				throw new ExpressionException("Type "+value.getType()+" cant be serialized");
+			}
+		} else if(element instanceof VariableExpressionElement){
+			out.writeByte(TAG_VARIABLE);
+			out.writeInt(((VariableExpressionElement) element).getSlot());
+		} else if(element instanceof OperatorExpressionElement){
+			OperatorExpressionElement e = (OperatorExpressionElement) element;
+			out.writeByte(TAG_OPERATOR);
+			out.writeInt(names.get(e.getOperator().getOperator()));
+			out.writeInt(ids.get(e.getFirst()));
+			out.writeInt(ids.get(e.getNext()));
+		} else if(element instanceof UnaryOperatorExpressionElement){
+			UnaryOperatorExpressionElement e = (UnaryOperatorExpressionElement) element;
+			out.writeByte(TAG_UNARY_OPERATOR);
+			out.writeInt(names.get(e.getOperator().getOperator()));
+			out.writeInt(ids.get(e.getValue()));
+		} else if(element instanceof FunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			out.writeByte(TAG_FUNCTION);
+			out.writeInt(names.get(e.getName()));
+			out.writeInt(e.getParms().length);
+			for(ExpressionElement parm : e.getParms())
+				out.writeInt(ids.get(parm));
+		} else if(element instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+			out.writeByte(TAG_CONDITIONAL);
+			out.writeInt(ids.get(e.getCondition()));
+			out.writeInt(ids.get(e.getThen()));
+			out.writeInt(ids.get(e.getOtherwise()));
+		} else {
+			throw new ExpressionException("Element "+element.getClass().getName()+" cant be serialized");
+		}
+	}
+	
+	private CompiledExpression readExpression(ByteBuffer in){
+		String expression = readString(in);
+		boolean exact = in.get() != 0;
+		ExpressionVariables variables = new ExpressionVariables();
+		int variableCount = readCount(in, 5, "variable");
+		for(int i = 0;i<variableCount;i++)
+			variables.declare(readString(in), readType(in));
+		
+		String[] names = new String[readCount(in, 4, "name")];
+		for(int i = 0;i<names.length;i++)
+			names[i] = readString(in);
+		
+		ExpressionTracer tracer = evaluator.getTracer();
+		ExpressionElement[] elements = new ExpressionElement[readCount(in, 3, "element")];
+		if(elements.length == 0) throw new ExpressionException("Invalid compiled expression data (empty tree)");
+		for(int i = 0;i<elements.length;i++){
+			byte tag = in.get();
+			switch(tag){
+			case TAG_CONSTANT:
+				elements[i] = new EvalatedExpressionElement(readConstant(in));
+				break;
+			case TAG_VARIABLE:
+				int slot = in.getInt();
+				if(slot < 0 || slot >= variables.size()) throw new ExpressionException("Invalid compiled expression data (invalid variable slot "+slot+")");
+				elements[i] = new VariableExpressionElement(variables.getName(slot), slot, variables.getType(slot));
+				break;
+			case TAG_OPERATOR:
+				String symbol = name(names, in);
+				Operator op = evaluator.resolveOperator(symbol, exact).orElseThrow(() -> new ExpressionException("Cant find operator '"+symbol+"'"));
+				elements[i] = ExpressionEvaluator.createOperator(tracer, op, reference(elements, i, in), reference(elements, i, in));
+				break;
+			case TAG_UNARY_OPERATOR:
+				String unarySymbol = name(names, in);
+				UnaryOperator unary = evaluator.resolveUnaryOperator(unarySymbol, exact).orElseThrow(() -> new ExpressionException("Cant find unary operator '"+unarySymbol+"'"));
+				elements[i] = ExpressionEvaluator.createUnaryOperator(tracer, unary, reference(elements, i, in));
+				break;
+			case TAG_FUNCTION:
+				String name = name(names, in);
+				ExpressionFunction fn = evaluator.resolveFunction(name, exact).orElseThrow(() -> new ExpressionException("Cant find function '"+name+"'"));
+				ExpressionElement[] parms = new ExpressionElement[readCount(in, 4, "parameter")];
+				if(parms.length < fn.getMinArgs() || parms.length > fn.getMaxArgs()) throw new ExpressionException.FunctionExpressionException("Function '"+name+"' doesn't accept "+parms.length+" parameters");
+				for(int j = 0;j<parms.length;j++)
+					parms[j] = reference(elements, i, in);
+				elements[i] = ExpressionEvaluator.createFunction(tracer, fn, parms);
+				break;
+			case TAG_CONDITIONAL:
+				elements[i] = ExpressionEvaluator.createConditional(reference(elements, i, in), reference(elements, i, in), reference(elements, i, in));
+				break;
+			default:
+				throw new ExpressionException("Invalid compiled expression data (unknown element "+tag+")");
+			}
+		}
+		ExpressionElement root = elements[elements.length - 1];
+		if(tracer == null) root = new ExpressionTypeChecker().check(root);
+		ExpressionMetrics metrics = evaluator.getMetrics();
+		ExpressionStats stats = metrics == null ? null : metrics.stats(expression, variables, exact);
+		if(stats != null && tracer == null) root = stats.count(root);
+		return new CompiledExpression(expression, variables, root, exact, stats);
+	}
+	
+	/**
+	 * @param size the minimal encoded size of one entry, so a corrupt count can't allocate more entries than the data can hold
+	 */
+	private static int readCount(ByteBuffer in, int size, String name){
+		int count = in.getInt();
+		if(count < 0 || count > in.remaining() / size) throw new ExpressionException("Invalid compiled expression data ("+name+" count "+count+")");
+		return count;
+	}
+	
+	private static String name(String[] names, ByteBuffer in){
+		int id = in.getInt();
+		if(id < 0 || id >= names.length) throw new ExpressionException("Invalid compiled expression data (invalid name "+id+")");
+		return names[id];
+	}
+	
+	private static ExpressionElement reference(ExpressionElement[] elements, int index, ByteBuffer in){
+		int id = in.getInt();
+		if(id < 0 || id >= index) throw new ExpressionException("Invalid compiled expression data (invalid reference "+id+")");
+		return elements[id];
+	}
+	
+	private static ExpressionValue<?> readConstant(ByteBuffer in){
+		Type type = readType(in);
+		switch(type){
+		case DOUBLE:
+			return ExpressionValue.of(in.getDouble());
+		case FLOAT:
+			return ExpressionValue.of(in.getFloat());
+		case LONG:
+			return ExpressionValue.of(in.getLong());
+		case INT:
+			return ExpressionValue.of(in.getInt());
+		case SHORT:
+			return new ExpressionValue<Short>(Type.SHORT, in.getShort());
+		case BYTE:
+			return new ExpressionValue<Byte>(Type.BYTE, in.get());
+		case BOOLEAN:
+			return ExpressionValue.of(in.get() != 0);
+		case BIG_INTEGER:
+		case BIG_DECIMAL:
+			String value = readString(in);
+			try {
+				return type == Type.BIG_INTEGER ? ExpressionValue.of(new BigInteger(value)) : ExpressionValue.of(new BigDecimal(value));
+			} catch (NumberFormatException e) {
+				throw new ExpressionException("Invalid compiled expression data (invalid constant '"+value+"')", e);
+			}
+		default:
+			throw new ExpressionException("Invalid compiled expression data (constant of type "+type+")");
+		}
+	}
+	
+	private static Type readType(ByteBuffer in){
+		int ordinal = in.get();
+		if(ordinal < 0 || ordinal >= Type.values().length) throw new ExpressionException("Invalid compiled expression data (unknown type "+ordinal+")");
+		return Type.values()[ordinal];
+	}
+	
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] data = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(data.length);
+		out.write(data);
+	}
+	
+	private static String readString(ByteBuffer in){
+		int length = in.getInt();
+		if(length < 0 || length > in.remaining()) throw new ExpressionException("Invalid compiled expression data (string length "+length+")");
+		byte[] data = new byte[length];
+		in.get(data);
+		return new String(data, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,50 @@
+package dev.wolveringer.jee;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.ExpressionFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.Operator;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.UnaryOperator;
+
+/**
+ * Receives parse and evaluation events of an {@link ExpressionEvaluator}, see {@link ExpressionEvaluator#setTracer(ExpressionTracer)}.
+ * The tracer is bound when an expression gets compiled. Expressions compiled without a tracer contain no tracing code at all.
+ */
+public interface ExpressionTracer {
+	public default void onCompile(CompiledExpression expression) { }
+	
+	public default void onOperator(Operator operator, ExpressionValue<?> first, ExpressionValue<?> next, ExpressionValue<?> result) { }
+	
+	public default void onUnaryOperator(UnaryOperator operator, ExpressionValue<?> value, ExpressionValue<?> result) { }
+	
+	public default void onFunction(ExpressionFunction function, ExpressionValue<?>[] parms, ExpressionValue<?> result) { }
+	
+	/**
+	 * @return a tracer writing every event as one line to the stream
+	 */
+	public static ExpressionTracer printing(PrintStream out){
+		return new ExpressionTracer() {
+			@Override
+			public void onCompile(CompiledExpression expression) {
+				out.println("Compiled '"+expression.getExpression()+"' to "+expression.getTree());
+			}
+			
+			@Override
+			public void onOperator(Operator operator, ExpressionValue<?> first, ExpressionValue<?> next, ExpressionValue<?> result) {
+				out.println("Operator "+first.getValue()+" "+operator.getOperator()+" "+next.getValue()+" = "+result);
+			}
+			
+			@Override
+			public void onUnaryOperator(UnaryOperator operator, ExpressionValue<?> value, ExpressionValue<?> result) {
+				out.println("Operator "+operator.getOperator()+value.getValue()+" = "+result);
+			}
+			
+			@Override
+			public void onFunction(ExpressionFunction function, ExpressionValue<?>[] parms, ExpressionValue<?> result) {
+				out.println("Running fn "+function.getName()+" with parms "+Arrays.toString(parms)+" = "+result);
+			}
+		};
+	}
+}
@@ -0,0 +1,114 @@
+package dev.wolveringer.jee;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import dev.wolveringer.jee.ExpressionEvaluator.CastExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.CompareOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ConditionalExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.FunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberBiFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberTriFunctionExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.NumberUnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.OperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.UnaryOperatorExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+/**
+ * Makes the numeric promotion of an expression tree explicit, after it has been parsed and optimized.
+ * <p>
+ * The type of every element is already resolved at compile time, type errors are reported while the tree is built.
+ * The operands of the specialized number elements (operators, compares, functions and conditionals) are wrapped into a {@link CastExpressionElement}
+ * if their type differs from the type the element computes in. The boxed evaluation of these elements then calls the primitive method for their type directly,
+ * instead of finding the promoted type of the operand values on every call. The primitive evaluation and the compiled backends convert like before.
+ * <p>
+ * Shared elements stay shared. An element is only rebuilt with casts if it keeps its type.
+ */
+class ExpressionTypeChecker {
+	private final Map<ExpressionElement, ExpressionElement> checked = new IdentityHashMap<>();
+	private final Map<ExpressionElement, ExpressionElement[]> casts = new IdentityHashMap<>();
+	
+	public ExpressionElement check(ExpressionElement element){
+		ExpressionElement result = checked.get(element);
+		if(result == null){
+			result = checkElement(element);
+			checked.put(element, result);
+		}
+		return result;
+	}
+	
+	private ExpressionElement checkElement(ExpressionElement element){
+		if(element instanceof CastExpressionElement){
+			return element;
+		} else if(element instanceof OperatorExpressionElement){
+			OperatorExpressionElement e = (OperatorExpressionElement) element;
+			ExpressionElement first = check(e.getFirst());
+			ExpressionElement next = check(e.getNext());
+			Type type = element instanceof CompareOperatorExpressionElement ? ((CompareOperatorExpressionElement) element).getOperandType() : element instanceof NumberOperatorExpressionElement ? element.getType() : null;
+			if(type != null && type.isNumeric()){
+				ExpressionElement casted = ExpressionEvaluator.createOperator(null, e.getOperator(), cast(first, type), cast(next, type));
+				if(isSame(element, casted)) return casted;
+			}
+			if(first == e.getFirst() && next == e.getNext()) return element;
+			return ExpressionEvaluator.createOperator(null, e.getOperator(), first, next);
+		} else if(element instanceof UnaryOperatorExpressionElement){
+			UnaryOperatorExpressionElement e = (UnaryOperatorExpressionElement) element;
+			ExpressionElement value = check(e.getValue());
+			if(element instanceof NumberUnaryOperatorExpressionElement){
+				ExpressionElement casted = ExpressionEvaluator.createUnaryOperator(null, e.getOperator(), cast(value, element.getType()));
+				if(isSame(element, casted)) return casted;
+			}
+			if(value == e.getValue()) return element;
+			return ExpressionEvaluator.createUnaryOperator(null, e.getOperator(), value);
+		} else if(element instanceof ConditionalExpressionElement){
+			ConditionalExpressionElement e = (ConditionalExpressionElement) element;
+			ExpressionElement condition = check(e.getCondition());
+			ExpressionElement then = check(e.getThen());
+			ExpressionElement otherwise = check(e.getOtherwise());
+			if(element.getType().isNumeric()){
+				then = cast(then, element.getType());
+				otherwise = cast(otherwise, element.getType());
+			}
+			if(condition == e.getCondition() && then == e.getThen() && otherwise == e.getOtherwise()) return element;
+			return ExpressionEvaluator.createConditional(condition, then, otherwise);
+		} else if(element instanceof FunctionExpressionElement){
+			FunctionExpressionElement e = (FunctionExpressionElement) element;
+			ExpressionElement[] parms = e.getParms().clone();
+			boolean changed = false;
+			for(int i = 0;i<parms.length;i++){
+				parms[i] = check(parms[i]);
+				changed |= parms[i] != e.getParms()[i];
+			}
+			if(element instanceof NumberFunctionExpressionElement || element instanceof NumberBiFunctionExpressionElement || element instanceof NumberTriFunctionExpressionElement){
+				ExpressionElement[] casted = new ExpressionElement[parms.length];
+				for(int i = 0;i<parms.length;i++)
+					casted[i] = cast(parms[i], element.getType());
+				ExpressionElement result = ExpressionEvaluator.createFunction(null, e.getFunction(), casted);
+				if(isSame(element, result)) return result;
+			}
+			if(!changed) return element;
+			return ExpressionEvaluator.createFunction(null, e.getFunction(), parms);
+		}
+		return element;
+	}
+	
+	/**
+	 * @return true if the rebuilt element is evaluated the same way as the original one
+	 */
+	private static boolean isSame(ExpressionElement element, ExpressionElement rebuilt){
+		if(element.getClass() != rebuilt.getClass() || element.getType() != rebuilt.getType()) return false;
+		if(element instanceof CompareOperatorExpressionElement)
+			return ((CompareOperatorExpressionElement) element).getOperandType() == ((CompareOperatorExpressionElement) rebuilt).getOperandType();
+		return true;
+	}
+	
+	private ExpressionElement cast(ExpressionElement element, Type type){
+		if(element.getType() == type) return element;
+		ExpressionElement[] known = casts.computeIfAbsent(element, e -> new ExpressionElement[Type.values().length]);
+		if(known[type.ordinal()] == null) known[type.ordinal()] = new CastExpressionElement(element, type);
+		return known[type.ordinal()];
+	}
+}
@@ -0,0 +1,100 @@
+package dev.wolveringer.jee;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+/**
+ * Declares the variables an expression may use.
+ * Every variable gets a slot (its declaration index) which is used to index the bindings passed to {@link CompiledExpression#evaluate(dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue...)}.
+ * Variable names are case insensitive, like function and operator names.
+ * The declared type is used by the primitive evaluation ({@link CompiledExpression#evaluateDouble(double...)}) and defaults to {@link Type#DOUBLE}.
+ */
+public class ExpressionVariables {
+	public static final ExpressionVariables EMPTY = new ExpressionVariables();
+	
+	private final List<String> names = new ArrayList<>();
+	private final List<Type> types = new ArrayList<>();
+	private final Map<String, Integer> slots = new HashMap<>();
+	
+	public ExpressionVariables() { }
+	
+	public ExpressionVariables(ExpressionVariables other) {
+		this.names.addAll(other.names);
+		this.types.addAll(other.types);
+		this.slots.putAll(other.slots);
+	}
+	
+	public static ExpressionVariables of(String... names){
+		ExpressionVariables variables = new ExpressionVariables();
+		for(String name : names)
+			variables.declare(name);
+		return variables;
+	}
+	
+	public ExpressionVariables declare(String name){
+		return declare(name, Type.DOUBLE);
+	}
+	
+	public ExpressionVariables declare(String name, Type type){
+		Validate.isTrue(this != EMPTY, "Cant declare variables on EMPTY");
+		Validate.notEmpty(name, "name");
+		Validate.notNull(type, "type");
+		if(!type.isNumeric() && type != Type.BOOLEAN) throw new ExpressionException("Invalid type! ("+type+" isn't numeric or boolean!)");
+		String key = name.toLowerCase(Locale.ROOT);
+		if(slots.containsKey(key)) throw new ExpressionException("Variable '"+name+"' alredy declared!");
+		slots.put(key, names.size());
+		names.add(name);
+		types.add(type);
+		return this;
+	}
+	
+	/**
+	 * @return the slot of the variable or -1 if the variable isn't declared
+	 */
+	public int getSlot(String name){
+		Integer slot = slots.get(name.toLowerCase(Locale.ROOT));
+		return slot == null ? -1 : slot;
+	}
+	
+	public String getName(int slot){
+		return names.get(slot);
+	}
+	
+	public Type getType(int slot){
+		return types.get(slot);
+	}
+	
+	public List<String> getNames(){
+		return Collections.unmodifiableList(names);
+	}
+	
+	public int size(){
+		return names.size();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) return true;
+		if(!(obj instanceof ExpressionVariables)) return false;
+		ExpressionVariables other = (ExpressionVariables) obj;
+		return names.equals(other.names) && types.equals(other.types);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * names.hashCode() + types.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return "ExpressionVariables " + names;
+	}
+}
@@ -0,0 +1,289 @@
+package dev.wolveringer.jee;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.lang3.Validate;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A spreadsheet like set of named cells. A cell either holds an input value or a formula reading other cells by their name.
+ * <p>
+ * Formulas are compiled once, all cells share one binding array indexed by the cell slot. The formulas are ordered into levels by their dependencies,
+ * a formula only depends on formulas of lower levels. Changing an input marks the formulas reading it as dirty and a recompute only evaluates dirty formulas.
+ * If the value of a formula doesn't change, its dependents are not recomputed.
+ * Formulas may reference cells which are defined later, cyclic references are rejected when the graph is evaluated.
+ * <p>
+ * The graph itself isn't thread safe. {@link #recompute(ForkJoinPool)} evaluates the dirty formulas of one level in parallel.
+ */
+public class FormulaGraph {
+	/**
+	 * Minimal dirty formulas of one level to evaluate them in parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD = 64;
+	private static final int TASK_SIZE = 16;
+	private static final int[] NO_CELLS = new int[0];
+	
+	@RequiredArgsConstructor
+	private static class Cell {
+		private final String name;
+		private String formula;
+		private CompiledExpression expression;
+		private int[] dependencies = NO_CELLS;
+		private int[] dependents = NO_CELLS;
+	}
+	
+	@Getter
+	private final ExpressionEvaluator evaluator;
+	private final ExpressionVariables variables = new ExpressionVariables();
+	private final List<Cell> cells = new ArrayList<>();
+	private double[] values = new double[16];
+	
+	private int[] order = NO_CELLS; //Formula slots ordered by level
+	private int[] levels = { 0 }; //Start of every level in the order, followed by the order length
+	private int[] positions = NO_CELLS; //Position of every slot in the order, -1 for inputs
+	private boolean[] changed = new boolean[0]; //By position
+	private final BitSet dirty = new BitSet(); //By position
+	private boolean rebuild;
+	
+	/**
+	 * Number of formula evaluations done by this graph.
+	 */
+	@Getter
+	private long evaluations;
+	
+	public FormulaGraph(ExpressionEvaluator evaluator) {
+		Validate.notNull(evaluator, "evaluator");
+		this.evaluator = evaluator;
+	}
+	
+	/**
+	 * Sets the value of an input cell, the cell is created if it doesn't exist.
+	 */
+	public FormulaGraph set(String name, double value){
+		int slot = variables.getSlot(name);
+		if(slot < 0) slot = declare(name);
+		else if(cells.get(slot).formula != null) throw new ExpressionException("Cell '"+name+"' is a formula");
+		if(Double.compare(values[slot], value) != 0){
+			values[slot] = value;
+			if(!rebuild) invalidateDependents(slot);
+		}
+		return this;
+	}
+	
+	/**
+	 * Sets the formula of a cell, the cell is created if it doesn't exist.
+	 * The formula is compiled when the graph is evaluated the next time.
+	 */
+	public FormulaGraph define(String name, String formula){
+		Validate.notNull(formula, "formula");
+		int slot = variables.getSlot(name);
+		if(slot < 0) slot = declare(name);
+		Cell cell = cells.get(slot);
+		cell.formula = formula;
+		cell.expression = null;
+		rebuild = true;
+		return this;
+	}
+	
+	/**
+	 * @return the current value of the cell, dirty formulas are recomputed first
+	 */
+	public double get(String name){
+		int slot = slot(name);
+		if(rebuild || !dirty.isEmpty()) recompute();
+		return values[slot];
+	}
+	
+	public boolean contains(String name){
+		return variables.getSlot(name) >= 0;
+	}
+	
+	/**
+	 * @return the names of the cells read by the formula, empty for inputs
+	 */
+	public Set<String> getDependencies(String name){
+		int slot = slot(name);
+		if(rebuild) build();
+		return names(cells.get(slot).dependencies);
+	}
+	
+	/**
+	 * @return the names of the formulas reading the cell directly
+	 */
+	public Set<String> getDependents(String name){
+		int slot = slot(name);
+		if(rebuild) build();
+		return names(cells.get(slot).dependents);
+	}
+	
+	public void recompute(){
+		recompute(null);
+	}
+	
+	/**
+	 * Evaluates all dirty formulas, level by level.
+	 * @param pool the pool used for levels with at least {@link #PARALLEL_THRESHOLD} dirty formulas, or null to evaluate everything on the calling thread
+	 */
+	public void recompute(ForkJoinPool pool){
+		if(rebuild) build();
+		int[] positions = new int[0];
+		for(int level = 0;level<levels.length - 1;level++){
+			int from = levels[level], to = levels[level + 1];
+			int count = 0;
+			for(int position = dirty.nextSetBit(from);position >= 0 && position < to;position = dirty.nextSetBit(position + 1)){
+				if(count == positions.length) positions = Arrays.copyOf(positions, Math.max(16, count * 2));
+				positions[count++] = position;
+			}
+			if(count == 0) continue;
+			
+			if(pool != null && count >= PARALLEL_THRESHOLD) pool.invoke(new LevelTask(positions, 0, count));
+			else {
+				for(int i = 0;i<count;i++)
+					evaluate(positions[i]);
+			}
+			evaluations += count;
+			dirty.clear(from, to);
+			for(int i = 0;i<count;i++)
+				if(changed[positions[i]]) invalidateDependents(order[positions[i]]);
+		}
+	}
+	
+	private int declare(String name){
+		variables.declare(name);
+		cells.add(new Cell(name));
+		if(values.length < cells.size()) values = Arrays.copyOf(values, values.length * 2);
+		return cells.size() - 1;
+	}
+	
+	private int slot(String name){
+		int slot = variables.getSlot(name);
+		if(slot < 0) throw new ExpressionException("Unknown cell '"+name+"'");
+		return slot;
+	}
+	
+	private Set<String> names(int[] slots){
+		Set<String> names = new LinkedHashSet<>();
+		for(int slot : slots)
+			names.add(cells.get(slot).name);
+		return names;
+	}
+	
+	private void invalidateDependents(int slot){
+		for(int dependent : cells.get(slot).dependents)
+			dirty.set(positions[dependent]);
+	}
+	
+	private void evaluate(int position){
+		int slot = order[position];
+		double value = cells.get(slot).expression.evaluateDouble(values);
+		changed[position] = Double.compare(values[slot], value) != 0;
+		values[slot] = value;
+	}
+	
+	/**
+	 * Compiles the changed formulas, resolves the dependencies and orders the formulas by level. Every formula is dirty afterwards.
+	 */
+	private void build(){
+		for(Cell cell : cells){
+			if(cell.formula == null || cell.expression != null) continue;
+			try {
+				cell.expression = evaluator.compile(cell.formula, variables);
+			} catch (ExpressionException e) {
+				throw new ExpressionException("Invalid formula of cell '"+cell.name+"': "+e.getMessage());
+			}
+		}
+		
+		int size = cells.size();
+		List<List<Integer>> dependents = new ArrayList<>(size);
+		int[] pending = new int[size]; //Formula dependencies not ordered yet
+		int formulas = 0;
+		for(int slot = 0;slot<size;slot++)
+			dependents.add(new ArrayList<>());
+		for(int slot = 0;slot<size;slot++){
+			Cell cell = cells.get(slot);
+			if(cell.expression == null){
+				cell.dependencies = NO_CELLS;
+				continue;
+			}
+			formulas++;
+			Set<String> names = cell.expression.getReferencedVariables();
+			cell.dependencies = new int[names.size()];
+			int index = 0;
+			for(String name : names){
+				int dependency = variables.getSlot(name);
+				cell.dependencies[index++] = dependency;
+				dependents.get(dependency).add(slot);
+				if(cells.get(dependency).formula != null) pending[slot]++;
+			}
+		}
+		for(int slot = 0;slot<size;slot++)
+			cells.get(slot).dependents = dependents.get(slot).stream().mapToInt(Integer::intValue).toArray();
+		
+		int[] order = new int[formulas];
+		List<Integer> levels = new ArrayList<>();
+		int ordered = 0;
+		for(int slot = 0;slot<size;slot++)
+			if(cells.get(slot).formula != null && pending[slot] == 0) order[ordered++] = slot;
+		int levelStart = 0;
+		while(levelStart < ordered){
+			levels.add(levelStart);
+			int levelEnd = ordered;
+			for(int i = levelStart;i<levelEnd;i++){
+				for(int dependent : cells.get(order[i]).dependents)
+					if(--pending[dependent] == 0) order[ordered++] = dependent;
+			}
+			levelStart = levelEnd;
+		}
+		if(ordered < formulas){
+			Set<String> cyclic = new LinkedHashSet<>();
+			for(int slot = 0;slot<size;slot++)
+				if(pending[slot] > 0) cyclic.add(cells.get(slot).name);
+			throw new ExpressionException("Cyclic reference between the cells "+cyclic);
+		}
+		levels.add(ordered);
+		
+		this.order = order;
+		this.levels = levels.stream().mapToInt(Integer::intValue).toArray();
+		this.positions = new int[size];
+		Arrays.fill(positions, -1);
+		for(int position = 0;position<order.length;position++)
+			positions[order[position]] = position;
+		this.changed = new boolean[order.length];
+		dirty.clear();
+		dirty.set(0, order.length);
+		rebuild = false;
+	}
+	
+	@SuppressWarnings("serial")
+	private class LevelTask extends RecursiveAction {
+		private final int[] positions;
+		private final int from;
+		private final int to;
+		
+		public LevelTask(int[] positions, int from, int to) {
+			this.positions = positions;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= TASK_SIZE){
+				for(int i = from;i<to;i++)
+					evaluate(positions[i]);
+				return;
+			}
+			int half = (from + to) >>> 1;
+			invokeAll(new LevelTask(positions, from, half), new LevelTask(positions, half, to));
+		}
+	}
+}
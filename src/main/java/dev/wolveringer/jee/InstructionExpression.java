@@ -0,0 +1,438 @@
+package dev.wolveringer.jee;
+
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionElement;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberBiFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.BasicNumberTriFunction;
+
+/**
+ * An expression compiled into a flat instruction array by {@link CompiledExpression#compileInstructions()}.
+ * The instructions are executed by a switch loop on a primitive operand stack, no JVM class is generated.
+ * Decimal values are kept on the stack as raw double bits (floats are widened), every other type as long.
+ * Instances are immutable and can be evaluated concurrently. The operand stack is reused per thread, so an evaluation doesn't allocate anything.
+ */
+public final class InstructionExpression implements BytecodeExpression {
+	/* Instructions ending with _D, _F, _L or _I are ordered by kind, see ExpressionInstructionCompiler#kind(Type) */
+	static final int CONST = 0; //index
+	static final int LOAD_LOCAL = 1; //local
+	static final int STORE_LOCAL = 2; //local, keeps the value on the stack
+	static final int LOAD_D = 3; //slot
+	static final int LOAD_F = 4;
+	static final int LOAD_L = 5;
+	static final int LOAD_I = 6;
+	static final int LOAD_S = 7;
+	static final int LOAD_B = 8;
+	static final int LOAD_Z = 9;
+	static final int ADD_D = 10;
+	static final int ADD_F = 11;
+	static final int ADD_L = 12;
+	static final int ADD_I = 13;
+	static final int SUB_D = 14;
+	static final int SUB_F = 15;
+	static final int SUB_L = 16;
+	static final int SUB_I = 17;
+	static final int MUL_D = 18;
+	static final int MUL_F = 19;
+	static final int MUL_L = 20;
+	static final int MUL_I = 21;
+	static final int DIV_D = 22;
+	static final int DIV_F = 23;
+	static final int DIV_L = 24;
+	static final int DIV_I = 25;
+	static final int NEG_D = 26;
+	static final int NEG_F = 27;
+	static final int NEG_L = 28;
+	static final int NEG_I = 29;
+	static final int D2F = 30;
+	static final int D2L = 31;
+	static final int D2I = 32;
+	static final int L2D = 33;
+	static final int L2F = 34;
+	static final int L2I = 35;
+	static final int I2S = 36;
+	static final int I2B = 37;
+	static final int EQ_D = 38;
+	static final int NE_D = 39;
+	static final int LT_D = 40;
+	static final int LE_D = 41;
+	static final int GT_D = 42;
+	static final int GE_D = 43;
+	static final int EQ_L = 44;
+	static final int NE_L = 45;
+	static final int LT_L = 46;
+	static final int LE_L = 47;
+	static final int GT_L = 48;
+	static final int GE_L = 49;
+	static final int NOT = 50;
+	static final int JUMP = 51; //target
+	static final int JUMP_IF_ZERO = 52; //target, pops the value
+	static final int JUMP_IF_NOT_ZERO = 53; //target, pops the value
+	static final int CALL_1 = 54; //function, type ordinal
+	static final int CALL_2 = 55;
+	static final int CALL_3 = 56;
+	static final int FALLBACK_D = 57; //element
+	static final int FALLBACK_L = 58;
+	static final int RETURN = 59;
+	
+	private static final Type[] TYPES = Type.values();
+	private static final ThreadLocal<Stack> STACKS = ThreadLocal.withInitial(Stack::new);
+	
+	/**
+	 * The operand stack of a thread. Nested evaluations, for example by a function evaluating another expression, use the space behind the current one.
+	 */
+	private static final class Stack {
+		private long[] values = new long[64];
+		private int top;
+		
+		long[] reserve(int size){
+			if(top + size > values.length) values = new long[Math.max(values.length * 2, top + size)]; //The running evaluations keep their array
+			top += size;
+			return values;
+		}
+	}
+	
+	private final int[] code;
+	private final long[] constants;
+	private final Object[] functions;
+	private final ExpressionElement[] fallbacks;
+	private final int maxStack;
+	private final int locals;
+	private final int variables;
+	private final boolean decimal;
+	private final ExpressionElement bigRoot; //Big results are evaluated by the element, the instructions would truncate them
+	
+	InstructionExpression(int[] code, long[] constants, Object[] functions, ExpressionElement[] fallbacks, int maxStack, int locals, int variables, ExpressionElement root) {
+		this.code = code;
+		this.constants = constants;
+		this.functions = functions;
+		this.fallbacks = fallbacks;
+		this.maxStack = maxStack;
+		this.locals = locals;
+		this.variables = variables;
+		this.decimal = ExpressionEvaluator.isDecimal(root.getType());
+		this.bigRoot = root.getType().isBig() ? root : null;
+	}
+	
+	/**
+	 * @return the number of ints in the instruction array
+	 */
+	public int getCodeLength(){
+		return code.length;
+	}
+	
+	@Override
+	public double evaluateDouble(double[] bindings) {
+		if(bigRoot != null) return bigRoot.parseDouble(bindings);
+		long result = run(bindings);
+		return decimal ? Double.longBitsToDouble(result) : result;
+	}
+	
+	@Override
+	public long evaluateLong(double[] bindings) {
+		if(bigRoot != null) return bigRoot.parseLong(bindings);
+		long result = run(bindings);
+		return decimal ? (long) Double.longBitsToDouble(result) : result;
+	}
+	
+	private static long bits(double value){
+		return Double.doubleToRawLongBits(value);
+	}
+	
+	private static double d(long bits){
+		return Double.longBitsToDouble(bits);
+	}
+	
+	private static float f(long bits){
+		return (float) Double.longBitsToDouble(bits);
+	}
+	
+	private long run(double[] bindings){
+		if(bindings.length < variables) throw new ExpressionException("Missing variable bindings. Required "+variables+" but got "+bindings.length);
+		Stack frame = STACKS.get();
+		int base = frame.top;
+		long[] stack = frame.reserve(maxStack + locals);
+		try {
+			return execute(bindings, stack, base);
+		} finally {
+			frame.top = base;
+		}
+	}
+	
+	private long execute(double[] bindings, long[] stack, int base){
+		final int[] code = this.code;
+		final int locals = base + maxStack; //Locals are stored behind the stack
+		int sp = base;
+		int pc = 0;
+		while(true){
+			switch(code[pc++]){
+			case CONST:
+				stack[sp++] = constants[code[pc++]];
+				break;
+			case LOAD_LOCAL:
+				stack[sp++] = stack[locals + code[pc++]];
+				break;
+			case STORE_LOCAL:
+				stack[locals + code[pc++]] = stack[sp - 1];
+				break;
+			case LOAD_D:
+				stack[sp++] = bits(bindings[code[pc++]]);
+				break;
+			case LOAD_F:
+				stack[sp++] = bits((float) bindings[code[pc++]]);
+				break;
+			case LOAD_L:
+				stack[sp++] = (long) bindings[code[pc++]];
+				break;
+			case LOAD_I:
+				stack[sp++] = (int) bindings[code[pc++]];
+				break;
+			case LOAD_S:
+				stack[sp++] = (short) bindings[code[pc++]];
+				break;
+			case LOAD_B:
+				stack[sp++] = (byte) bindings[code[pc++]];
+				break;
+			case LOAD_Z:
+				stack[sp++] = bindings[code[pc++]] != 0 ? 1 : 0;
+				break;
+			case ADD_D:
+				sp--;
+				stack[sp - 1] = bits(d(stack[sp - 1]) + d(stack[sp]));
+				break;
+			case ADD_F:
+				sp--;
+				stack[sp - 1] = bits(f(stack[sp - 1]) + f(stack[sp]));
+				break;
+			case ADD_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] + stack[sp];
+				break;
+			case ADD_I:
+				sp--;
+				stack[sp - 1] = (int) stack[sp - 1] + (int) stack[sp];
+				break;
+			case SUB_D:
+				sp--;
+				stack[sp - 1] = bits(d(stack[sp - 1]) - d(stack[sp]));
+				break;
+			case SUB_F:
+				sp--;
+				stack[sp - 1] = bits(f(stack[sp - 1]) - f(stack[sp]));
+				break;
+			case SUB_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] - stack[sp];
+				break;
+			case SUB_I:
+				sp--;
+				stack[sp - 1] = (int) stack[sp - 1] - (int) stack[sp];
+				break;
+			case MUL_D:
+				sp--;
+				stack[sp - 1] = bits(d(stack[sp - 1]) * d(stack[sp]));
+				break;
+			case MUL_F:
+				sp--;
+				stack[sp - 1] = bits(f(stack[sp - 1]) * f(stack[sp]));
+				break;
+			case MUL_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] * stack[sp];
+				break;
+			case MUL_I:
+				sp--;
+				stack[sp - 1] = (int) stack[sp - 1] * (int) stack[sp];
+				break;
+			case DIV_D:
+				sp--;
+				stack[sp - 1] = bits(d(stack[sp - 1]) / d(stack[sp]));
+				break;
+			case DIV_F:
+				sp--;
+				stack[sp - 1] = bits(f(stack[sp - 1]) / f(stack[sp]));
+				break;
+			case DIV_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] / stack[sp];
+				break;
+			case DIV_I:
+				sp--;
+				stack[sp - 1] = (int) stack[sp - 1] / (int) stack[sp];
+				break;
+			case NEG_D:
+			case NEG_F:
+				stack[sp - 1] = bits(-d(stack[sp - 1]));
+				break;
+			case NEG_L:
+				stack[sp - 1] = -stack[sp - 1];
+				break;
+			case NEG_I:
+				stack[sp - 1] = -(int) stack[sp - 1];
+				break;
+			case D2F:
+				stack[sp - 1] = bits(f(stack[sp - 1]));
+				break;
+			case D2L:
+				stack[sp - 1] = (long) d(stack[sp - 1]);
+				break;
+			case D2I:
+				stack[sp - 1] = (int) d(stack[sp - 1]);
+				break;
+			case L2D:
+				stack[sp - 1] = bits((double) stack[sp - 1]);
+				break;
+			case L2F:
+				stack[sp - 1] = bits((float) stack[sp - 1]);
+				break;
+			case L2I:
+				stack[sp - 1] = (int) stack[sp - 1];
+				break;
+			case I2S:
+				stack[sp - 1] = (short) stack[sp - 1];
+				break;
+			case I2B:
+				stack[sp - 1] = (byte) stack[sp - 1];
+				break;
+			case EQ_D:
+				sp--;
+				stack[sp - 1] = d(stack[sp - 1]) == d(stack[sp]) ? 1 : 0;
+				break;
+			case NE_D:
+				sp--;
+				stack[sp - 1] = d(stack[sp - 1]) != d(stack[sp]) ? 1 : 0;
+				break;
+			case LT_D:
+				sp--;
+				stack[sp - 1] = d(stack[sp - 1]) < d(stack[sp]) ? 1 : 0;
+				break;
+			case LE_D:
+				sp--;
+				stack[sp - 1] = d(stack[sp - 1]) <= d(stack[sp]) ? 1 : 0;
+				break;
+			case GT_D:
+				sp--;
+				stack[sp - 1] = d(stack[sp - 1]) > d(stack[sp]) ? 1 : 0;
+				break;
+			case GE_D:
+				sp--;
+				stack[sp - 1] = d(stack[sp - 1]) >= d(stack[sp]) ? 1 : 0;
+				break;
+			case EQ_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1 : 0;
+				break;
+			case NE_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] != stack[sp] ? 1 : 0;
+				break;
+			case LT_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+				break;
+			case LE_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1 : 0;
+				break;
+			case GT_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+				break;
+			case GE_L:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1 : 0;
+				break;
+			case NOT:
+				stack[sp - 1] ^= 1;
+				break;
+			case JUMP:
+				pc = code[pc];
+				break;
+			case JUMP_IF_ZERO:
+				pc = stack[--sp] == 0 ? code[pc] : pc + 1;
+				break;
+			case JUMP_IF_NOT_ZERO:
+				pc = stack[--sp] != 0 ? code[pc] : pc + 1;
+				break;
+			case CALL_1:
+				stack[sp - 1] = call((BasicNumberFunction) functions[code[pc++]], TYPES[code[pc++]], stack[sp - 1]);
+				break;
+			case CALL_2:
+				sp--;
+				stack[sp - 1] = call((BasicNumberBiFunction) functions[code[pc++]], TYPES[code[pc++]], stack[sp - 1], stack[sp]);
+				break;
+			case CALL_3:
+				sp -= 2;
+				stack[sp - 1] = call((BasicNumberTriFunction) functions[code[pc++]], TYPES[code[pc++]], stack[sp - 1], stack[sp], stack[sp + 1]);
+				break;
+			case FALLBACK_D:
+				stack[sp++] = bits(fallbacks[code[pc++]].parseDouble(bindings));
+				break;
+			case FALLBACK_L:
+				stack[sp++] = fallbacks[code[pc++]].parseLong(bindings);
+				break;
+			case RETURN:
+				return stack[sp - 1];
+			default:
+				throw new ExpressionException("Invalid instruction "+code[pc - 1]+" at "+(pc - 1));
+			}
+		}
+	}
+	
+	private static long call(BasicNumberFunction fn, Type type, long value){
+		switch(type){
+		case DOUBLE:
+			return bits(fn.applay(d(value)));
+		case FLOAT:
+			return bits(fn.applay(f(value)));
+		case LONG:
+			return fn.applay(value);
+		case INT:
+			return fn.applay((int) value);
+		case SHORT:
+			return fn.applay((short) value);
+		case BYTE:
+			return fn.applay((byte) value);
+		default:
+			throw new ExpressionException("Invalid function type "+type);
+		}
+	}
+	
+	private static long call(BasicNumberBiFunction fn, Type type, long first, long next){
+		switch(type){
+		case DOUBLE:
+			return bits(fn.applay(d(first), d(next)));
+		case FLOAT:
+			return bits(fn.applay(f(first), f(next)));
+		case LONG:
+			return fn.applay(first, next);
+		case INT:
+			return fn.applay((int) first, (int) next);
+		case SHORT:
+			return fn.applay((short) first, (short) next);
+		case BYTE:
+			return fn.applay((byte) first, (byte) next);
+		default:
+			throw new ExpressionException("Invalid function type "+type);
+		}
+	}
+	
+	private static long call(BasicNumberTriFunction fn, Type type, long a, long b, long c){
+		switch(type){
+		case DOUBLE:
+			return bits(fn.applay(d(a), d(b), d(c)));
+		case FLOAT:
+			return bits(fn.applay(f(a), f(b), f(c)));
+		case LONG:
+			return fn.applay(a, b, c);
+		case INT:
+			return fn.applay((int) a, (int) b, (int) c);
+		case SHORT:
+			return fn.applay((short) a, (short) b, (short) c);
+		case BYTE:
+			return fn.applay((byte) a, (byte) b, (byte) c);
+		default:
+			throw new ExpressionException("Invalid function type "+type);
+		}
+	}
+}
@@ -0,0 +1,291 @@
+package dev.wolveringer.jee;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.Validate;
+
+import dev.wolveringer.jee.BatchExpression.Batch;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Evaluates an expression for a stream of records, without collecting the records first.
+ * Every variable is bound to a field of the record type. The records are evaluated in chunks of {@link BatchExpression#CHUNK_SIZE} by the batch evaluator,
+ * the buffers of one evaluation are allocated once, so the memory used doesn't depend on the number of records.
+ * <p>
+ * Records can be pulled from an {@link Iterator} or a {@link Stream}, or pushed into a {@link Sink}. A sink evaluates a full chunk before accepting the next record,
+ * so a producer pushing records is slowed down to the speed of the evaluation.
+ * Binary files with fixed size records are read through a memory mapped {@link FileChannel}, see {@link #evaluate(CompiledExpression, FileChannel, RecordLayout, DoubleConsumer)}.
+ * <p>
+ * The bindings have to be done before evaluating, afterwards the instance can be used concurrently.
+ */
+public final class StreamingExpression<T> {
+	/**
+	 * Bytes of a file mapped at once.
+	 */
+	public static final int MAPPING_SIZE = 1 << 24;
+	
+	/**
+	 * Layout of the binary records of a file. Every field has a fixed offset within the record, records follow each other without any gap.
+	 */
+	public static final class RecordLayout {
+		@AllArgsConstructor
+		private static class Field {
+			private final Type type;
+			private final int offset;
+		}
+		
+		@Getter
+		private final int recordSize;
+		@Getter
+		private ByteOrder order = ByteOrder.BIG_ENDIAN;
+		private final Map<String, Field> fields = new HashMap<>();
+		
+		public RecordLayout(int recordSize) {
+			Validate.isTrue(recordSize > 0, "Invalid record size");
+			this.recordSize = recordSize;
+		}
+		
+		/**
+		 * @param type the type the field is stored as, one of the numeric types
+		 */
+		public RecordLayout field(String name, Type type, int offset){
+			Validate.notEmpty(name, "name");
+			if(!type.isNumeric() || type.isBig()) throw new ExpressionException("Invalid field type "+type);
+			if(offset < 0 || offset + size(type) > recordSize) throw new ExpressionException("Field '"+name+"' exceeds the record size of "+recordSize);
+			fields.put(name.toLowerCase(Locale.ROOT), new Field(type, offset));
+			return this;
+		}
+		
+		public RecordLayout order(ByteOrder order){
+			Validate.notNull(order, "order");
+			this.order = order;
+			return this;
+		}
+		
+		private static int size(Type type){
+			switch(type){
+			case DOUBLE:
+			case LONG:
+				return 8;
+			case FLOAT:
+			case INT:
+				return 4;
+			case SHORT:
+				return 2;
+			default:
+				return 1;
+			}
+		}
+	}
+	
+	/**
+	 * Receives records, every full chunk is evaluated immediately. {@link #close()} evaluates the remaining records.
+	 * A sink is used by one producer at a time.
+	 */
+	public final class Sink implements Consumer<T>, AutoCloseable {
+		private final ObjDoubleConsumer<? super T> output;
+		private final Object[] records = new Object[BatchExpression.CHUNK_SIZE];
+		private final double[][] columns = new double[fields.length][BatchExpression.CHUNK_SIZE];
+		private final double[] results = new double[BatchExpression.CHUNK_SIZE];
+		private final Batch state = batch.newBatch(columns);
+		private int size;
+		@Getter
+		private long count;
+		
+		private Sink(ObjDoubleConsumer<? super T> output) {
+			this.output = output;
+		}
+		
+		@Override
+		public void accept(T record) {
+			for(int slot = 0;slot<fields.length;slot++)
+				columns[slot][size] = fields[slot].applyAsDouble(record);
+			records[size++] = record;
+			if(size == records.length) flush();
+		}
+		
+		/**
+		 * Evaluates the buffered records.
+		 */
+		@SuppressWarnings("unchecked")
+		public void flush(){
+			if(size == 0) return;
+			batch.evaluateDouble(state, results, size);
+			for(int i = 0;i<size;i++)
+				output.accept((T) records[i], results[i]);
+			Arrays.fill(records, 0, size, null);
+			count += size;
+			size = 0;
+		}
+		
+		@Override
+		public void close() {
+			flush();
+		}
+	}
+	
+	private final CompiledExpression expression;
+	private final BatchExpression batch;
+	private final ToDoubleFunction<? super T>[] fields;
+	
+	@SuppressWarnings("unchecked")
+	public StreamingExpression(CompiledExpression expression) {
+		Validate.notNull(expression, "expression");
+		this.expression = expression;
+		this.batch = expression.compileBatch();
+		this.fields = (ToDoubleFunction<? super T>[]) new ToDoubleFunction<?>[expression.getVariables().size()];
+	}
+	
+	/**
+	 * Binds a variable to a field of the records.
+	 */
+	public StreamingExpression<T> bind(String variable, ToDoubleFunction<? super T> field){
+		Validate.notNull(field, "field");
+		int slot = expression.getSlot(variable);
+		if(slot < 0) throw new ExpressionException("Variable '"+variable+"' isn't declared");
+		fields[slot] = field;
+		return this;
+	}
+	
+	/**
+	 * @return a sink evaluating the records pushed into it
+	 */
+	public Sink open(ObjDoubleConsumer<? super T> output){
+		Validate.notNull(output, "output");
+		checkBindings();
+		return new Sink(output);
+	}
+	
+	/**
+	 * @return the number of evaluated records
+	 */
+	public long evaluate(Iterator<? extends T> records, ObjDoubleConsumer<? super T> output){
+		Sink sink = open(output);
+		while(records.hasNext())
+			sink.accept(records.next());
+		sink.close();
+		return sink.getCount();
+	}
+	
+	/**
+	 * Consumes the stream sequentially.
+	 * @return the number of evaluated records
+	 */
+	public long evaluate(Stream<? extends T> records, ObjDoubleConsumer<? super T> output){
+		try(Stream<? extends T> stream = records) {
+			return evaluate(stream.iterator(), output);
+		}
+	}
+	
+	private void checkBindings(){
+		for(int slot = 0;slot<fields.length;slot++)
+			if(fields[slot] == null) throw new ExpressionException("Variable '"+expression.getVariables().getName(slot)+"' isn't bound to a field");
+	}
+	
+	/**
+	 * Evaluates every record of the file, from the start of the file to its end. The file is mapped in parts of {@link #MAPPING_SIZE} bytes.
+	 * Every variable of the expression is bound to the field with the same name.
+	 * @return the number of evaluated records
+	 */
+	public static long evaluate(CompiledExpression expression, FileChannel channel, RecordLayout layout, DoubleConsumer output) throws IOException {
+		ExpressionVariables variables = expression.getVariables();
+		RecordLayout.Field[] fields = new RecordLayout.Field[variables.size()];
+		Object[] columns = new Object[variables.size()];
+		for(int slot = 0;slot<fields.length;slot++){
+			fields[slot] = layout.fields.get(variables.getName(slot).toLowerCase(Locale.ROOT));
+			if(fields[slot] == null) throw new ExpressionException("Variable '"+variables.getName(slot)+"' isn't a field of the record");
+			switch(fields[slot].type){
+			case DOUBLE:
+			case FLOAT:
+				columns[slot] = new double[BatchExpression.CHUNK_SIZE];
+				break;
+			case LONG:
+				columns[slot] = new long[BatchExpression.CHUNK_SIZE];
+				break;
+			default:
+				columns[slot] = new int[BatchExpression.CHUNK_SIZE];
+				break;
+			}
+		}
+		
+		long size = channel.size();
+		int recordSize = layout.getRecordSize();
+		if(size % recordSize != 0) throw new ExpressionException("File size "+size+" isn't a multiple of the record size "+recordSize);
+		BatchExpression batchExpression = expression.compileBatch();
+		Batch batch = batchExpression.newBatch(columns);
+		double[] results = new double[BatchExpression.CHUNK_SIZE];
+		long recordsPerMapping = Math.max(1, MAPPING_SIZE / recordSize);
+		for(long position = 0;position<size;){
+			long length = Math.min(size - position, recordsPerMapping * recordSize);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(layout.getOrder());
+			int records = (int) (length / recordSize);
+			for(int start = 0;start<records;start += BatchExpression.CHUNK_SIZE){
+				int chunk = Math.min(BatchExpression.CHUNK_SIZE, records - start);
+				for(int slot = 0;slot<fields.length;slot++)
+					read(buffer, fields[slot], columns[slot], start * recordSize, recordSize, chunk);
+				batchExpression.evaluateDouble(batch, results, chunk);
+				for(int i = 0;i<chunk;i++)
+					output.accept(results[i]);
+			}
+			position += length;
+		}
+		return size / recordSize;
+	}
+	
+	private static void read(ByteBuffer buffer, RecordLayout.Field field, Object column, int base, int recordSize, int length){
+		int index = base + field.offset;
+		switch(field.type){
+		case DOUBLE: {
+			double[] values = (double[]) column;
+			for(int i = 0;i<length;i++, index += recordSize)
+				values[i] = buffer.getDouble(index);
+			break;
+		}
+		case FLOAT: {
+			double[] values = (double[]) column;
+			for(int i = 0;i<length;i++, index += recordSize)
+				values[i] = buffer.getFloat(index);
+			break;
+		}
+		case LONG: {
+			long[] values = (long[]) column;
+			for(int i = 0;i<length;i++, index += recordSize)
+				values[i] = buffer.getLong(index);
+			break;
+		}
+		case INT: {
+			int[] values = (int[]) column;
+			for(int i = 0;i<length;i++, index += recordSize)
+				values[i] = buffer.getInt(index);
+			break;
+		}
+		case SHORT: {
+			int[] values = (int[]) column;
+			for(int i = 0;i<length;i++, index += recordSize)
+				values[i] = buffer.getShort(index);
+			break;
+		}
+		default: {
+			int[] values = (int[]) column;
+			for(int i = 0;i<length;i++, index += recordSize)
+				values[i] = buffer.get(index);
+			break;
+		}
+		}
+	}
+}
@@ -2,12 +2,24 @@ package dev.wolveringer.jee.test;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
+import dev.wolveringer.jee.CompiledExpression;
 import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.ExpressionTracer;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.ExpressionFunction;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators.Operator;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
 
 public class BasicTest {
-
+	
 	@Test
 	public void mainTest() {
 		ExpressionEvaluator ev = new ExpressionEvaluator();
@@ -16,5 +28,166 @@ public class BasicTest {
 		//ev.evaluate("x*2+y+sin(22-5)+x");
 		ev.evaluate("abs(-1-2)");
 	}
+	
+	@Test
+	public void tracerTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		List<String> events = new ArrayList<>();
+		ev.setTracer(new ExpressionTracer() {
+			@Override
+			public void onFunction(ExpressionFunction function, ExpressionValue<?>[] parms, ExpressionValue<?> result) {
+				events.add(function.getName()+"="+result.getValue());
+			}
+			
+			@Override
+			public void onOperator(Operator operator, ExpressionValue<?> first, ExpressionValue<?> next, ExpressionValue<?> result) {
+				events.add(operator.getOperator()+"="+result.getValue());
+			}
+		});
+		CompiledExpression exp = ev.compile("abs(-1-2)*2");
+		assertEquals(6, exp.evaluateLong());
+		assertEquals(Arrays.asList("-=-3", "abs=3", "*=6"), events);
+		assertEquals("(abs((-1-2))*2)", exp.getTree());
+	}
+	
+	@Test
+	public void compileTest() {
+		CompiledExpression exp = new ExpressionEvaluator().compile("abs(-1-2)*2");
+		for(int i = 0;i<3;i++){
+			assertEquals(Type.INT, exp.evaluate().getType());
+			assertEquals(6, exp.evaluate().asInt());
+		}
+	}
+	
+	@Test
+	public void literalTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		assertEquals(Type.DOUBLE, ev.compile("1.5 + 2").evaluate().getType());
+		assertEquals(3.5, ev.compile("1.5 + 2").evaluate().asDouble(), 0);
+		assertEquals(Type.LONG, ev.compile("2l*3").evaluate().getType());
+		assertEquals(9, ev.compile("(1+2)*3").evaluate().asInt());
+	}
+	
+	@Test
+	public void minimumLiteralTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		assertEquals(ExpressionValue.of(Integer.MIN_VALUE).getValue(), ev.compile("-2147483648").evaluate().getValue());
+		assertEquals(ExpressionValue.of(Long.MIN_VALUE).getValue(), ev.compile("-9223372036854775808L").evaluate().getValue());
+		assertEquals(Short.MIN_VALUE, ev.compile("-32768s").evaluate().getValue());
+		assertEquals(Integer.MIN_VALUE + 1, ev.compile("1 + -2147483648").evaluateLong());
+		ev.setExact(true);
+		assertEquals(Type.INT, ev.compile("-2147483648").evaluate().getType());
+		assertEquals(Integer.MIN_VALUE * 2L, ev.compile("-2147483648 * 2").evaluate().asLong());
+		for(String expression : new String[]{ "2147483648", "1 - 2147483648", "-(2147483648)" }){
+			try {
+				ev.compile(expression);
+				fail(expression + " compiled");
+			} catch (ExpressionException e) { }
+		}
+	}
+	
+	@Test
+	public void priorityTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		assertEquals(7, ev.compile("1+2*3").evaluate().asInt());
+		assertEquals(-6, ev.compile("2*-3").evaluate().asInt());
+		assertEquals(2, ev.compile("8/2/2").evaluate().asInt());
+		assertEquals(1, ev.compile("4-2-1").evaluate().asInt());
+		assertEquals(5, ev.compile("sqr(abs(1-3))+1").evaluate().asInt());
+	}
+	
+	@Test
+	public void variableTest() {
+		CompiledExpression exp = new ExpressionEvaluator().compile("x*2+y", "x", "y");
+		assertEquals(1, exp.getSlot("Y"));
+		assertEquals(7, exp.evaluate(ExpressionValue.of(2), ExpressionValue.of(3)).asInt());
+		assertEquals(Type.DOUBLE, exp.evaluate(ExpressionValue.of(2), ExpressionValue.of(0.5)).getType());
+		assertEquals(4.5, exp.evaluate(ExpressionValue.of(2), ExpressionValue.of(0.5)).asDouble(), 0);
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void unknownVariableTest() {
+		new ExpressionEvaluator().compile("x*2+z", "x", "y");
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void unknownCharacterTest() {
+		new ExpressionEvaluator().compile("1 # 2");
+	}
+	
+	@Test
+	public void functionArgumentsTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ev.registerFunction(new ExpressionFunction() {
+			@Override
+			public String getName() {
+				return "sum";
+			}
+			
+			@Override
+			public ExpressionValue<?> applay(ExpressionValue<?>... values) {
+				long sum = 0;
+				for(ExpressionValue<?> value : values)
+					sum += value.asLong();
+				return ExpressionValue.of(sum);
+			}
+		});
+		assertEquals(0, ev.compile("sum()").evaluateLong());
+		assertEquals(6, ev.compile("sum(1, abs(-2), 3)").evaluateLong());
+		assertEquals(10, ev.compile("sum(x, sum(x*2, 1))", "x").evaluateLong(3));
+		assertEquals("sum(x,sum((x*2),1))", ev.compile("sum(x, sum(x*2, 1))", "x").getTree());
+	}
+	
+	@Test(expected = ExpressionException.FunctionExpressionException.class)
+	public void functionArityTest() {
+		new ExpressionEvaluator().compile("abs(1, 2)");
+	}
+	
+	@Test
+	public void operatorChainTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		CompiledExpression exp = ev.compile(chain(1000), "x");
+		double[] bindings = { 2 };
+		assertEquals(2000, exp.evaluateLong(bindings));
+		assertEquals(2000, exp.compileBytecode().evaluateLong(bindings));
+		assertEquals(2000, exp.compileInstructions().evaluateLong(bindings));
+		
+		exp = ev.compile(chain(5000), "x");
+		assertEquals(10000, exp.evaluateLong(bindings));
+		assertEquals(10000, exp.compileBytecode().evaluateLong(bindings));
+		assertEquals(10000, exp.compileInstructions().evaluateLong(bindings));
+		assertEquals(10000, exp.evaluate(ExpressionValue.of(2D)).asLong());
+		
+		StringBuilder sum = new StringBuilder("a0");
+		String[] names = new String[1100];
+		double[] values = new double[names.length];
+		for(int i = 0;i<names.length;i++){
+			names[i] = "a"+i;
+			values[i] = i;
+			if(i > 0) sum.append(" + ").append(names[i]);
+		}
+		assertEquals(1100 * 1099 / 2, ev.compile(sum.toString(), names).evaluateLong(values));
+		
+		try {
+			ev.compile(chain(5000).replace('+', '-'), "x");
+			fail("Too deep chain accepted");
+		} catch (ExpressionException e) { }
+	}
+	
+	@Test
+	public void mixedChainTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("i", Type.INT).declare("d", Type.DOUBLE);
+		//Mixed types are promoted from left to right, the int addition overflows before the double one
+		assertEquals((double) (Integer.MAX_VALUE + 1) + 0.5, ev.compile("i + 1 + d", variables).evaluateDouble(Integer.MAX_VALUE, 0.5), 0);
+		assertEquals((Integer.MAX_VALUE / 2 + 1) * 3 + 1, ev.compile("i + i + i + 1", variables).evaluateLong(Integer.MAX_VALUE / 2 + 1, 0));
+	}
+	
+	private static String chain(int terms){
+		StringBuilder sb = new StringBuilder("x");
+		for(int i = 1;i<terms;i++)
+			sb.append(i % 2 == 0 ? "+x" : "+x*1");
+		return sb.toString();
+	}
 
 }
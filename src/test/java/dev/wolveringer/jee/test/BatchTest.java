@@ -0,0 +1,108 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.BatchExpression;
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class BatchTest {
+	
+	@Test
+	public void equalityTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y", Type.DOUBLE).declare("z", Type.SHORT).declare("w", Type.FLOAT);
+		String[] expressions = { "x/3*y", "x/3+1.5f", "abs(x-20)*2+z", "-x*-y", "100b*z", "z*z*z", "2l*x-+z", "(x*y+1)*(x*y+1)", "w*w-x", "sqr(y)/4" };
+		int rows = BatchExpression.CHUNK_SIZE * 2 + 17;
+		int[] xs = new int[rows];
+		double[] ys = new double[rows];
+		long[] zs = new long[rows];
+		double[] ws = new double[rows];
+		for(int i = 0;i<rows;i++){
+			xs[i] = i * 7919 % 2001 - 1000 + (i % 3 == 0 ? 0 : 1);
+			ys[i] = i * 0.37 - 400;
+			zs[i] = i * 31 - 30000;
+			ws[i] = i / 3.3;
+		}
+		Object[] columns = { xs, ys, zs, ws };
+		
+		for(String expression : expressions){
+			CompiledExpression exp = ev.compile(expression, variables);
+			BatchExpression batch = exp.compileBatch();
+			double[] doubles = new double[rows];
+			long[] longs = new long[rows];
+			batch.evaluateDouble(columns, doubles);
+			batch.evaluateLong(columns, longs, 5, rows - 5);
+			for(int i = 0;i<rows;i++){
+				double[] row = { xs[i], ys[i], zs[i], ws[i] };
+				assertEquals(expression, exp.evaluateDouble(row), doubles[i], 0);
+				assertEquals(expression, i < 5 ? 0 : exp.evaluateLong(row), longs[i]);
+			}
+		}
+	}
+	
+	@Test
+	public void longColumnTest() {
+		CompiledExpression exp = new ExpressionEvaluator().compile("x + y", new ExpressionVariables().declare("x", Type.INT).declare("y", Type.SHORT));
+		long[] xs = { (1L << 32) + 5, -(1L << 40), 7 };
+		long[] ys = { 70000, 3, Long.MIN_VALUE };
+		long[] longs = new long[xs.length];
+		exp.compileBatch().evaluateLong(new Object[]{ xs, ys }, longs);
+		for(int i = 0;i<xs.length;i++){
+			double[] row = { xs[i], ys[i] };
+			assertEquals(exp.evaluateLong(row), longs[i]);
+			assertEquals(exp.compileBytecode().evaluateLong(row), longs[i]);
+			assertEquals(exp.compileInstructions().evaluateLong(row), longs[i]);
+		}
+		assertEquals(Integer.MAX_VALUE + (short) 70000, longs[0]);
+	}
+	
+	@Test
+	public void parallelTest() {
+		CompiledExpression exp = new ExpressionEvaluator().compile("abs(x-y)*x+1", new ExpressionVariables().declare("x", Type.LONG).declare("y"));
+		BatchExpression batch = exp.compileBatch();
+		int rows = BatchExpression.PARALLEL_THRESHOLD * 5 + 123;
+		long[] xs = new long[rows];
+		double[] ys = new double[rows];
+		for(int i = 0;i<rows;i++){
+			xs[i] = i % 5000;
+			ys[i] = i * 0.5;
+		}
+		Object[] columns = { xs, ys };
+		
+		double[] expected = new double[rows];
+		batch.evaluateDouble(columns, expected);
+		double[] parallel = new double[rows];
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			batch.evaluateDoubleParallel(pool, columns, parallel);
+		} finally {
+			pool.shutdown();
+		}
+		assertArrayEquals(expected, parallel, 0);
+		
+		long[] longs = new long[rows];
+		batch.evaluateLongParallel(columns, longs);
+		for(int i = 0;i<rows;i += 997)
+			assertEquals(exp.evaluateLong(xs[i], ys[i]), longs[i]);
+	}
+	
+	@Test(expected = ArithmeticException.class)
+	public void parallelErrorTest() {
+		long[] xs = new long[BatchExpression.PARALLEL_THRESHOLD * 3];
+		xs[xs.length - 1] = 1;
+		new ExpressionEvaluator().compile("1/(1-x)", new ExpressionVariables().declare("x", Type.LONG)).compileBatch().evaluateLongParallel(new Object[]{ xs }, new long[xs.length]);
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void invalidColumnTest() {
+		new ExpressionEvaluator().compile("x+1", "x").compileBatch().evaluateDouble(new Object[]{ new float[4] }, new double[4]);
+	}
+}
@@ -0,0 +1,56 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.BytecodeExpression;
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class BytecodeTest {
+	
+	@Test
+	public void equalityTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y", Type.DOUBLE).declare("z", Type.SHORT);
+		String[] expressions = { "1+2*3", "x/3*y", "x/3+1.5f", "7/x-y", "abs(x-20)*2", "-x*-y", "100b*x", "z*z*z", "2l*x-+z", "sqr(y)/4" };
+		double[][] rows = { { 7, 2.5, 3 }, { -3, 0.25, 200 }, { 1000, -1e5, -32000 } };
+		for(String expression : expressions){
+			CompiledExpression exp = ev.compile(expression, variables);
+			BytecodeExpression bytecode = exp.compileBytecode();
+			for(double[] row : rows){
+				assertEquals(expression, exp.evaluateDouble(row), bytecode.evaluateDouble(row), 0);
+				assertEquals(expression, exp.evaluateLong(row), bytecode.evaluateLong(row));
+			}
+		}
+	}
+	
+	@Test
+	public void tooLargeTest() {
+		CompiledExpression exp = new ExpressionEvaluator().compile(sum(0, 1 << 14), "x");
+		try {
+			exp.compileBytecode();
+			fail("Method exceeding 64KB generated");
+		} catch (ExpressionException e) {
+			assertNotNull(e.getCause());
+		}
+	}
+	
+	/**
+	 * @return a balanced sum of distinct terms, which doesn't exceed the maximal tree height
+	 */
+	private static String sum(int from, int to){
+		if(to - from == 1) return "x*"+from+".5";
+		int half = (from + to) >>> 1;
+		return "("+sum(from, half)+"+"+sum(half, to)+")";
+	}
+	
+	@Test(expected = ArithmeticException.class)
+	public void divisionByZeroTest() {
+		new ExpressionEvaluator().compile("1/x", new ExpressionVariables().declare("x", Type.INT)).compileBytecode().evaluateLong(new double[]{ 0 });
+	}
+}
@@ -0,0 +1,58 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionCache;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class CacheTest {
+	
+	@Test
+	public void hitTest() {
+		ExpressionCache cache = new ExpressionCache(new ExpressionEvaluator(), 16);
+		CompiledExpression exp = cache.compile("x * 2", "x");
+		assertSame(exp, cache.compile(" x  *   2 ", "x"));
+		assertNotSame(exp, cache.compile("x * 2", "x", "y"));
+		assertNotSame(exp, cache.compile("x*2", "x"));
+		assertEquals(1, cache.getStats().getHitCount());
+		assertEquals(3, cache.getStats().getMissCount());
+	}
+	
+	@Test
+	public void settingsTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionCache cache = new ExpressionCache(ev, 16);
+		assertEquals(0, cache.getStats().getHitRate(), 0);
+		assertEquals(Type.LONG, cache.compile("9223372036854775807l+1").evaluate().getType());
+		ev.setExact(true);
+		assertEquals(Type.BIG_INTEGER, cache.compile("9223372036854775807l+1").evaluate().getType());
+		ev.setExact(false);
+		assertEquals(Type.LONG, cache.compile("9223372036854775807l+1").evaluate().getType());
+		assertEquals(1, cache.getStats().getHitCount());
+	}
+	
+	@Test
+	public void evictionTest() {
+		ExpressionCache cache = new ExpressionCache(new ExpressionEvaluator(), 10);
+		CompiledExpression hot = cache.compile("1+1");
+		for(int i = 0;i<100;i++){
+			cache.compile(i+"*2");
+			assertSame(hot, cache.compile("1+1"));
+		}
+		assertTrue(cache.size() <= 10);
+		assertTrue(cache.getStats().getEvictionCount() >= 90);
+		assertEquals(100, cache.getStats().getHitCount());
+	}
+	
+	@Test
+	public void weightTest() {
+		ExpressionCache cache = new ExpressionCache(new ExpressionEvaluator(), 100, 20);
+		for(int i = 0;i<10;i++)
+			cache.compile("1+2+3+"+i);
+		assertTrue(cache.getStats().getWeight() <= 20);
+	}
+}
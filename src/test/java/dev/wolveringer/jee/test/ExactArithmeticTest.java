@@ -0,0 +1,185 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionSerializer;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class ExactArithmeticTest {
+	
+	@Test
+	public void bigLiteralTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionValue<?> value = ev.evaluate("99999999999999999999n * 10");
+		assertEquals(Type.BIG_INTEGER, value.getType());
+		assertEquals(new BigInteger("999999999999999999990"), value.getValue());
+		
+		value = ev.evaluate("0.1m + 0.2m");
+		assertEquals(Type.BIG_DECIMAL, value.getType());
+		assertEquals(new BigDecimal("0.3"), value.getValue());
+		
+		assertEquals(Type.BIG_DECIMAL, ev.evaluate("2n * 1.5").getType());
+		assertEquals(new BigDecimal("0.5"), ev.evaluate("1m / 2").getValue());
+		assertEquals(new BigInteger("-5"), ev.evaluate("-(2n + 3)").getValue());
+		assertTrue(ev.evaluate("10000000000000000000n > 9223372036854775807l").asBoolean());
+		assertTrue(ev.evaluate("1.0m == 1n").asBoolean());
+	}
+	
+	@Test
+	public void bigVariableTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		CompiledExpression exp = ev.compile("x * x + 1", new ExpressionVariables().declare("x", Type.BIG_INTEGER));
+		assertEquals(Type.BIG_INTEGER, exp.getType());
+		assertEquals(new BigInteger("10000000000000000000000000000000000000001"), exp.evaluate(ExpressionValue.of(new BigInteger("100000000000000000000"))).getValue());
+		assertEquals(26, exp.evaluateLong(5));
+		
+		exp = ev.compile("b * 2", new ExpressionVariables().declare("b", Type.BIG_INTEGER));
+		double[] bindings = { 1e20 };
+		assertEquals(2e20, exp.evaluateDouble(bindings), 0);
+		assertEquals(2e20, exp.compileBytecode().evaluateDouble(bindings), 0);
+		assertEquals(2e20, exp.compileInstructions().evaluateDouble(bindings), 0);
+		for(int i = 0;i<3;i++){
+			try {
+				switch(i){
+				case 0:
+					exp.evaluateLong(bindings);
+					break;
+				case 1:
+					exp.compileBytecode().evaluateLong(bindings);
+					break;
+				default:
+					exp.compileInstructions().evaluateLong(bindings);
+					break;
+				}
+				fail("Big result truncated");
+			} catch (ArithmeticException e) { }
+		}
+		assertTrue(exp.evaluateBoolean(bindings));
+	}
+	
+	@Test
+	public void overflowPromotionTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ev.setExact(true);
+		CompiledExpression exp = ev.compile("x * x", new ExpressionVariables().declare("x", Type.LONG));
+		assertEquals(9L, exp.evaluate(ExpressionValue.of(3L)).getValue());
+		ExpressionValue<?> value = exp.evaluate(ExpressionValue.of(5_000_000_000L));
+		assertEquals(Type.BIG_INTEGER, value.getType());
+		assertEquals(new BigInteger("25000000000000000000"), value.getValue());
+		
+		value = ev.evaluate("2147483647 + 1");
+		assertEquals(Type.BIG_INTEGER, value.getType());
+		assertEquals(BigInteger.valueOf(2147483648L), value.getValue());
+		assertEquals(Type.INT, ev.evaluate("2147483646 + 1").getType());
+		
+		ev.setExact(false);
+		assertEquals(Integer.MIN_VALUE, ev.evaluate("2147483647 + 1").getValue());
+	}
+	
+	@Test
+	public void bigFunctionTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		assertEquals(new BigInteger("5"), ev.evaluate("abs(-5n)").getValue());
+		assertEquals(new BigInteger("1"), ev.evaluate("min(1n, 2)").getValue());
+		assertEquals(new BigDecimal("3"), ev.evaluate("round(2.5m)").getValue());
+		assertEquals(new BigDecimal("-3"), ev.evaluate("floor(-2.5m)").getValue());
+		assertEquals(new BigInteger("100000000000000000000"), ev.evaluate("clamp(99999999999999999999n * 10, 0, 100000000000000000000n)").getValue());
+		assertEquals(Type.DOUBLE, ev.evaluate("sqrt(4n)").getType());
+		
+		ev.setExact(true);
+		CompiledExpression exp = ev.compile("abs(x * y)", new ExpressionVariables().declare("x", Type.LONG).declare("y", Type.LONG));
+		assertEquals(6L, exp.evaluate(ExpressionValue.of(-2L), ExpressionValue.of(3L)).getValue());
+		ExpressionValue<?> value = exp.evaluate(ExpressionValue.of(-5_000_000_000L), ExpressionValue.of(5_000_000_000L));
+		assertEquals(Type.BIG_INTEGER, value.getType());
+		assertEquals(new BigInteger("25000000000000000000"), value.getValue());
+		
+		exp = ev.compile("abs(x)", new ExpressionVariables().declare("x", Type.INT));
+		value = exp.evaluate(ExpressionValue.of(Integer.MIN_VALUE));
+		assertEquals(Type.BIG_INTEGER, value.getType());
+		assertEquals(BigInteger.valueOf(2147483648L), value.getValue());
+		assertEquals(5, exp.evaluate(ExpressionValue.of(-5)).getValue());
+		double[] bindings = { Integer.MIN_VALUE };
+		for(int i = 0;i<3;i++){
+			try {
+				switch(i){
+				case 0:
+					exp.evaluateLong(bindings);
+					break;
+				case 1:
+					exp.compileBytecode().evaluateLong(bindings);
+					break;
+				default:
+					exp.compileInstructions().evaluateLong(bindings);
+					break;
+				}
+				fail("Overflow not detected");
+			} catch (ArithmeticException e) { }
+		}
+		assertEquals(BigInteger.valueOf(4611686014132420609L), ev.compile("sqr(x)", new ExpressionVariables().declare("x", Type.INT)).evaluate(ExpressionValue.of(Integer.MAX_VALUE)).getValue());
+		assertEquals(new BigInteger("2147483648"), ev.evaluate("abs(-2147483647 - 1)").getValue());
+	}
+	
+	@Test
+	public void primitiveOverflowTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ev.setExact(true);
+		CompiledExpression exp = ev.compile("x * 3 - y", new ExpressionVariables().declare("x", Type.INT).declare("y", Type.SHORT));
+		double[] bindings = { 1_000_000_000, 7 };
+		for(int i = 0;i<3;i++){
+			try {
+				switch(i){
+				case 0:
+					exp.evaluateLong(bindings);
+					break;
+				case 1:
+					exp.compileBytecode().evaluateLong(bindings);
+					break;
+				default:
+					exp.compileInstructions().evaluateLong(bindings);
+					break;
+				}
+				fail("Overflow not detected");
+			} catch (ArithmeticException e) { }
+		}
+		bindings[0] = 1000;
+		assertEquals(2993, exp.evaluateLong(bindings));
+		assertEquals(2993, exp.compileBytecode().evaluateLong(bindings));
+		assertEquals(2993, exp.compileInstructions().evaluateLong(bindings));
+	}
+	
+	@Test
+	public void longBindingTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ev.setExact(true);
+		CompiledExpression exp = ev.compile("x * 2 - y", new ExpressionVariables().declare("x", Type.LONG).declare("y", Type.LONG));
+		long[] bindings = { (1L << 60) + 1, 1 };
+		assertEquals((1L << 61) + 1, exp.evaluateLong(bindings));
+		bindings[0] = Long.MAX_VALUE;
+		try {
+			exp.evaluateLong(bindings);
+			fail("Overflow not detected");
+		} catch (ArithmeticException e) { }
+	}
+	
+	@Test
+	public void serializeTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		CompiledExpression exp = ev.compile("x * 12345678901234567890n + 0.5m", new ExpressionVariables().declare("x", Type.BIG_INTEGER));
+		ExpressionSerializer serializer = new ExpressionSerializer(ev);
+		CompiledExpression loaded = serializer.read(ByteBuffer.wrap(serializer.toBytes(Collections.singletonList(exp)))).get(0);
+		ExpressionValue<?> x = ExpressionValue.of(BigInteger.valueOf(2));
+		assertEquals(exp.evaluate(x).getValue(), loaded.evaluate(x).getValue());
+		assertEquals(new BigDecimal("24691357802469135780.5"), loaded.evaluate(x).getValue());
+	}
+}
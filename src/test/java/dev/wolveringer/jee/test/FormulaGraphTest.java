@@ -0,0 +1,95 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.FormulaGraph;
+
+public class FormulaGraphTest {
+	
+	@Test
+	public void dependencyTest() {
+		FormulaGraph graph = new FormulaGraph(new ExpressionEvaluator());
+		graph.define("total", "net + tax"); //Defined before the cells it reads
+		graph.set("price", 10).set("amount", 3).set("rate", 0.25);
+		graph.define("net", "price * amount");
+		graph.define("tax", "net * rate");
+		assertEquals(37.5, graph.get("total"), 0);
+		assertEquals(new HashSet<>(Arrays.asList("net", "tax")), graph.getDependencies("total"));
+		assertEquals(new HashSet<>(Arrays.asList("net")), graph.getDependents("price"));
+		
+		graph.set("amount", 4);
+		assertEquals(50, graph.get("total"), 0);
+		graph.define("tax", "net * rate * 2");
+		assertEquals(60, graph.get("total"), 0);
+	}
+	
+	@Test
+	public void incrementalTest() {
+		FormulaGraph graph = new FormulaGraph(new ExpressionEvaluator());
+		graph.set("a", 1).set("b", 1);
+		graph.define("a1", "a * 2").define("a2", "a1 + 1").define("a3", "a2 * a2");
+		graph.define("b1", "b * 2").define("b2", "b1 + 1").define("b3", "b2 * b2");
+		graph.define("sign", "a > 0 ? 1 : -1").define("signed", "sign * 10");
+		graph.recompute();
+		long evaluations = graph.getEvaluations();
+		assertEquals(8, evaluations);
+		
+		graph.set("b", 2);
+		graph.recompute();
+		assertEquals(3, graph.getEvaluations() - evaluations); //Only b1, b2 and b3
+		assertEquals(25, graph.get("b3"), 0);
+		
+		evaluations = graph.getEvaluations();
+		graph.set("a", 5);
+		graph.recompute();
+		assertEquals(4, graph.getEvaluations() - evaluations); //a1, a2, a3 and sign, signed keeps its value
+		assertEquals(121, graph.get("a3"), 0);
+		assertEquals(10, graph.get("signed"), 0);
+	}
+	
+	@Test
+	public void parallelTest() {
+		FormulaGraph sequential = new FormulaGraph(new ExpressionEvaluator());
+		FormulaGraph parallel = new FormulaGraph(new ExpressionEvaluator());
+		for(FormulaGraph graph : new FormulaGraph[]{ sequential, parallel }){
+			graph.set("x", 1.5);
+			for(int i = 0;i<500;i++){
+				graph.define("l1_"+i, "x * "+i+" + sqrt("+i+")");
+				graph.define("l2_"+i, "l1_"+i+" - l1_"+((i + 1) % 500)+" / 2");
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for(double x : new double[]{ 1.5, -3, 1e6 }){
+				sequential.set("x", x);
+				parallel.set("x", x);
+				sequential.recompute();
+				parallel.recompute(pool);
+				for(int i = 0;i<500;i++)
+					assertEquals(sequential.get("l2_"+i), parallel.get("l2_"+i), 0);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void cycleTest() {
+		FormulaGraph graph = new FormulaGraph(new ExpressionEvaluator());
+		graph.define("a", "b + 1").define("b", "c + 1").define("c", "a + 1");
+		graph.get("a");
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void unknownCellTest() {
+		new FormulaGraph(new ExpressionEvaluator()).define("a", "b + 1").get("a");
+	}
+}
@@ -0,0 +1,67 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.BytecodeExpression;
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class FunctionTest {
+	
+	@Test
+	public void mathTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		assertEquals(1.5, ev.evaluate("sqrt(2.25)").asDouble(), 0);
+		assertEquals(1024, ev.evaluate("pow(2, 10)").asDouble(), 0);
+		assertEquals(-3, ev.evaluate("min(4, -3)").asInt());
+		assertEquals(2.5, ev.evaluate("max(2.5, 1)").asDouble(), 0);
+		assertEquals(-2, ev.evaluate("floor(-1.5)").asDouble(), 0);
+		assertEquals(-1, ev.evaluate("ceil(-1.5)").asDouble(), 0);
+		assertEquals(3, ev.evaluate("round(2.5)").asDouble(), 0);
+		assertEquals(1, ev.evaluate("log(exp(1))").asDouble(), 1e-15);
+		assertEquals(1, ev.evaluate("sqr(sin(0.3))+sqr(cos(0.3))").asDouble(), 1e-15);
+		assertEquals(10, ev.evaluate("clamp(12, 0, 10)").asInt());
+	}
+	
+	@Test
+	public void typeTest() {
+		ExpressionVariables variables = new ExpressionVariables().declare("i", Type.INT).declare("f", Type.FLOAT);
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		assertEquals(Type.DOUBLE, ev.compile("sqrt(i)", variables).getType());
+		assertEquals(Type.FLOAT, ev.compile("sqrt(f)", variables).getType());
+		assertEquals(Type.INT, ev.compile("max(i, 2)", variables).getType());
+		assertEquals(Type.INT, ev.compile("round(i)", variables).getType());
+		assertEquals(Type.FLOAT, ev.compile("clamp(f, 0, i)", variables).getType());
+	}
+	
+	@Test
+	public void foldTest() {
+		assertEquals("(x*1.5)", new ExpressionEvaluator().compile("x*sqrt(min(2.25, 4))", "x").getTree());
+	}
+	
+	@Test
+	public void equalityTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y", Type.DOUBLE).declare("z", Type.SHORT);
+		String[] expressions = { "sqrt(abs(y))", "pow(x, 2)-y", "min(x, z)", "max(y, z)*2", "floor(y)+ceil(y)+round(y)", "log(abs(x)+1)", "clamp(x, -z, z)", "exp(sin(y)*cos(x))" };
+		double[][] rows = { { 7, 2.5, 3 }, { -3, -0.25, 200 }, { 1000, -1e5, -32000 } };
+		for(String expression : expressions){
+			CompiledExpression exp = ev.compile(expression, variables);
+			BytecodeExpression bytecode = exp.compileBytecode();
+			double[] batch = new double[rows.length];
+			exp.compileBatch().evaluateDouble(new Object[]{ new int[]{ 7, -3, 1000 }, new double[]{ 2.5, -0.25, -1e5 }, new int[]{ 3, 200, -32000 } }, batch);
+			for(int i = 0;i<rows.length;i++){
+				double[] row = rows[i];
+				double expected = exp.evaluate(ExpressionValue.of((int) row[0]), ExpressionValue.of(row[1]), new ExpressionValue<Short>(Type.SHORT, (short) row[2])).asDouble();
+				assertEquals(expression, expected, exp.evaluateDouble(row), 0);
+				assertEquals(expression, expected, bytecode.evaluateDouble(row), 0);
+				assertEquals(expression, expected, batch[i], 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.InstructionExpression;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.ExpressionFunction;
+
+public class InstructionTest {
+	
+	@Test
+	public void equalityTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y", Type.DOUBLE).declare("z", Type.SHORT).declare("f", Type.FLOAT).declare("b", Type.BOOLEAN);
+		String[] expressions = { "1+2*3", "x/3*y", "x/3+1.5f", "7/x-y", "abs(x-20)*2", "-x*-y", "100b*x", "z*z*z", "2l*x-+z", "sqr(y)/4", "f*f-x", "-f/3",
+				"(x*y+1)*(x*y+1)", "x > 2 && y < 1 ? x*y : -z", "b || x/(x-x) > 0", "!b == (x < 0)", "b ? 1 : 2.5", "clamp(x, -5, 5)*max(y, f)", "pow(y, 2)+min(z, x)", "round(y*x)" };
+		double[][] rows = { { 7, 2.5, 3, 0.1, 1 }, { -3, 0.25, 200, -7.25, 0 }, { 1000, -1e5, -32000, 3e9, 1 } };
+		for(String expression : expressions){
+			CompiledExpression exp = ev.compile(expression, variables);
+			InstructionExpression instructions = exp.compileInstructions();
+			for(double[] row : rows){
+				if(expression.startsWith("b ||") && row[4] == 0) continue; //Division by zero
+				assertEquals(expression, exp.evaluateDouble(row), instructions.evaluateDouble(row), 0);
+				assertEquals(expression, exp.evaluateLong(row), instructions.evaluateLong(row));
+			}
+		}
+	}
+	
+	@Test
+	public void fallbackTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ev.registerFunction(new ExpressionFunction() {
+			@Override
+			public String getName() {
+				return "twice";
+			}
+			
+			@Override
+			public ExpressionValue<?> applay(ExpressionValue<?>... values) {
+				return ExpressionValue.of(values[0].asLong() * 2);
+			}
+		});
+		CompiledExpression exp = ev.compile("twice(x)*1.5+twice(x)", new ExpressionVariables().declare("x", Type.INT));
+		assertEquals(exp.evaluateDouble(4), exp.compileInstructions().evaluateDouble(new double[]{ 4 }), 0);
+		assertEquals(20, exp.compileInstructions().evaluateLong(new double[]{ 4 }));
+	}
+	
+	@Test
+	public void nestedTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		InstructionExpression inner = ev.compile("(x+1)*(x+1)+x*2", new ExpressionVariables().declare("x", Type.LONG)).compileInstructions();
+		ev.registerFunction(new ExpressionFunction() {
+			@Override
+			public String getName() {
+				return "inner";
+			}
+			
+			@Override
+			public ExpressionValue<?> applay(ExpressionValue<?>... values) {
+				return ExpressionValue.of(inner.evaluateLong(new double[]{ values[0].asLong() }));
+			}
+		});
+		InstructionExpression outer = ev.compile("(x*3+1)*(x*3+1)-inner(x)+(x*3+1)", new ExpressionVariables().declare("x", Type.LONG)).compileInstructions();
+		assertEquals(16 - 6 + 4, outer.evaluateLong(new double[]{ 1 }));
+	}
+	
+	@Test
+	public void allocationTest() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		InstructionExpression exp = new ExpressionEvaluator().compile("(x*2+y)*(x*2+y)-y/(3+abs(x))*1.5+sqr(y)", "x", "y").compileInstructions();
+		double[] bindings = new double[2];
+		double sum = 0;
+		for(int i = 0;i<10000;i++){
+			bindings[0] = i;
+			sum += exp.evaluateDouble(bindings);
+		}
+		
+		long allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for(int i = 0;i<100000;i++){
+			bindings[0] = i;
+			bindings[1] = -i;
+			sum += exp.evaluateDouble(bindings);
+		}
+		allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+		assertTrue("Evaluation allocated "+allocated+" bytes", allocated < 1024);
+		assertFalse(Double.isNaN(sum));
+	}
+	
+	@Test(expected = ArithmeticException.class)
+	public void divisionByZeroTest() {
+		new ExpressionEvaluator().compile("1/x", new ExpressionVariables().declare("x", Type.INT)).compileInstructions().evaluateLong(new double[]{ 0 });
+	}
+}
@@ -0,0 +1,97 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.BytecodeExpression;
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.SingleParmFunction;
+
+public class LogicTest {
+	
+	@Test
+	public void compareTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		CompiledExpression exp = ev.compile("x+y == y-x", "x", "y");
+		assertEquals(Type.BOOLEAN, exp.getType());
+		assertTrue(exp.evaluateBoolean(0, 5));
+		assertFalse(exp.evaluateBoolean(1, 5));
+		assertEquals(Boolean.TRUE, ev.evaluate("1 < 2 && 2 <= 2 && 3 > 2.5 && 3 >= 3 && 1 != 2").getValue());
+		assertEquals(Boolean.FALSE, ev.evaluate("!(1 < 2) || 2 < 1").getValue());
+		assertEquals(Boolean.TRUE, ev.evaluate("(1 < 2) == true").getValue());
+	}
+	
+	@Test
+	public void conditionalTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		CompiledExpression exp = ev.compile("x < 0 ? -1 : x == 0 ? 0 : 1.5", "x");
+		assertEquals("((x<0)?-1:((x==0)?0:1.5))", new ExpressionEvaluator().compile("x < 0 ? -1 : x == 0 ? 0 : 1.5", "x").getTree());
+		assertEquals(Type.DOUBLE, exp.getType());
+		assertEquals(-1, exp.evaluateDouble(-3), 0);
+		assertEquals(0, exp.evaluateDouble(0), 0);
+		assertEquals(1.5, exp.evaluateDouble(3), 0);
+		assertEquals(Type.DOUBLE, exp.evaluate(ExpressionValue.of(-3)).getType());
+		assertEquals(7, ev.evaluate("1 > 2 ? 1 : 3+4").asInt());
+	}
+	
+	@Test
+	public void shortCircuitTest() {
+		AtomicInteger calls = new AtomicInteger();
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ev.registerFunction(new SingleParmFunction() {
+			@Override
+			public String getName() {
+				return "expensive";
+			}
+			
+			@Override
+			public ExpressionValue<?> applay(ExpressionValue<?> value) {
+				calls.incrementAndGet();
+				return value;
+			}
+		});
+		CompiledExpression exp = ev.compile("x > 0 && expensive(x) > 2 || x < -10 && expensive(x) < -20 ? expensive(1) : 0", "x");
+		assertEquals(0, exp.evaluateLong(0));
+		assertEquals(0, exp.evaluate(ExpressionValue.of(0D)).asLong());
+		assertEquals(0, exp.compileBytecode().evaluateLong(new double[]{ -5 }));
+		assertEquals(0, calls.get());
+		assertEquals(1, exp.evaluateLong(5));
+		assertEquals(2, calls.get());
+	}
+	
+	@Test
+	public void equalityTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y", Type.DOUBLE).declare("b", Type.BOOLEAN);
+		String[] expressions = { "x < y", "x*2 >= y && !b", "b || x != 3", "b == (x > 0)", "(b ? x : y)*2", "x > 0 ? abs(y) > 1 : b", "y == y", "(x*y > 1 ? x*y : -x*y)+1", "sqrt(y) < 2" };
+		double[][] rows = { { 7, 2.5, 0 }, { -3, -0.25, 1 }, { 3, Double.NaN, 0.5 }, { 0, 0, 0 } };
+		for(String expression : expressions){
+			CompiledExpression exp = ev.compile(expression, variables);
+			BytecodeExpression bytecode = exp.compileBytecode();
+			for(double[] row : rows){
+				ExpressionValue<?> boxed = exp.evaluate(ExpressionValue.of((int) row[0]), ExpressionValue.of(row[1]), ExpressionValue.of(row[2] != 0));
+				assertEquals(expression, boxed.asDouble(), exp.evaluateDouble(row), 0);
+				assertEquals(expression, boxed.asDouble(), bytecode.evaluateDouble(row), 0);
+				assertEquals(expression, exp.evaluateLong(row), bytecode.evaluateLong(row));
+			}
+		}
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void invalidTypeTest() {
+		new ExpressionEvaluator().compile("1 && 2");
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void missingElseTest() {
+		new ExpressionEvaluator().compile("1 < 2 ? 3");
+	}
+}
@@ -0,0 +1,124 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionCache;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionMetrics;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import dev.wolveringer.jee.ExpressionMetrics.ExpressionSnapshot;
+import dev.wolveringer.jee.ExpressionMetrics.Snapshot;
+
+public class MetricsTest {
+	
+	@Test
+	public void recordTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		CompiledExpression unrecorded = ev.compile("x + 1", "x");
+		ExpressionMetrics metrics = new ExpressionMetrics();
+		ev.setMetrics(metrics);
+		CompiledExpression exp = ev.compile("max(x, 2) + max(x, 3) * sqrt(x)", "x");
+		for(int i = 0;i<100;i++)
+			exp.evaluateDouble(i);
+		unrecorded.evaluateDouble(1);
+		ev.compile("max(x,  2) + max(x, 3) * sqrt(x)", "x").evaluate(ExpressionEvaluator.ExpressionValue.of(4D));
+		
+		Snapshot snapshot = metrics.snapshot();
+		assertEquals(1, snapshot.getExpressions().size());
+		ExpressionSnapshot stats = snapshot.getExpressions().get(0);
+		assertEquals(101, stats.getEvaluations());
+		assertEquals(202L, (long) stats.getFunctionCalls().get("max"));
+		assertEquals(101L, (long) stats.getFunctionCalls().get("sqrt"));
+		assertTrue(stats.getTotalNanos() > 0);
+		assertTrue(stats.getMedianNanos() <= stats.getP99Nanos());
+		assertTrue(stats.getP99Nanos() > 0);
+		
+		metrics.reset();
+		assertEquals(0, metrics.getEvaluations());
+		assertEquals(0L, (long) metrics.snapshot().getExpressions().get(0).getFunctionCalls().get("max"));
+	}
+	
+	@Test
+	public void functionCallTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionMetrics metrics = new ExpressionMetrics();
+		ev.setMetrics(metrics);
+		CompiledExpression exp = ev.compile("x > 0 ? sqrt(x) : abs(x)", "x");
+		CompiledExpression logical = ev.compile("x > 5 && max(x, 1) > 6", "x");
+		for(int i = 0;i<10;i++){
+			exp.evaluateDouble(i);
+			logical.evaluateBoolean(i);
+		}
+		exp.evaluate(ExpressionEvaluator.ExpressionValue.of(0D));
+		exp.evaluateLong(4);
+		assertEquals(2, exp.compileBytecode().evaluateDouble(new double[]{4}), 0); //Not recorded
+		assertEquals(2, exp.compileInstructions().evaluateDouble(new double[]{4}), 0);
+		
+		Snapshot snapshot = metrics.snapshot();
+		for(ExpressionSnapshot stats : snapshot.getExpressions()){
+			if(stats.getExpression().contains("?")){
+				assertEquals(2L, (long) stats.getFunctionCalls().get("abs"));
+				assertEquals(10L, (long) stats.getFunctionCalls().get("sqrt"));
+			} else {
+				assertEquals(4L, (long) stats.getFunctionCalls().get("max"));
+			}
+		}
+	}
+	
+	@Test
+	public void keyTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionMetrics metrics = new ExpressionMetrics();
+		ev.setMetrics(metrics);
+		ev.compile("abs(x)", new ExpressionVariables().declare("x", Type.INT)).evaluateLong(-3);
+		ev.compile("abs(x)", new ExpressionVariables().declare("x", Type.DOUBLE)).evaluateDouble(-3);
+		ev.setExact(true);
+		CompiledExpression exact = ev.compile("abs(x)", new ExpressionVariables().declare("x", Type.INT));
+		exact.evaluateLong(-3);
+		exact.evaluateLong(-4);
+		
+		Snapshot snapshot = metrics.snapshot();
+		assertEquals(3, snapshot.getExpressions().size());
+		for(ExpressionSnapshot stats : snapshot.getExpressions()){
+			assertEquals("abs(x)", stats.getExpression());
+			assertEquals(stats.isExact() ? 2L : 1L, (long) stats.getFunctionCalls().get("abs"));
+			if(stats.isExact()) assertEquals("x:INT", stats.getVariables());
+		}
+	}
+	
+	@Test
+	public void exportTest() throws Exception {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionMetrics metrics = new ExpressionMetrics();
+		ev.setMetrics(metrics);
+		ExpressionCache cache = new ExpressionCache(ev, 16);
+		metrics.addCache("formulas", cache);
+		cache.compile("x * 2", "x").evaluateLong(3);
+		cache.compile("x * 2", "x").evaluateLong(4);
+		
+		Snapshot[] reported = new Snapshot[1];
+		metrics.report(snapshot -> reported[0] = snapshot);
+		assertEquals(0.5, reported[0].getCaches().get("formulas").getHitRate(), 0);
+		assertEquals(2, reported[0].getExpressions().get(0).getEvaluations());
+		
+		ObjectName name = new ObjectName("dev.wolveringer.jee:type=ExpressionMetrics,name=test");
+		metrics.registerMBean(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			assertEquals(2L, server.getAttribute(name, "Evaluations"));
+			assertEquals(1, ((Object[]) server.getAttribute(name, "Expressions")).length);
+			assertNotNull(server.getAttribute(name, "Caches"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
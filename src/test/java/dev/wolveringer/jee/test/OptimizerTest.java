@@ -0,0 +1,44 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class OptimizerTest {
+	
+	@Test
+	public void foldTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y", Type.DOUBLE);
+		assertEquals("(3*x)", ev.compile("abs(-1-2)*x+0", variables).getTree());
+		assertEquals("x", ev.compile("1*x/1-0", variables).getTree());
+		assertEquals("0", ev.compile("x*0", variables).getTree());
+		assertEquals("(y+0)", ev.compile("y+0", variables).getTree()); //-0.0 + 0 is 0.0
+		assertEquals("(y*0)", ev.compile("y*0", variables).getTree()); //NaN * 0 is NaN
+		assertEquals("(1/0)", ev.compile("1/0").getTree()); //Fails when evaluated, not when compiled
+	}
+	
+	@Test
+	public void equalityTest() {
+		ExpressionEvaluator optimized = new ExpressionEvaluator();
+		ExpressionEvaluator plain = new ExpressionEvaluator();
+		plain.setOptimize(false);
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y", Type.DOUBLE);
+		String[] expressions = { "(x*y+1)*(x*y+1)", "abs(x-2)+abs(x-2)*sqr(x-2)", "2*3*x+0*x", "y-0+y*1", "-(1+2)*-y" };
+		double[][] rows = { { 7, 2.5 }, { -3, -0.25 }, { 0, -0.0 } };
+		for(String expression : expressions){
+			CompiledExpression exp = optimized.compile(expression, variables);
+			CompiledExpression reference = plain.compile(expression, variables);
+			for(double[] row : rows){
+				assertEquals(expression, reference.evaluateDouble(row), exp.evaluateDouble(row), 0);
+				assertEquals(expression, reference.evaluateDouble(row), exp.compileBytecode().evaluateDouble(row), 0);
+				assertEquals(expression, reference.evaluateLong(row), exp.compileBytecode().evaluateLong(row));
+			}
+		}
+	}
+}
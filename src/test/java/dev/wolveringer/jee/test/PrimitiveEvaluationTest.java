@@ -0,0 +1,60 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class PrimitiveEvaluationTest {
+	
+	@Test
+	public void typeTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		assertEquals(Type.INT, ev.compile("1+2*3").getType());
+		assertEquals(Type.LONG, ev.compile("1+2l").getType());
+		assertEquals(Type.DOUBLE, ev.compile("-x+1", "x").getType());
+		assertEquals(Type.INT, ev.compile("-x+1", new ExpressionVariables().declare("x", Type.INT)).getType());
+	}
+	
+	@Test
+	public void boxedEqualityTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y", Type.DOUBLE);
+		for(String expression : new String[]{ "x/3*y", "x/3+1.5f", "7/x-y", "abs(x-20)*2", "-x*-y", "100b*x" }){
+			CompiledExpression exp = ev.compile(expression, variables);
+			ExpressionValue<?> boxed = exp.evaluate(ExpressionValue.of(7), ExpressionValue.of(2.5));
+			assertEquals(expression, boxed.getType(), exp.getType());
+			assertEquals(expression, boxed.asDouble(), exp.evaluateDouble(7, 2.5), 0);
+			assertEquals(expression, boxed.asLong(), exp.evaluateLong(7, 2.5));
+		}
+	}
+	
+	@Test
+	public void allocationTest() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		CompiledExpression exp = new ExpressionEvaluator().compile("x*2+-y/(3+abs(x))*1.5+sqr(y)", "x", "y");
+		double[] bindings = new double[2];
+		double sum = 0;
+		for(int i = 0;i<10000;i++){
+			bindings[0] = i;
+			sum += exp.evaluateDouble(bindings);
+		}
+		
+		long allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for(int i = 0;i<100000;i++){
+			bindings[0] = i;
+			bindings[1] = -i;
+			sum += exp.evaluateDouble(bindings);
+		}
+		allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+		assertTrue("Evaluation allocated "+allocated+" bytes", allocated < 1024);
+		assertFalse(Double.isNaN(sum));
+	}
+}
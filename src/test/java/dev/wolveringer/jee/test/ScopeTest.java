@@ -0,0 +1,79 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions;
+import dev.wolveringer.jee.ExpressionEvaluatorOperators;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.SingleParmFunction;
+
+public class ScopeTest {
+	private static SingleParmFunction function(String name, int value){
+		return new SingleParmFunction() {
+			@Override
+			public String getName() {
+				return name;
+			}
+			
+			@Override
+			public ExpressionValue<?> applay(ExpressionValue<?> parm) {
+				return ExpressionValue.of(value);
+			}
+		};
+	}
+	
+	@Test
+	public void isolationTest() {
+		ExpressionEvaluator tenantA = new ExpressionEvaluator();
+		ExpressionEvaluator tenantB = new ExpressionEvaluator();
+		tenantA.registerFunction(function("tenant", 1));
+		tenantB.registerFunction(function("tenant", 2));
+		
+		assertEquals(1, tenantA.compile("tenant(0)+abs(0)").evaluate().asInt());
+		assertEquals(2, tenantB.compile("TENANT(0)").evaluate().asInt());
+		assertFalse(ExpressionEvaluatorFunctions.getFunction("tenant").isPresent());
+		try {
+			new ExpressionEvaluator().compile("tenant(0)");
+			fail();
+		} catch (ExpressionException e) { }
+	}
+	
+	@Test
+	public void inheritanceTest() {
+		ExpressionEvaluator parent = new ExpressionEvaluator();
+		parent.registerFunction(function("parent", 3));
+		ExpressionEvaluator child = new ExpressionEvaluator(parent);
+		child.registerOperator(new ExpressionEvaluatorOperators.Operator() {
+			@Override
+			public String getOperator() {
+				return "%";
+			}
+			
+			@Override
+			public int getPriority() {
+				return ExpressionEvaluatorOperators.PRIORITY_POINT;
+			}
+			
+			@Override
+			public ExpressionValue<?> applay(ExpressionValue<?> first, ExpressionValue<?> next) {
+				return ExpressionValue.of(first.asInt() % next.asInt());
+			}
+		});
+		
+		assertEquals(2, child.compile("1+parent(0)%2").evaluate().asInt());
+		assertEquals(2, child.compile("1+parent(0)%2").evaluateLong());
+		try {
+			parent.compile("1%2");
+			fail();
+		} catch (ExpressionException e) { }
+	}
+	
+	@Test(expected = ExpressionException.FunctionExpressionException.class)
+	public void duplicateTest() {
+		new ExpressionEvaluator().registerFunction(function("abs", 0));
+	}
+}
@@ -0,0 +1,121 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluatorFunctions.SingleParmFunction;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.ExpressionSerializer;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class SerializerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void roundTripTest() throws Exception {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("x", Type.INT).declare("y").declare("b", Type.BOOLEAN);
+		List<CompiledExpression> expressions = new ArrayList<>();
+		for(String expression : new String[]{ "1+2", "(x*y+1)*(x*y+1)", "b && x > 2 ? clamp(y, -1, 1) : -abs(x)", "pow(2s, 3b)+7l/x", "max(1.5f, y)*sqrt(2)" })
+			expressions.add(ev.compile(expression, variables));
+		
+		File file = folder.newFile("expressions.bin");
+		ExpressionSerializer serializer = new ExpressionSerializer(ev);
+		serializer.write(expressions, file.toPath());
+		List<CompiledExpression> loaded = serializer.read(file.toPath());
+		
+		assertEquals(expressions.size(), loaded.size());
+		double[] row = { 3, 0.25, 1 };
+		for(int i = 0;i<expressions.size();i++){
+			CompiledExpression expected = expressions.get(i), actual = loaded.get(i);
+			assertEquals(expected.getExpression(), actual.getExpression());
+			assertEquals(expected.getVariables(), actual.getVariables());
+			assertEquals(expected.getTree(), actual.getTree());
+			assertEquals(expected.getType(), actual.getType());
+			assertEquals(expected.evaluateDouble(row), actual.evaluateDouble(row), 0);
+			assertEquals(expected.evaluateDouble(row), actual.compileBytecode().evaluateDouble(row), 0);
+		}
+		assertArrayEquals(serializer.toBytes(expressions), serializer.toBytes(loaded));
+	}
+	
+	@Test
+	public void exactTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ev.setExact(true);
+		CompiledExpression exp = ev.compile("x*x", new ExpressionVariables().declare("x", Type.INT));
+		CompiledExpression loaded = new ExpressionSerializer(new ExpressionEvaluator()).read(ByteBuffer.wrap(new ExpressionSerializer(ev).toBytes(Arrays.asList(exp)))).get(0);
+		assertTrue(loaded.isExact());
+		assertEquals(BigInteger.valueOf(4611686014132420609L), loaded.evaluate(ExpressionValue.of(Integer.MAX_VALUE)).getValue());
+		
+		ev.setExact(false);
+		loaded = new ExpressionSerializer(ev).read(ByteBuffer.wrap(new ExpressionSerializer(ev).toBytes(Arrays.asList(ev.compile("x*x", "x"))))).get(0);
+		assertFalse(loaded.isExact());
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void missingFunctionTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ev.registerFunction(new IdentityFunction());
+		byte[] data = new ExpressionSerializer(ev).toBytes(Arrays.asList(ev.compile("identity(x)", "x")));
+		new ExpressionSerializer(new ExpressionEvaluator()).read(ByteBuffer.wrap(data));
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void invalidHeaderTest() {
+		new ExpressionSerializer(new ExpressionEvaluator()).read(ByteBuffer.wrap(new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }));
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void invalidConstantTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionSerializer serializer = new ExpressionSerializer(ev);
+		byte[] data = serializer.toBytes(Arrays.asList(ev.compile("x*0.25m", new ExpressionVariables().declare("x", Type.BIG_DECIMAL))));
+		int constant = new String(data, StandardCharsets.ISO_8859_1).lastIndexOf("0.25");
+		data[constant + 1] = 'x';
+		serializer.read(ByteBuffer.wrap(data));
+	}
+	
+	@Test
+	public void corruptDataTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionSerializer serializer = new ExpressionSerializer(ev);
+		byte[] data = serializer.toBytes(Arrays.asList(ev.compile("max(x, 2) * -x + (x > 1 ? 0.5m : 2n)", "x")));
+		for(int offset = 0;offset + 4<=data.length;offset++){
+			for(int value : new int[]{ -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 1 << 24 }){
+				ByteBuffer buffer = ByteBuffer.wrap(data.clone());
+				buffer.putInt(offset, value);
+				try {
+					serializer.read(buffer);
+				} catch (ExpressionException e) { }
+			}
+		}
+	}
+	
+	private static class IdentityFunction extends SingleParmFunction {
+		@Override
+		public String getName() {
+			return "identity";
+		}
+		
+		@Override
+		public ExpressionValue<?> applay(ExpressionValue<?> value) {
+			return value;
+		}
+	}
+}
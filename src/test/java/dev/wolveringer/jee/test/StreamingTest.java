@@ -0,0 +1,83 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.StreamingExpression;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+import lombok.AllArgsConstructor;
+
+public class StreamingTest {
+	@AllArgsConstructor
+	private static class Order {
+		private final double price;
+		private final int amount;
+	}
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void streamTest() {
+		CompiledExpression exp = new ExpressionEvaluator().compile("price * amount - (amount > 10 ? 5 : 0)", new ExpressionVariables().declare("price").declare("amount", Type.INT));
+		StreamingExpression<Order> streaming = new StreamingExpression<Order>(exp).bind("price", o -> o.price).bind("amount", o -> o.amount);
+		
+		List<Order> orders = new ArrayList<>();
+		long count = streaming.evaluate(IntStream.range(0, 2500).mapToObj(i -> new Order(i * 0.5, i % 20)), (order, value) -> {
+			orders.add(order);
+			assertEquals(exp.evaluateDouble(order.price, order.amount), value, 0);
+		});
+		assertEquals(2500, count);
+		assertEquals(2500, orders.size());
+		assertEquals(1249.5, orders.get(2499).price, 0);
+		
+		double[] sum = new double[1];
+		try(StreamingExpression<Order>.Sink sink = streaming.open((order, value) -> sum[0] += value)) {
+			sink.accept(new Order(2, 3));
+			sink.accept(new Order(1.5, 20));
+		}
+		assertEquals(6 + 25, sum[0], 0);
+	}
+	
+	@Test
+	public void fileTest() throws Exception {
+		File file = folder.newFile("records.bin");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			for(int i = 0;i<3000;i++){
+				out.writeDouble(i * 0.25);
+				out.writeInt(i);
+				out.writeShort(-i);
+			}
+		}
+		CompiledExpression exp = new ExpressionEvaluator().compile("x * y + z", new ExpressionVariables().declare("x").declare("y", Type.INT).declare("z", Type.SHORT));
+		StreamingExpression.RecordLayout layout = new StreamingExpression.RecordLayout(14).field("x", Type.DOUBLE, 0).field("y", Type.INT, 8).field("z", Type.SHORT, 12);
+		List<Double> results = new ArrayList<>();
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			assertEquals(3000, StreamingExpression.evaluate(exp, channel, layout, results::add));
+		}
+		for(int i = 0;i<3000;i++)
+			assertEquals(exp.evaluateDouble(i * 0.25, i, (short) -i), results.get(i), 0);
+	}
+	
+	@Test(expected = ExpressionException.class)
+	public void unboundTest() {
+		new StreamingExpression<Order>(new ExpressionEvaluator().compile("price * amount", "price", "amount")).bind("price", o -> o.price).open((o, v) -> { });
+	}
+}
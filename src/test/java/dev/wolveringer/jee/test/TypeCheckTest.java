@@ -0,0 +1,73 @@
+package dev.wolveringer.jee.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import dev.wolveringer.jee.CompiledExpression;
+import dev.wolveringer.jee.ExpressionEvaluator;
+import dev.wolveringer.jee.ExpressionException;
+import dev.wolveringer.jee.ExpressionSerializer;
+import dev.wolveringer.jee.ExpressionVariables;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue;
+import dev.wolveringer.jee.ExpressionEvaluator.ExpressionValue.Type;
+
+public class TypeCheckTest {
+	private static final String[] EXPRESSIONS = {
+			"a * 2 + b",
+			"max(a, b) - c",
+			"a > b ? a : c",
+			"-a + clamp(c, 1, b)",
+			"(a + c) / 4 == b"
+	};
+	
+	@Test
+	public void resultTypeTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		ExpressionVariables variables = new ExpressionVariables().declare("a", Type.INT).declare("b", Type.FLOAT).declare("c", Type.LONG);
+		ExpressionValue<?>[] bindings = { ExpressionValue.of(7), ExpressionValue.of(2.5F), ExpressionValue.of(3L) };
+		double[] primitive = { 7, 2.5, 3 };
+		ExpressionSerializer serializer = new ExpressionSerializer(ev);
+		for(String expression : EXPRESSIONS){
+			CompiledExpression exp = ev.compile(expression, variables);
+			ExpressionValue<?> value = exp.evaluate(bindings);
+			assertEquals(expression, exp.getType(), value.getType());
+			assertEquals(expression, value.asDouble(), exp.evaluateDouble(primitive), 0);
+			assertEquals(expression, value.asDouble(), exp.compileBytecode().evaluateDouble(primitive), 0);
+			assertEquals(expression, value.asDouble(), exp.compileInstructions().evaluateDouble(primitive), 0);
+			
+			CompiledExpression loaded = serializer.read(ByteBuffer.wrap(serializer.toBytes(Collections.singletonList(exp)))).get(0);
+			assertEquals(expression, value.getValue(), loaded.evaluate(bindings).getValue());
+		}
+	}
+	
+	@Test
+	public void bindingTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		CompiledExpression exp = ev.compile("x / 2", new ExpressionVariables().declare("x", Type.DOUBLE));
+		ExpressionValue<?> value = exp.evaluate(ExpressionValue.of(3));
+		assertEquals(Type.DOUBLE, value.getType());
+		assertEquals(1.5, value.asDouble(), 0);
+		
+		try {
+			exp.evaluate(new ExpressionValue<String>(Type.STRING, "3"));
+			fail("String binding accepted");
+		} catch (ExpressionException e) { }
+	}
+	
+	@Test
+	public void numericParameterTest() {
+		ExpressionEvaluator ev = new ExpressionEvaluator();
+		for(String expression : new String[]{ "(x > 1) + 2", "sqrt(x > 1)", "max(x, x > 1)", "clamp(x > 1, 0, 2)" }){
+			try {
+				ev.compile(expression, "x");
+				fail(expression + " compiled");
+			} catch (ExpressionException e) {
+				assertTrue(expression, e.getMessage().contains("BOOLEAN isn't numeric"));
+			}
+		}
+	}
+}